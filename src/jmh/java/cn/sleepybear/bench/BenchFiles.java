@@ -0,0 +1,44 @@
+package cn.sleepybear.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * 基准测试使用的临时文件工具
+ *
+ * @author sleepybear
+ * @date 2026/10/18 07:54
+ */
+public class BenchFiles {
+
+    /**
+     * 生成 depth 层、每层 width 个子目录的证书目录树，最底层的每个目录中放一个 nginx 证书包，返回生成的证书数量
+     */
+    public static int generateCertTree(SelfSignedCertGenerator generator, Path root, int depth, int width) throws IOException {
+        if (depth <= 1) {
+            String domain = root.getFileName().toString() + ".example.com";
+            generator.writeNginxBundle(root, domain, 90);
+            return 1;
+        }
+
+        int count = 0;
+        for (int i = 0; i < width; i++) {
+            count += generateCertTree(generator, root.resolve("d" + i), depth - 1, width);
+        }
+        return count;
+    }
+
+    public static void deleteRecursively(Path root) throws IOException {
+        if (root == null || !Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package cn.sleepybear.bench;
+
+import cn.sleepybear.util.CertUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * 证书解析，对比当前的实现和原来基于 Scanner 的实现。
+ * 每次调用解析 files 个 PEM 证书包，每个包含 chainLength 张证书，50k 文件的语料可以用 -p files=50000 运行。
+ * virtualThreads 与本地扫描器一样，每个文件在一个新的虚拟线程上解析，同时解析的数量为 4
+ *
+ * @author sleepybear
+ * @date 2026/10/18 07:54
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class CertParseBenchmark {
+    @Param({"1000"})
+    private int files;
+    @Param({"1", "3"})
+    private int chainLength;
+
+    private Path root;
+    private final List<File> certFiles = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        root = Files.createTempDirectory("parse-bench");
+        SelfSignedCertGenerator generator = new SelfSignedCertGenerator();
+
+        // 证书内容相同不影响解析的开销，只生成一份证书链写到所有文件中
+        StringBuilder bundle = new StringBuilder();
+        for (int i = 0; i < chainLength; i++) {
+            bundle.append(generator.generatePem("c" + i + ".example.com", 90));
+        }
+        for (int i = 0; i < files; i++) {
+            Path file = root.resolve("cert" + i + "_bundle.crt");
+            Files.writeString(file, bundle);
+            certFiles.add(file.toFile());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchFiles.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public void current(Blackhole blackhole) {
+        for (File file : certFiles) {
+            blackhole.consume(CertUtils.getCertificateExpireTime(file));
+        }
+    }
+
+    @Benchmark
+    public void currentVirtualThreads(Blackhole blackhole) throws Exception {
+        parseOnVirtualThreads(blackhole, CertUtils::getCertificateExpireTime);
+    }
+
+    @Benchmark
+    public void legacy(Blackhole blackhole) {
+        for (File file : certFiles) {
+            blackhole.consume(LegacyImplementations.getCertificateExpireTime(file));
+        }
+    }
+
+    @Benchmark
+    public void legacyVirtualThreads(Blackhole blackhole) throws Exception {
+        parseOnVirtualThreads(blackhole, LegacyImplementations::getCertificateExpireTime);
+    }
+
+    private void parseOnVirtualThreads(Blackhole blackhole, Function<File, Long> parser) throws Exception {
+        Semaphore permits = new Semaphore(4);
+        List<Future<Long>> futures = new ArrayList<>(certFiles.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (File file : certFiles) {
+                permits.acquire();
+                futures.add(executor.submit(() -> {
+                    try {
+                        return parser.apply(file);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+        }
+        for (Future<Long> future : futures) {
+            blackhole.consume(future.resultNow());
+        }
+    }
+}
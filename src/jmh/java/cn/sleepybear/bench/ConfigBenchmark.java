@@ -0,0 +1,97 @@
+package cn.sleepybear.bench;
+
+import cn.sleepybear.App;
+import cn.sleepybear.config.AppConfig;
+import cn.sleepybear.model.CertInfo;
+import cn.sleepybear.model.PlatformSslCertInfo;
+import cn.sleepybear.service.CertService;
+import cn.sleepybear.util.CommonUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 配置相关的开销：包含 entries 个证书配置的 AppConfig 的 Gson 序列化，以及本地扫描结果合并到配置中的开销
+ *
+ * @author sleepybear
+ * @date 2026/10/18 07:54
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class ConfigBenchmark {
+    @Param({"10000"})
+    private int entries;
+    /**
+     * 每次合并的本地证书数量
+     */
+    @Param({"100", "10000"})
+    private int localCerts;
+
+    private Path root;
+    private AppConfig config;
+    private CertService certService;
+    private final Map<String, CertInfo> certMap = new LinkedHashMap<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        root = Files.createTempDirectory("config-bench");
+
+        config = new AppConfig();
+        config.setConfigPath(root.resolve("config.json").toString());
+        config.setKeyTextFile(root.resolve("key.txt").toString());
+        List<PlatformSslCertInfo> infos = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < entries; i++) {
+            PlatformSslCertInfo info = new PlatformSslCertInfo();
+            info.setId("id" + i);
+            info.setCloudPlatform("tencent");
+            info.setAccountId("account" + (i % 40));
+            info.setDomain("d" + i + ".example.com");
+            info.setCertId("cert" + i);
+            info.setCertStatus("1");
+            info.setExpireTimeAt(now + i * 60_000L);
+            info.setEnable(i % 2 == 0);
+            info.setBeforeExpireDays(7);
+            info.setLocalParentFoldPath("/etc/nginx/ssl/d" + i);
+            info.setKeyFilename("d" + i + ".example.com.key");
+            info.setCrtFilename("d" + i + ".example.com_bundle.crt");
+            infos.add(info);
+        }
+        config.setPlatformSslCertInfos(infos);
+        App.configHolder.set(config);
+        certService = new CertService();
+
+        for (int i = 0; i < localCerts; i++) {
+            String domain = "d" + i + ".example.com";
+            File dir = root.resolve("d" + i).toFile();
+            certMap.put(domain, new CertInfo(new File(dir, domain + ".key"), new File(dir, domain + "_bundle.crt"), now + i, domain));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchFiles.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public String serializeConfig() {
+        return CommonUtils.GSON.toJson(config);
+    }
+
+    @Benchmark
+    public AppConfig updateConfigWithLocalCerts() {
+        certService.updateConfigWithLocalCerts(certMap);
+        return App.configHolder.get();
+    }
+}
@@ -0,0 +1,170 @@
+package cn.sleepybear.bench;
+
+import cn.sleepybear.App;
+import cn.sleepybear.config.AppConfig;
+import cn.sleepybear.model.CloudApiKey;
+import cn.sleepybear.model.PlatformSslCertInfo;
+import cn.sleepybear.server.SimpleHttpServer;
+import cn.sleepybear.service.CertService;
+import cn.sleepybear.util.CommonUtils;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 配置并发读写的压力测试：同时请求 /api/getConfigJson、/api/refreshLocalSslCert 和 /api/getTencentCerts，
+ * 腾讯云的接口由本地的模拟服务提供。
+ * <p>
+ * 读取配置的线程会检查每个响应都能完整解析、证书列表中没有重复的域名，出现 500 或者不完整的列表时抛出异常让测试失败。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 08:03
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class ConfigStressBenchmark {
+    /**
+     * 本地证书目录树的宽度，证书数量为 width
+     */
+    @Param({"50"})
+    private int width;
+    /**
+     * 模拟的云平台返回的证书数量，其中 width 个和本地证书的域名相同
+     */
+    @Param({"500"})
+    private int cloudCerts;
+
+    private Path root;
+    private HttpServer stub;
+    private SimpleHttpServer server;
+    private HttpClient client;
+    private String baseUrl;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        root = Files.createTempDirectory("config-stress");
+        stub = startTencentStub(cloudCerts);
+        Path certs = root.resolve("certs");
+        BenchFiles.generateCertTree(new SelfSignedCertGenerator(), certs, 2, width);
+
+        AppConfig config = new AppConfig();
+        config.setConfigPath(root.resolve("config.json").toString());
+        config.setKeyTextFile(root.resolve("key.txt").toString());
+        config.setSslCertPathList(List.of(certs.toString()));
+        config.setTencentApiEndpoint("http://127.0.0.1:%s".formatted(stub.getAddress().getPort()));
+        App.configHolder.set(config);
+
+        CertService certService = new CertService();
+        CertService.apiKeys.clear();
+        CertService.apiKeys.add(new CloudApiKey("tencent", "stubId", "stubKey", "stub"));
+
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new SimpleHttpServer(certService);
+        server.start(port);
+        baseUrl = "http://127.0.0.1:%s".formatted(port);
+        client = HttpClient.newHttpClient();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        server.stop();
+        stub.stop(0);
+        CertService.apiKeys.clear();
+        BenchFiles.deleteRecursively(root);
+    }
+
+    @Benchmark
+    @Group("endpoints")
+    @GroupThreads(4)
+    public int getConfigJson() throws Exception {
+        String body = get("/api/getConfigJson?compact=true");
+        AppConfig config = CommonUtils.GSON.fromJson(body, AppConfig.class);
+        Set<String> domains = new HashSet<>();
+        for (PlatformSslCertInfo info : config.getPlatformSslCertInfos()) {
+            if (info == null || info.getId() == null || !domains.add(info.getDomain())) {
+                throw new IllegalStateException("配置中的证书列表不完整或者有重复的域名: %s".formatted(info));
+            }
+        }
+        return domains.size();
+    }
+
+    @Benchmark
+    @Group("endpoints")
+    @GroupThreads(1)
+    public int refreshLocalSslCert() throws Exception {
+        return get("/api/refreshLocalSslCert?sync=true").length();
+    }
+
+    @Benchmark
+    @Group("endpoints")
+    @GroupThreads(1)
+    public int getTencentCerts() throws Exception {
+        return get("/api/getTencentCerts?sync=true").length();
+    }
+
+    private String get(String path) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(baseUrl + path)).GET().build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("%s 返回状态码 %s: %s".formatted(path, response.statusCode(), response.body()));
+        }
+        return response.body();
+    }
+
+    /**
+     * 模拟 DescribeCertificates，每次返回的证书过期时间都不同，让每次同步都会修改配置
+     */
+    private static HttpServer startTencentStub(int total) throws Exception {
+        Gson gson = new Gson();
+        HttpServer stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        stub.createContext("/", exchange -> {
+            JsonObject query = gson.fromJson(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8), JsonObject.class);
+            int offset = query.get("Offset").getAsInt();
+            int limit = query.get("Limit").getAsInt();
+            String endTime = "2027-%02d-%02d 00:00:00".formatted(ThreadLocalRandom.current().nextInt(1, 13), ThreadLocalRandom.current().nextInt(1, 29));
+
+            List<Map<String, Object>> certificates = new ArrayList<>();
+            for (int i = offset; i < Math.min(offset + limit, total); i++) {
+                Map<String, Object> certificate = new HashMap<>();
+                certificate.put("CertificateId", "stub%06d".formatted(i));
+                certificate.put("Domain", "d%s.example.com".formatted(i));
+                certificate.put("CertBeginTime", "2026-01-01 00:00:00");
+                certificate.put("CertEndTime", endTime);
+                certificate.put("InsertTime", "2026-01-01 00:00:00");
+                certificate.put("ValidityPeriod", 12);
+                certificates.add(certificate);
+            }
+            byte[] body = gson.toJson(Map.of("Response", Map.of("TotalCount", total, "Certificates", certificates))).getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        stub.start();
+        return stub;
+    }
+}
@@ -0,0 +1,82 @@
+package cn.sleepybear.bench;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Scanner;
+import java.util.TimeZone;
+
+/**
+ * 优化之前的实现，保留下来作为基准测试的对照组
+ *
+ * @author sleepybear
+ * @date 2026/10/18 07:54
+ */
+public class LegacyImplementations {
+
+    /**
+     * 使用 Scanner 读取整个文件为字符串，再用新的 CertificateFactory 解析
+     */
+    public static Long getCertificateExpireTime(File certFile) {
+        try (FileInputStream fis = new FileInputStream(certFile);
+             Scanner scanner = new Scanner(fis)) {
+            scanner.useDelimiter("\\A");
+            String certContent = scanner.hasNext() ? scanner.next() : "";
+            if (certContent.isEmpty() || !certContent.contains("-----BEGIN CERTIFICATE-----") || !certContent.contains("-----END CERTIFICATE-----")) {
+                return null;
+            }
+
+            CertificateFactory cf = CertificateFactory.getInstance("X.509");
+            X509Certificate cert = (X509Certificate) cf.generateCertificate(new ByteArrayInputStream(certContent.getBytes()));
+            return cert.getNotAfter().getTime();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 每次都重新计算签名密钥，每次都创建新的 Mac / MessageDigest / SimpleDateFormat
+     */
+    public static String sign(String secretKey, long timestampSeconds, String service, String canonicalRequest) throws Exception {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String date = sdf.format(new Date(timestampSeconds * 1000));
+
+        String credentialScope = date + "/" + service + "/tc3_request";
+        String stringToSign = "TC3-HMAC-SHA256\n" + timestampSeconds + "\n" + credentialScope + "\n" + sha256Hex(canonicalRequest);
+
+        byte[] secretDate = hmacSHA256(date, ("TC3" + secretKey).getBytes(StandardCharsets.UTF_8));
+        byte[] secretService = hmacSHA256(service, secretDate);
+        byte[] signingKey = hmacSHA256("tc3_request", secretService);
+        return bytesToHex(hmacSHA256(stringToSign, signingKey)).toLowerCase();
+    }
+
+    private static byte[] hmacSHA256(String data, byte[] key) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, mac.getAlgorithm()));
+        return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String sha256Hex(String s) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        return bytesToHex(digest.digest(s.getBytes(StandardCharsets.UTF_8))).toLowerCase();
+    }
+
+    private static String bytesToHex(byte[] bytes) {
+        StringBuilder hexString = new StringBuilder();
+        for (byte b : bytes) {
+            String hex = Integer.toHexString(0xff & b);
+            if (hex.length() == 1) hexString.append('0');
+            hexString.append(hex);
+        }
+        return hexString.toString();
+    }
+}
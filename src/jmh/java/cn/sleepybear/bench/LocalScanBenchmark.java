@@ -0,0 +1,59 @@
+package cn.sleepybear.bench;
+
+import cn.sleepybear.model.CertInfo;
+import cn.sleepybear.service.CertScanIndex;
+import cn.sleepybear.service.LocalCertScanner;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地证书目录扫描，目录树的深度和宽度可调，可以对比有无扫描索引
+ *
+ * @author sleepybear
+ * @date 2026/10/18 07:54
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class LocalScanBenchmark {
+    @Param({"2", "3"})
+    private int depth;
+    @Param({"10", "40"})
+    private int width;
+    @Param({"1", "4"})
+    private int parallelism;
+    @Param({"false", "true"})
+    private boolean indexed;
+
+    private Path root;
+    private CertScanIndex scanIndex;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        root = Files.createTempDirectory("scan-bench");
+        Path certs = root.resolve("certs");
+        BenchFiles.generateCertTree(new SelfSignedCertGenerator(), certs, depth, width);
+        if (indexed) {
+            scanIndex = new CertScanIndex(root.resolve(CertScanIndex.INDEX_FILENAME));
+            new LocalCertScanner(depth, parallelism, scanIndex).scan(List.of(certs.toString()));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchFiles.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public Map<String, CertInfo> scanLocalCerts() {
+        return new LocalCertScanner(depth, parallelism, scanIndex).scan(List.of(root.resolve("certs").toString()));
+    }
+}
@@ -0,0 +1,69 @@
+package cn.sleepybear.bench;
+
+import cn.sleepybear.model.CertInfo;
+import cn.sleepybear.service.CertScanIndex;
+import cn.sleepybear.service.LocalCertScanner;
+import cn.sleepybear.util.LogUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 开启和关闭日志时本地扫描的吞吐量。日志输出到临时文件，扫描使用已经建立好的扫描索引，
+ * 证书不需要重新解析，每个证书输出一行日志的开销在结果中更明显。
+ * <p>
+ * mode：off 为关闭日志，sync 为在调用方线程中同步输出，async 为通过环形缓冲区异步输出，asyncJson 为异步输出 JSON 行
+ *
+ * @author sleepybear
+ * @date 2026/10/18 08:27
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class LoggingScanBenchmark {
+    @Param({"off", "sync", "async", "asyncJson"})
+    private String mode;
+    @Param({"20"})
+    private int width;
+
+    private Path root;
+    private Path certs;
+    private CertScanIndex scanIndex;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        root = Files.createTempDirectory("log-bench");
+        certs = root.resolve("certs");
+        BenchFiles.generateCertTree(new SelfSignedCertGenerator(), certs, 3, width);
+        scanIndex = new CertScanIndex(root.resolve(CertScanIndex.INDEX_FILENAME));
+
+        LogUtil.Config config = new LogUtil.Config();
+        config.setLogToConsole(false);
+        config.setLogToFile(true);
+        config.setLogFilePath(root.resolve("logs").resolve("bench.log").toString());
+        config.setLogLevel(mode.equals("off") ? java.util.logging.Level.OFF : java.util.logging.Level.INFO);
+        config.setAsync(mode.startsWith("async"));
+        config.setJsonLines(mode.equals("asyncJson"));
+        LogUtil.init(config);
+
+        new LocalCertScanner(3, 4, scanIndex).scan(List.of(certs.toString()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        LogUtil.close();
+        BenchFiles.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public Map<String, CertInfo> scanWithLogging() {
+        return new LocalCertScanner(3, 4, scanIndex).scan(List.of(certs.toString()));
+    }
+}
@@ -0,0 +1,153 @@
+package cn.sleepybear.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.*;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * 离线生成自签名证书的工具，只依赖 JDK，用于基准测试生成测试数据。
+ * <p>
+ * 直接按照 X.509 的 ASN.1 结构拼接 DER 编码，使用 SHA256withRSA 签名，支持 CN 和 DNS 类型的 SAN。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 07:54
+ */
+public class SelfSignedCertGenerator {
+    private static final byte[] OID_SHA256_WITH_RSA = {0x2a, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xf7, 0x0d, 0x01, 0x01, 0x0b};
+    private static final byte[] OID_COMMON_NAME = {0x55, 0x04, 0x03};
+    private static final byte[] OID_SUBJECT_ALT_NAME = {0x55, 0x1d, 0x11};
+
+    private final KeyPair keyPair;
+    private long serial = 1;
+
+    public SelfSignedCertGenerator() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            this.keyPair = generator.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public KeyPair getKeyPair() {
+        return keyPair;
+    }
+
+    /**
+     * 生成 DER 编码的证书，所有证书共用同一个密钥对
+     */
+    public synchronized byte[] generateDer(String commonName, List<String> dnsNames, Date notBefore, Date notAfter) {
+        try {
+            byte[] algorithm = seq(oid(OID_SHA256_WITH_RSA), new byte[]{0x05, 0x00});
+            byte[] name = seq(set(seq(oid(OID_COMMON_NAME), tlv(0x0c, commonName.getBytes(StandardCharsets.UTF_8)))));
+
+            ByteArrayOutputStream tbs = new ByteArrayOutputStream();
+            tbs.write(tlv(0xa0, tlv(0x02, new byte[]{0x02})));
+            tbs.write(tlv(0x02, java.math.BigInteger.valueOf(serial++).toByteArray()));
+            tbs.write(algorithm);
+            tbs.write(name);
+            tbs.write(seq(utcTime(notBefore), utcTime(notAfter)));
+            tbs.write(name);
+            tbs.write(keyPair.getPublic().getEncoded());
+            if (dnsNames != null && !dnsNames.isEmpty()) {
+                ByteArrayOutputStream names = new ByteArrayOutputStream();
+                for (String dnsName : dnsNames) {
+                    names.write(tlv(0x82, dnsName.getBytes(StandardCharsets.US_ASCII)));
+                }
+                byte[] san = seq(oid(OID_SUBJECT_ALT_NAME), tlv(0x04, tlv(0x30, names.toByteArray())));
+                tbs.write(tlv(0xa3, seq(san)));
+            }
+            byte[] tbsCertificate = tlv(0x30, tbs.toByteArray());
+
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(keyPair.getPrivate());
+            signature.update(tbsCertificate);
+            byte[] signed = signature.sign();
+            byte[] bitString = new byte[signed.length + 1];
+            System.arraycopy(signed, 0, bitString, 1, signed.length);
+
+            return seq(tbsCertificate, algorithm, tlv(0x03, bitString));
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public String generatePem(String commonName, long validDays) {
+        Date notBefore = new Date(System.currentTimeMillis() - 86400_000L);
+        Date notAfter = new Date(System.currentTimeMillis() + validDays * 86400_000L);
+        return toPem("CERTIFICATE", generateDer(commonName, List.of(commonName, "*." + commonName), notBefore, notAfter));
+    }
+
+    public String privateKeyPem() {
+        return toPem("PRIVATE KEY", keyPair.getPrivate().getEncoded());
+    }
+
+    /**
+     * 按照 nginx 证书包的格式写入 {domain}_bundle.crt 和 {domain}.key
+     */
+    public void writeNginxBundle(Path dir, String domain, long validDays) throws IOException {
+        Files.createDirectories(dir);
+        Files.writeString(dir.resolve(domain + "_bundle.crt"), generatePem(domain, validDays));
+        Files.writeString(dir.resolve(domain + ".key"), privateKeyPem());
+    }
+
+    public static String toPem(String type, byte[] der) {
+        String base64 = Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(der);
+        return "-----BEGIN " + type + "-----\n" + base64 + "\n-----END " + type + "-----\n";
+    }
+
+    private static byte[] utcTime(Date date) {
+        SimpleDateFormat format = new SimpleDateFormat("yyMMddHHmmss'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return tlv(0x17, format.format(date).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static byte[] oid(byte[] encoded) {
+        return tlv(0x06, encoded);
+    }
+
+    private static byte[] seq(byte[]... items) {
+        return tlv(0x30, concat(items));
+    }
+
+    private static byte[] set(byte[]... items) {
+        return tlv(0x31, concat(items));
+    }
+
+    private static byte[] concat(byte[]... items) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] item : items) {
+            out.writeBytes(item);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] tlv(int tag, byte[] value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(tag);
+        int length = value.length;
+        if (length < 0x80) {
+            out.write(length);
+        } else if (length < 0x100) {
+            out.write(0x81);
+            out.write(length);
+        } else if (length < 0x10000) {
+            out.write(0x82);
+            out.write(length >> 8);
+            out.write(length);
+        } else {
+            out.write(0x83);
+            out.write(length >> 16);
+            out.write(length >> 8);
+            out.write(length);
+        }
+        out.writeBytes(value);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,48 @@
+package cn.sleepybear.bench;
+
+import cn.sleepybear.util.Tc3Signer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TC3-HMAC-SHA256 请求签名，结果为每秒签名次数，对比缓存签名密钥前后的实现。
+ * currentVirtualThread 与分页、多账号并发查询时一样，每次签名都在一个新的虚拟线程上进行
+ *
+ * @author sleepybear
+ * @date 2026/10/18 07:54
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class SigningBenchmark {
+    private static final String SECRET_KEY = "benchSecretKey0123456789abcdefgh";
+    private static final String SERVICE = "ssl";
+
+    private final String canonicalRequest = "POST\n/\n\ncontent-type:application/json; charset=utf-8\nhost:ssl.tencentcloudapi.com\n\ncontent-type;host\n"
+                                            + Tc3Signer.sha256Hex("{\"Offset\":0,\"Limit\":100}");
+    private final long timestamp = System.currentTimeMillis() / 1000;
+
+    @Benchmark
+    public String current() {
+        String date = Tc3Signer.utcDate(timestamp);
+        String credentialScope = date + "/" + SERVICE + "/" + Tc3Signer.TC3REQUEST;
+        String stringToSign = Tc3Signer.ALGORITHM + "\n" + timestamp + "\n" + credentialScope + "\n" + Tc3Signer.sha256Hex(canonicalRequest);
+        return Tc3Signer.sign(SECRET_KEY, date, SERVICE, stringToSign);
+    }
+
+    @Benchmark
+    public String currentVirtualThread() throws Exception {
+        String[] signature = new String[1];
+        Thread.ofVirtual().start(() -> signature[0] = current()).join();
+        return signature[0];
+    }
+
+    @Benchmark
+    public String legacy() throws Exception {
+        return LegacyImplementations.sign(SECRET_KEY, timestamp, SERVICE, canonicalRequest);
+    }
+}
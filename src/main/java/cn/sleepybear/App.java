@@ -2,15 +2,25 @@ package cn.sleepybear;
 
 import cn.sleepybear.config.AppConfig;
 import cn.sleepybear.config.CommandLineArgs;
+import cn.sleepybear.config.ConfigHolder;
+import cn.sleepybear.config.ConfigPersister;
 import cn.sleepybear.server.SimpleHttpServer;
 import cn.sleepybear.service.CertService;
 import cn.sleepybear.util.LogUtil;
 
+import java.nio.file.Path;
 import java.util.Scanner;
 import java.util.concurrent.TimeUnit;
 
 public class App {
-    public static AppConfig appConfig = new AppConfig();
+    /**
+     * 当前的配置，读取时通过 {@link ConfigHolder#get()} 获取不可变的快照，修改时通过 {@link ConfigHolder#update} 发布新的快照
+     */
+    public static final ConfigHolder configHolder = new ConfigHolder(new AppConfig());
+    /**
+     * 配置文件的写入，合并短时间内的多次修改
+     */
+    public static final ConfigPersister configPersister = new ConfigPersister(configHolder);
 
     public static void main(String[] args) {
         LogUtil.init();
@@ -20,8 +30,15 @@ public class App {
             CommandLineArgs cmdArgs = CommandLineArgs.parse(args);
 
             // 加载配置
-            appConfig = AppConfig.load(cmdArgs.getConfigPath());
+            configHolder.set(AppConfig.load(cmdArgs.getConfigPath()));
+            configPersister.markClean();
+            // 按照配置重新初始化日志
+            LogUtil.init(buildLogConfig(configHolder.get()));
 
+            // 程序退出时写入还没有保存的配置
+            Runtime.getRuntime().addShutdownHook(new Thread(configPersister::shutdown, "config-flush"));
+
+            AppConfig appConfig = configHolder.get();
             int port = appConfig.getPort();
             // 端口优先使用命令行参数
             if (cmdArgs.getPort() != null) {
@@ -30,15 +47,17 @@ public class App {
 
             // 创建证书服务
             CertService certService = new CertService();
-            // 启动循环任务
+            // 启动证书到期调度
             certService.startLoop();
+            // 启动本地证书目录监听
+            certService.startWatcher();
 
             // 如果有配置 HTTP 服务，俺么启动 HTTP 服务器
             SimpleHttpServer server = new SimpleHttpServer(certService);
             if (!Boolean.TRUE.equals(appConfig.getRunServer())) {
                 LogUtil.info("配置文件中设置了不启动 HTTP 服务器，程序将不会启动 HTTP 服务器!");
             } else if (port <= 0 || port > 65535) {
-                LogUtil.warn("端口不在正常范围内: %s, 将不会启动 HTTP 服务器!".formatted(port));
+                LogUtil.warn("端口不在正常范围内: %s, 将不会启动 HTTP 服务器!", port);
             } else {
                 server.start(port);
             }
@@ -63,24 +82,30 @@ public class App {
                 switch (input) {
                     case "exit":
                         LogUtil.info("程序退出");
+                        configPersister.shutdown();
                         break label;
                     case "start server":
                         LogUtil.info("启动 HTTP 服务器......");
-                        server.start(appConfig.getPort());
+                        server.start(configHolder.get().getPort());
                         break;
                     case "stop server":
                         LogUtil.info("停止 HTTP 服务器......");
                         server.stop();
                         break;
                     case "reload config":
-                        appConfig = AppConfig.load(cmdArgs.getConfigPath());
+                        configHolder.set(AppConfig.load(cmdArgs.getConfigPath()));
+                        configPersister.markClean();
                         LogUtil.info("配置文件重新加载成功");
+                        // 监听的目录可能发生了变化，重新启动目录监听
+                        certService.stopWatcher();
+                        certService.startWatcher();
+                        certService.reloadSchedule();
                         break;
                     case "help":
                         LogUtil.info("可用命令: exit, start server, stop server, reload config, help");
                         break;
                     default:
-                        LogUtil.warn("未知命令: %s".formatted(input));
+                        LogUtil.warn("未知命令: %s", input);
                         break;
                 }
             }
@@ -90,4 +115,12 @@ public class App {
         }
     }
 
+    private static LogUtil.Config buildLogConfig(AppConfig appConfig) {
+        LogUtil.Config logConfig = new LogUtil.Config();
+        logConfig.setLogToFile(Boolean.TRUE.equals(appConfig.getEnableLogToFile()));
+        logConfig.setLogFilePath(Path.of(appConfig.getLogPath() != null ? appConfig.getLogPath() : "data/logs", "app.log").toString());
+        logConfig.setAsync(!Boolean.FALSE.equals(appConfig.getEnableAsyncLog()));
+        logConfig.setJsonLines(Boolean.TRUE.equals(appConfig.getEnableJsonLog()));
+        return logConfig;
+    }
 }
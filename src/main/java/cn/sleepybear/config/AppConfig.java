@@ -7,18 +7,24 @@ import lombok.Data;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
 @Data
-public class AppConfig {
+public class AppConfig implements Cloneable {
     /**
      * 配置文件的路径，这个需要在程序启动时指定，若果没有指定，则使用默认的配置文件路径
      */
     private String configPath = "data/config.json";
 
+    /**
+     * 配置变化后等待多少毫秒再写入配置文件，期间的多次修改合并为一次写入，默认 1000，不大于 0 时每次修改都立即写入
+     */
+    private Integer configSaveDebounceMillis = 1000;
+
     private Integer port = 30900;
     private Boolean runServer = true;
 
@@ -29,6 +35,14 @@ public class AppConfig {
 
     private String logPath = "data/logs";
     private Boolean enableLogToFile = false;
+    /**
+     * 是否在后台线程中输出日志，默认 true
+     */
+    private Boolean enableAsyncLog = true;
+    /**
+     * 是否把日志输出为每行一个 JSON 对象，便于日志采集，默认 false
+     */
+    private Boolean enableJsonLog = false;
 
     /**
      * 需要扫描的本地的证书的路径列表
@@ -38,6 +52,153 @@ public class AppConfig {
      * 本地证书路径扫描的最大深度，默认 2 层
      */
     private Integer sslCertPathMaxDepth = 2;
+    /**
+     * 本地证书扫描的并行度，同时遍历的目录数量以及同时解析的证书数量的上限，默认 4
+     */
+    private Integer sslCertScanParallelism = 4;
+    /**
+     * 是否监听本地证书目录的变化，开启后目录中的证书变化会自动增量更新，不需要手动刷新
+     */
+    private Boolean enableSslCertWatch = false;
+    /**
+     * 监听到目录变化后，等待多少毫秒内没有新的变化再统一更新，用来合并解压证书包等产生的一连串事件，默认 1000
+     */
+    private Integer sslCertWatchDebounceMillis = 1000;
+    /**
+     * 监听到目录变化后最多等待多少毫秒就开始更新，目录中一直有新的事件（例如日志文件）时也不会无限推迟更新，默认 10000
+     */
+    private Integer sslCertWatchMaxDelayMillis = 10000;
+
+    /**
+     * 刷新本地证书或者同步云平台证书完成之后，多少毫秒内的刷新请求直接复用上一次的结果，默认 2000，不大于 0 时不复用。
+     * 刷新进行中时到达的请求总是等待并共享这一次的结果
+     */
+    private Integer refreshFreshnessMillis = 2000;
+
+    /**
+     * 同时执行的后台任务（异步刷新等）数量上限，默认 2
+     */
+    private Integer jobConcurrency = 2;
+    /**
+     * 已经结束的后台任务保留多少秒之后清理，默认 600
+     */
+    private Integer jobRetentionSeconds = 600;
+    /**
+     * 最多保留多少个后台任务，默认 1000
+     */
+    private Integer jobMaxRetained = 1000;
+
+    /**
+     * 分页查询腾讯云证书列表时每页的数量，默认 100，腾讯云允许的最大值为 1000
+     */
+    private Integer tencentCertPageSize = 100;
+    /**
+     * 分页查询腾讯云证书列表时，同一个账号同时请求的页数上限，默认 4
+     */
+    private Integer tencentCertPageConcurrency = 4;
+    /**
+     * 访问云平台接口的 HTTP 客户端是否优先使用 HTTP/2，服务端不支持时自动降级为 HTTP/1.1，默认 true
+     */
+    private Boolean httpClientPreferHttp2 = true;
+    /**
+     * HTTP 客户端建立连接的超时时间，单位：毫秒，默认 5000
+     */
+    private Integer httpClientConnectTimeoutMillis = 5000;
+    /**
+     * HTTP 客户端处理异步任务的线程数，0 表示每个任务使用一个虚拟线程，默认 0
+     */
+    private Integer httpClientExecutorThreads = 0;
+    /**
+     * HTTP 客户端空闲连接保留的时间，期间同一个地址的请求复用连接，单位：秒，默认 30。
+     * 对应 JVM 参数 jdk.httpclient.keepalive.timeout，只在第一次创建 HTTP 客户端之前设置有效
+     */
+    private Integer httpClientKeepAliveSeconds = 30;
+    /**
+     * HTTP 客户端每个地址最多保留的空闲连接数，0 表示不限制，默认 0。
+     * 对应 JVM 参数 jdk.httpclient.connectionPoolSize，只在第一次创建 HTTP 客户端之前设置有效
+     */
+    private Integer httpClientConnectionPoolSize = 0;
+    /**
+     * 腾讯云接口的请求地址，例如 http://127.0.0.1:8080，为空时使用 https://ssl.tencentcloudapi.com。
+     * 用于把请求指向代理或者本地的模拟服务，签名中的 host 仍然是腾讯云的域名
+     */
+    private String tencentApiEndpoint;
+    /**
+     * 腾讯云接口在客户端的限流，同一个 SecretId 的同一个接口每秒最多请求的次数，默认 10
+     */
+    private Integer tencentApiRateLimitPerSecond = 10;
+    /**
+     * 腾讯云接口单次请求的超时时间，单位：毫秒，默认 5000
+     */
+    private Integer tencentApiRequestTimeoutMillis = 5000;
+    /**
+     * 腾讯云接口被限流、返回 5xx 或者超时时的最大重试次数，默认 3
+     */
+    private Integer tencentApiMaxRetries = 3;
+    /**
+     * 重试的初始退避时间，每次重试翻倍并加上随机抖动，单位：毫秒，默认 200
+     */
+    private Integer tencentApiRetryBaseDelayMillis = 200;
+    /**
+     * 重试的最大退避时间，单位：毫秒，默认 5000
+     */
+    private Integer tencentApiRetryMaxDelayMillis = 5000;
+    /**
+     * 同一个账号连续失败多少次之后熔断，熔断期间该账号的请求直接失败，默认 5
+     */
+    private Integer tencentApiCircuitFailureThreshold = 5;
+    /**
+     * 熔断的持续时间，之后允许一次试探请求，成功则恢复，单位：秒，默认 60
+     */
+    private Integer tencentApiCircuitOpenSeconds = 60;
+
+    /**
+     * 同步云平台证书时，单个账号的超时时间，单位：秒，默认 20
+     */
+    private Integer cloudAccountTimeoutSeconds = 20;
+    /**
+     * 同步云平台证书时，所有账号整体的超时时间，单位：秒，默认 60
+     */
+    private Integer cloudSyncTimeoutSeconds = 60;
+
+    /**
+     * 同时下载证书包的数量上限，默认 4
+     */
+    private Integer certDownloadConcurrency = 4;
+    /**
+     * 下载证书包的超时时间，单位：秒，默认 60
+     */
+    private Integer certDownloadTimeoutSeconds = 60;
+
+    /**
+     * 部署证书时，最后一个证书下载完成之后等待多久没有新的证书再整批部署，单位：毫秒，默认 5000
+     */
+    private Integer certDeployDebounceMillis = 5000;
+    /**
+     * 部署证书时，批次中第一个证书最多等待多久就开始部署，单位：毫秒，默认 60000
+     */
+    private Integer certDeployMaxDelayMillis = 60000;
+    /**
+     * 每批证书部署之后执行一次的命令，例如 nginx -t && nginx -s reload，失败时还原这一批的证书，为空时不执行
+     */
+    private String certDeployCommand = "";
+    /**
+     * 部署后命令的超时时间，超时视为失败，单位：秒，默认 60
+     */
+    private Integer certDeployCommandTimeoutSeconds = 60;
+
+    /**
+     * TLS 探测默认的目标，格式为 host:port，一般为本机的 nginx，默认 127.0.0.1:443
+     */
+    private String tlsProbeTarget = "127.0.0.1:443";
+    /**
+     * TLS 探测同时建立的连接数量上限，默认 16
+     */
+    private Integer tlsProbeConcurrency = 16;
+    /**
+     * TLS 探测单个域名连接和握手的超时时间，单位：毫秒，默认 5000
+     */
+    private Integer tlsProbeTimeoutMillis = 5000;
 
     private List<PlatformSslCertInfo> platformSslCertInfos = new ArrayList<>();
 
@@ -45,30 +206,44 @@ public class AppConfig {
         File configFile = new File(configPath);
         AppConfig config = new AppConfig();
         config.setConfigPath(configPath);
-        LogUtil.info("读取配置文件，位置： %s".formatted(configPath));
+        LogUtil.info("读取配置文件，位置： %s", configPath);
 
         if (configFile.exists() && configFile.isFile()) {
             try {
                 String json = Files.readString(configFile.toPath());
                 config = CommonUtils.GSON.fromJson(json, AppConfig.class);
             } catch (IOException e) {
-                LogUtil.warn("解析配置文件失败，请检查配置文件的格式。程序将使用默认配置。错误：%s".formatted(e.getMessage()));
+                LogUtil.warn("解析配置文件失败，请检查配置文件的格式。程序将使用默认配置。错误：%s", e.getMessage());
             }
         } else {
-            LogUtil.info("在给定的位置找不到对应的配置文件 %s, 程序将使用默认配置。".formatted(configPath));
+            LogUtil.info("在给定的位置找不到对应的配置文件 %s, 程序将使用默认配置。", configPath);
         }
 
         return config;
     }
 
+    /**
+     * 复制一份配置，列表会被复制，列表中的证书配置和原来的配置共用，修改某个证书配置前需要先 clone 再替换到列表中
+     */
+    @Override
+    public AppConfig clone() {
+        try {
+            AppConfig config = (AppConfig) super.clone();
+            config.sslCertPathList = sslCertPathList != null ? new ArrayList<>(sslCertPathList) : new ArrayList<>();
+            config.platformSslCertInfos = platformSslCertInfos != null ? new ArrayList<>(platformSslCertInfos) : new ArrayList<>();
+            return config;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     public void save() {
         try {
-            Files.createDirectories(Paths.get(configPath).getParent());
             String json = CommonUtils.GSON.toJson(this);
-            Files.writeString(Paths.get(configPath), json);
-            LogUtil.info("配置文件保存至：%s".formatted(configPath));
+            ConfigPersister.writeAtomically(Paths.get(configPath), json.getBytes(StandardCharsets.UTF_8));
+            LogUtil.info("配置文件保存至：%s", configPath);
         } catch (IOException e) {
-            LogUtil.error("保存配置文件到本地失败: %s".formatted(e.getMessage()), e);
+            LogUtil.error(e, "保存配置文件到本地失败: %s", e.getMessage());
         }
     }
 } 
\ No newline at end of file
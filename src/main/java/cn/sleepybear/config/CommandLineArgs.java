@@ -21,18 +21,18 @@ public class CommandLineArgs {
 
             if ("-c".equals(arg) && i + 1 < args.length) {
                 cmdArgs.setConfigPath(args[++i]);
-                LogUtil.info("读取配置文件，位置： %s".formatted(cmdArgs.getConfigPath()));
+                LogUtil.info("读取配置文件，位置： %s", cmdArgs.getConfigPath());
             } else if ("-p".equals(arg) && i + 1 < args.length) {
                 try {
                     int p = Integer.parseInt(args[++i]);
                     cmdArgs.setPort(p);
-                    LogUtil.info("端口设置为: %s".formatted(cmdArgs.getPort()));
+                    LogUtil.info("端口设置为: %s", cmdArgs.getPort());
                 } catch (NumberFormatException e) {
-                    LogUtil.warn("无效的端口号: %s, 使用默认端口".formatted(args[i]));
+                    LogUtil.warn("无效的端口号: %s, 使用默认端口", args[i]);
                 }
             } else if ("-k".equals(arg) && i + 1 < args.length) {
                 cmdArgs.setKeyPath(args[++i]);
-                LogUtil.info("密钥文件路径设置为: %s".formatted(cmdArgs.getKeyPath()));
+                LogUtil.info("密钥文件路径设置为: %s", cmdArgs.getKeyPath());
             }
         }
 
@@ -41,7 +41,7 @@ public class CommandLineArgs {
         try {
             Files.createDirectories(configFile.getParentFile().toPath());
         } catch (IOException e) {
-            LogUtil.error("创建配置文件目录失败: %s".formatted(e.getMessage()), e);
+            LogUtil.error(e, "创建配置文件目录失败: %s", e.getMessage());
         }
 
         return cmdArgs;
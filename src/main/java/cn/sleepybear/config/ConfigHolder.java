@@ -0,0 +1,114 @@
+package cn.sleepybear.config;
+
+import cn.sleepybear.util.LogUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * 配置的持有者，通过原子引用发布不可变的配置快照。
+ * <p>
+ * 读取配置不需要加锁，拿到的快照在之后也不会再被修改，序列化或者遍历证书列表时不会看到写了一半的列表。
+ * 修改配置时先复制当前快照，在副本上修改之后通过 compare-and-set 替换，
+ * 期间如果有其他线程先替换了快照，则基于新的快照重新执行修改。
+ * 发布的快照中的列表都是只读的，快照中的对象也不应该再被修改，需要修改某个证书配置时先复制一份再替换到副本的列表中，
+ * 没有修改的证书配置在前后两个快照中是同一个对象。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 08:03
+ */
+public class ConfigHolder {
+    private final AtomicReference<Snapshot> current;
+    private final List<Consumer<Snapshot>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 某个版本的配置，version 每次替换配置时递增
+     */
+    public record Snapshot(long version, AppConfig config) {
+    }
+
+    public ConfigHolder(AppConfig config) {
+        this.current = new AtomicReference<>(new Snapshot(1, freeze(config.clone())));
+    }
+
+    public Snapshot snapshot() {
+        return current.get();
+    }
+
+    /**
+     * 当前的配置，只能读取，不能修改
+     */
+    public AppConfig get() {
+        return current.get().config();
+    }
+
+    /**
+     * 直接替换整个配置，用于启动和重新加载配置
+     */
+    public Snapshot set(AppConfig config) {
+        AppConfig frozen = freeze(config.clone());
+        while (true) {
+            Snapshot prev = current.get();
+            Snapshot next = new Snapshot(prev.version() + 1, frozen);
+            if (current.compareAndSet(prev, next)) {
+                notifyListeners(next);
+                return next;
+            }
+        }
+    }
+
+    /**
+     * 在当前配置的副本上执行修改并发布。修改可能因为并发冲突被执行多次，所以 updater 只应该修改传入的副本
+     */
+    public Snapshot update(UnaryOperator<AppConfig> updater) {
+        return update((prev, config) -> updater.apply(config));
+    }
+
+    /**
+     * 同 {@link #update(UnaryOperator)}，updater 同时可以拿到副本对应的原快照
+     */
+    public Snapshot update(BiFunction<Snapshot, AppConfig, AppConfig> updater) {
+        while (true) {
+            Snapshot prev = current.get();
+            AppConfig next = freeze(updater.apply(prev, prev.config().clone()));
+            Snapshot snapshot = new Snapshot(prev.version() + 1, next);
+            if (current.compareAndSet(prev, snapshot)) {
+                notifyListeners(snapshot);
+                return snapshot;
+            }
+        }
+    }
+
+    /**
+     * 配置替换之后的回调，在替换配置的线程中执行
+     */
+    public void addListener(Consumer<Snapshot> listener) {
+        listeners.add(listener);
+    }
+
+    private void notifyListeners(Snapshot snapshot) {
+        for (Consumer<Snapshot> listener : listeners) {
+            try {
+                listener.accept(snapshot);
+            } catch (Exception e) {
+                LogUtil.error(e, "配置变化的回调执行失败: %s", e.getMessage());
+            }
+        }
+    }
+
+    private static AppConfig freeze(AppConfig config) {
+        config.setSslCertPathList(readOnly(config.getSslCertPathList()));
+        config.setPlatformSslCertInfos(readOnly(config.getPlatformSslCertInfos()));
+        return config;
+    }
+
+    private static <T> List<T> readOnly(List<T> list) {
+        return list == null ? List.of() : Collections.unmodifiableList(new ArrayList<>(list));
+    }
+}
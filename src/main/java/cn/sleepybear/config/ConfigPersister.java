@@ -0,0 +1,194 @@
+package cn.sleepybear.config;
+
+import cn.sleepybear.util.CommonUtils;
+import cn.sleepybear.util.LogUtil;
+import lombok.Data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 配置文件的持久化。
+ * <p>
+ * 配置变化时调用 {@link #requestSave()}，在 configSaveDebounceMillis 的时间窗口内的多次修改只会写一次文件，
+ * 写入的总是窗口结束时最新的配置快照。每次写入都先写到同一目录下的临时文件并 fsync，再原子地重命名为配置文件，
+ * 进程在写入过程中退出也不会留下不完整的配置文件。程序退出时通过 {@link #flush()} 写入还没有保存的修改。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 08:05
+ */
+public class ConfigPersister {
+    private final ConfigHolder holder;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "config-persister");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 是否已经安排了一次写入，窗口内的其他保存请求会合并到这次写入中
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Object writeLock = new Object();
+    private volatile long lastWrittenVersion;
+
+    private final AtomicLong saveRequests = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private volatile long lastWriteCostMillis;
+    private volatile long lastWriteBytes;
+
+    @Data
+    public static class Stats {
+        /**
+         * 保存请求的次数
+         */
+        private long saveRequests;
+        /**
+         * 实际写入文件的次数
+         */
+        private long writes;
+        /**
+         * 被合并掉、没有单独写入文件的保存请求次数
+         */
+        private long writesAvoided;
+        private long failures;
+        private long bytesWritten;
+        /**
+         * 最近一次写入的配置文件大小，单位：字节
+         */
+        private long lastWriteBytes;
+        private long lastWriteCostMillis;
+        private long lastWrittenVersion;
+    }
+
+    public ConfigPersister(ConfigHolder holder) {
+        this.holder = holder;
+    }
+
+    /**
+     * 请求保存当前的配置，时间窗口内的多次请求合并为一次写入，时间窗口不大于 0 时立即写入
+     */
+    public void requestSave() {
+        saveRequests.incrementAndGet();
+        Integer debounceMillis = holder.get().getConfigSaveDebounceMillis();
+        if (debounceMillis == null || debounceMillis <= 0) {
+            flush();
+            return;
+        }
+
+        if (scheduled.compareAndSet(false, true)) {
+            executor.schedule(() -> {
+                scheduled.set(false);
+                flush();
+            }, debounceMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 立即写入最新的配置，已经写入过的版本不会重复写入
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            ConfigHolder.Snapshot snapshot = holder.snapshot();
+            if (snapshot.version() == lastWrittenVersion) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            AppConfig config = snapshot.config();
+            try {
+                long size = writeAtomically(Paths.get(config.getConfigPath()), CommonUtils.GSON.toJson(config).getBytes(StandardCharsets.UTF_8));
+                lastWrittenVersion = snapshot.version();
+                writes.incrementAndGet();
+                bytesWritten.addAndGet(size);
+                lastWriteBytes = size;
+                lastWriteCostMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                LogUtil.info("配置文件保存至：%s, 大小: %s 字节, 耗时: %s ms, 累计合并的保存请求: %s", config.getConfigPath(), size, lastWriteCostMillis, getWritesAvoided());
+            } catch (IOException e) {
+                failures.incrementAndGet();
+                LogUtil.error(e, "保存配置文件到本地失败: %s", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 把当前的配置标记为已经保存，用于刚从配置文件加载配置之后
+     */
+    public void markClean() {
+        synchronized (writeLock) {
+            lastWrittenVersion = holder.snapshot().version();
+        }
+    }
+
+    /**
+     * 写入还没有保存的修改并停止后台写入，用于程序退出
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        flush();
+    }
+
+    public Stats getStats() {
+        Stats stats = new Stats();
+        stats.setSaveRequests(saveRequests.get());
+        stats.setWrites(writes.get());
+        stats.setWritesAvoided(getWritesAvoided());
+        stats.setFailures(failures.get());
+        stats.setBytesWritten(bytesWritten.get());
+        stats.setLastWriteBytes(lastWriteBytes);
+        stats.setLastWriteCostMillis(lastWriteCostMillis);
+        stats.setLastWrittenVersion(lastWrittenVersion);
+        return stats;
+    }
+
+    private long getWritesAvoided() {
+        return Math.max(0, saveRequests.get() - writes.get() - failures.get());
+    }
+
+    /**
+     * 先写入同一目录下的临时文件并 fsync，再原子地重命名为目标文件，返回写入的字节数
+     */
+    public static long writeAtomically(Path target, byte[] content) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tempFile = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            syncDirectory(dir);
+            return content.length;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * fsync 目录，让重命名本身也落盘。部分平台（如 Windows）不支持打开目录，忽略即可
+     */
+    private static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException | UnsupportedOperationException ignored) {
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package cn.sleepybear.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 从证书文件中解析出的证书信息，主题、签发者、SAN 和指纹取自第一张（叶子）证书
+ *
+ * @author sleepybear
+ * @date 2026/10/18 08:32
+ */
+@Data
+public class CertDetails {
+    /**
+     * 主题，例如 CN=example.com
+     */
+    private String subject;
+    /**
+     * 主题中的 CN
+     */
+    private String commonName;
+    private String issuer;
+    /**
+     * SAN 中的 DNS 名称和 IP 地址
+     */
+    private List<String> subjectAltNames;
+    /**
+     * 叶子证书 DER 编码的 SHA-256，小写十六进制
+     */
+    private String fingerprintSha256;
+    /**
+     * 叶子证书的生效时间和过期时间，13 位时间戳
+     */
+    private Long startTimeAt;
+    private Long expireTimeAt;
+    /**
+     * 证书链中所有证书最早的过期时间，中间证书先过期时早于 expireTimeAt
+     */
+    private Long chainExpireTimeAt;
+    /**
+     * 证书文件中的证书数量
+     */
+    private Integer chainLength;
+
+    /**
+     * 证书中的所有名称：SAN，以及不在 SAN 中的 CN
+     */
+    public List<String> getNames() {
+        List<String> names = new ArrayList<>(subjectAltNames != null ? subjectAltNames : List.of());
+        if (commonName != null && names.stream().noneMatch(commonName::equalsIgnoreCase)) {
+            names.addFirst(commonName);
+        }
+        return names;
+    }
+
+    /**
+     * 证书的名称中是否有与 name 完全相同的（忽略大小写）
+     */
+    public boolean hasName(String name) {
+        if (name == null) {
+            return false;
+        }
+        String lowerName = name.toLowerCase(Locale.ROOT);
+        return getNames().stream().anyMatch(n -> n.toLowerCase(Locale.ROOT).equals(lowerName));
+    }
+}
@@ -10,6 +10,10 @@ public class CertInfo {
     private File crtFile;
     private Long expireTimeAt;
     private String domain;
+    /**
+     * 证书的主题、SAN、签发者和指纹等信息
+     */
+    private CertDetails details;
 
     public CertInfo(File keyFile, File crtFile, Long expireTimeAt, String domain) {
         this.keyFile = keyFile;
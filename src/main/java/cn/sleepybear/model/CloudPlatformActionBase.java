@@ -17,7 +17,10 @@ public class CloudPlatformActionBase {
         return VALID_PLATFORMS.contains(platform);
     }
 
-    public List<PlatformSslCertInfo> getCertInfoList(CloudApiKey apiKey) {
+    /**
+     * 查询账号下的证书信息，查询失败时抛出异常，由调用方决定如何处理
+     */
+    public List<PlatformSslCertInfo> getCertInfoList(CloudApiKey apiKey) throws Exception {
         if (apiKey == null) {
             return new ArrayList<>();
         }
@@ -33,19 +36,15 @@ public class CloudPlatformActionBase {
 
         List<PlatformSslCertInfo> certInfoList = new ArrayList<>();
         // 根据平台类型调用相应的 API 获取证书信息
-        try {
-            switch (platform) {
-                case "tencent":
-                    // 调用腾讯云API获取证书信息
-                    return new TencentCloudPlatformApi().getCertInfoList(apiKey);
-                // 其他平台的处理逻辑
-                case "aliyun":
-                    break;
-                default:
-                    break;
-            }
-        } catch (Exception e) {
-            return new ArrayList<>();
+        switch (platform) {
+            case "tencent":
+                // 调用腾讯云API获取证书信息
+                return new TencentCloudPlatformApi().getCertInfoList(apiKey);
+            // 其他平台的处理逻辑
+            case "aliyun":
+                break;
+            default:
+                break;
         }
 
         return certInfoList;
@@ -0,0 +1,44 @@
+package cn.sleepybear.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一次云平台证书同步的结果，记录每个账号是成功、超时还是失败
+ *
+ * @author sleepybear
+ * @date 2026/10/18 07:50
+ */
+@Data
+public class CloudSyncResult {
+    public static final String STATUS_SUCCESS = "success";
+    public static final String STATUS_TIMEOUT = "timeout";
+    public static final String STATUS_FAILED = "failed";
+
+    private Long costMillis;
+    private List<AccountResult> accounts = new ArrayList<>();
+
+    public boolean isAllSuccess() {
+        return accounts.stream().allMatch(account -> STATUS_SUCCESS.equals(account.getStatus()));
+    }
+
+    @Data
+    public static class AccountResult {
+        private String cloudPlatform;
+        private String accountId;
+        /**
+         * 隐藏了中间部分的 SecretId，只用于区分账号，不返回原始的 SecretId
+         */
+        private String secretId;
+
+        /**
+         * success / timeout / failed
+         */
+        private String status;
+        private Integer certCount;
+        private Long costMillis;
+        private String message;
+    }
+}
@@ -2,6 +2,8 @@ package cn.sleepybear.model;
 
 import lombok.Data;
 
+import java.util.List;
+
 /**
  * There is description
  *
@@ -9,7 +11,7 @@ import lombok.Data;
  * @date 2025/04/06 23:22
  */
 @Data
-public class PlatformSslCertInfo {
+public class PlatformSslCertInfo implements Cloneable {
     private String id;
     private String cloudPlatform;
     private String accountId;
@@ -58,6 +60,26 @@ public class PlatformSslCertInfo {
      * .crt 证书文件名，需要配合 {@link #localParentFoldPath} 使用
      */
     private String crtFilename;
+    /**
+     * 本地证书 SAN 中的名称，需要配合 {@link #crtFilename} 使用
+     */
+    private List<String> subjectAltNames;
+    /**
+     * 本地证书的签发者
+     */
+    private String issuer;
+    /**
+     * 本地证书的 SHA-256 指纹，小写十六进制
+     */
+    private String fingerprintSha256;
+    /**
+     * 本地证书链中最早的过期时间，13 位时间戳
+     */
+    private Long chainExpireTimeAt;
+    /**
+     * TLS 探测的目标，格式为 host:port，为空时使用全局配置 tlsProbeTarget
+     */
+    private String probeTarget;
 
     /**
      * 用户备注信息
@@ -69,5 +91,16 @@ public class PlatformSslCertInfo {
      */
     private Long lastUpdateTime;
 
-
+    /**
+     * 除了 {@link #subjectAltNames} 之外所有字段都是不可变的类型，subjectAltNames 只会整体替换为不可变的列表、不会原地修改，
+     * 因此浅拷贝就是完整的副本
+     */
+    @Override
+    public PlatformSslCertInfo clone() {
+        try {
+            return (PlatformSslCertInfo) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
 }
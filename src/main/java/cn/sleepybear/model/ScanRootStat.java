@@ -0,0 +1,34 @@
+package cn.sleepybear.model;
+
+import lombok.Data;
+
+/**
+ * 单个扫描根目录的统计信息，用于定位哪个挂载点扫描得慢
+ *
+ * @author sleepybear
+ * @date 2026/10/18 07:44
+ */
+@Data
+public class ScanRootStat {
+    private String root;
+
+    /**
+     * 该根目录从开始遍历到最后一个证书解析完成的耗时，单位：毫秒
+     */
+    private Long costMillis;
+
+    /**
+     * 遍历到的普通文件数量
+     */
+    private Long filesVisited;
+
+    /**
+     * 找到的证书文件（.crt/.cer/.der）数量
+     */
+    private Long crtFilesFound;
+
+    /**
+     * 成功解析出的证书数量
+     */
+    private Long certsParsed;
+}
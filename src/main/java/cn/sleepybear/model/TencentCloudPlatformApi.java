@@ -1,12 +1,13 @@
 package cn.sleepybear.model;
 
+import cn.sleepybear.App;
+import cn.sleepybear.config.AppConfig;
 import cn.sleepybear.service.CertService;
 import cn.sleepybear.util.TencentCloudApi;
 
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * There is description
@@ -15,17 +16,21 @@ import java.util.List;
  * @date 2025/04/06 23:17
  */
 public class TencentCloudPlatformApi implements CloudPlatformApi {
+    /**
+     * DescribeCertificates 单页的最大数量
+     */
+    private static final int MAX_PAGE_SIZE = 1000;
+
     @Override
     public List<PlatformSslCertInfo> getCertInfoList(CloudApiKey apiKey) throws Exception {
         List<PlatformSslCertInfo> list = new ArrayList<>();
 
-        TencentCloudApi.DescribeCertificatesResponse describeCertificatesResponse = TencentCloudApi.describeCertificates(new TencentCloudApi.QueryParams(), apiKey.getSecretId(), apiKey.getSecretKey());
-        if (describeCertificatesResponse == null) {
-            return list;
-        }
-
-        List<TencentCloudApi.DescribeCertificatesResponse.Certificates> certificates = describeCertificatesResponse.getCertificates();
-        if (certificates == null || certificates.isEmpty()) {
+        AppConfig appConfig = App.configHolder.get();
+        Integer pageSize = appConfig.getTencentCertPageSize();
+        Integer pageConcurrency = appConfig.getTencentCertPageConcurrency();
+        List<TencentCloudApi.DescribeCertificatesResponse.Certificates> certificates = describeAllCertificates(apiKey,
+                pageSize != null ? pageSize : 100, pageConcurrency != null ? pageConcurrency : 1);
+        if (certificates.isEmpty()) {
             return list;
         }
 
@@ -52,6 +57,75 @@ public class TencentCloudPlatformApi implements CloudPlatformApi {
         return list;
     }
 
+    /**
+     * 分页获取账号下的所有证书。先查询第一页拿到 TotalCount，再并发查询剩余的页，同时请求的页数不超过 pageConcurrency。
+     * 结果按照页的顺序合并，并按照证书 ID 去重（翻页期间证书列表发生变化时，相邻的页可能会有重复）。
+     * 任意一页查询失败都会抛出异常，避免静默地丢失一部分证书
+     */
+    public static List<TencentCloudApi.DescribeCertificatesResponse.Certificates> describeAllCertificates(CloudApiKey apiKey, int pageSize, int pageConcurrency) throws Exception {
+        int limit = Math.min(Math.max(1, pageSize), MAX_PAGE_SIZE);
+
+        TencentCloudApi.DescribeCertificatesResponse firstPage = describePage(apiKey, 0, limit);
+        Map<String, TencentCloudApi.DescribeCertificatesResponse.Certificates> certificateMap = new LinkedHashMap<>();
+        addCertificates(certificateMap, firstPage);
+
+        int totalCount = firstPage.getTotalCount() != null ? firstPage.getTotalCount() : 0;
+        if (totalCount <= limit) {
+            return new ArrayList<>(certificateMap.values());
+        }
+
+        Semaphore permits = new Semaphore(Math.max(1, pageConcurrency));
+        List<Future<TencentCloudApi.DescribeCertificatesResponse>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int offset = limit; offset < totalCount; offset += limit) {
+                int pageOffset = offset;
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return describePage(apiKey, pageOffset, limit);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+
+            for (Future<TencentCloudApi.DescribeCertificatesResponse> future : futures) {
+                try {
+                    addCertificates(certificateMap, future.get());
+                } catch (ExecutionException e) {
+                    futures.forEach(f -> f.cancel(true));
+                    throw e.getCause() instanceof Exception cause ? cause : e;
+                }
+            }
+        }
+
+        return new ArrayList<>(certificateMap.values());
+    }
+
+    private static TencentCloudApi.DescribeCertificatesResponse describePage(CloudApiKey apiKey, int offset, int limit) throws Exception {
+        TencentCloudApi.DescribeCertificatesQuery query = new TencentCloudApi.DescribeCertificatesQuery();
+        query.setOffset(offset);
+        query.setLimit(limit);
+
+        TencentCloudApi.DescribeCertificatesResponse response = TencentCloudApi.describeCertificates(query, apiKey.getSecretId(), apiKey.getSecretKey());
+        if (response == null) {
+            throw new IllegalStateException("查询腾讯云证书列表失败，响应为空, offset: %s".formatted(offset));
+        }
+        if (response.getError() != null) {
+            throw new IllegalStateException("查询腾讯云证书列表失败, offset: %s, %s: %s".formatted(offset, response.getError().getCode(), response.getError().getMessage()));
+        }
+        return response;
+    }
+
+    private static void addCertificates(Map<String, TencentCloudApi.DescribeCertificatesResponse.Certificates> certificateMap, TencentCloudApi.DescribeCertificatesResponse response) {
+        if (response.getCertificates() == null) {
+            return;
+        }
+        for (TencentCloudApi.DescribeCertificatesResponse.Certificates certificate : response.getCertificates()) {
+            certificateMap.putIfAbsent(certificate.getCertificateId(), certificate);
+        }
+    }
+
     public static void main(String[] args) throws Exception {
         List<CloudApiKey> cloudApiKeys = CertService.loadApiKeys("key.txt");
         if (cloudApiKeys.isEmpty()) {
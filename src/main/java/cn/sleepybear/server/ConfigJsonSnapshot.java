@@ -0,0 +1,113 @@
+package cn.sleepybear.server;
+
+import cn.sleepybear.config.AppConfig;
+import cn.sleepybear.config.ConfigHolder;
+import cn.sleepybear.util.CommonUtils;
+import cn.sleepybear.util.Tc3Signer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * /api/getConfigJson 的响应缓存。
+ * <p>
+ * 配置序列化后的字节按照配置快照缓存起来，只有配置变化（发布了新的快照）之后才会重新生成，
+ * 每个版本同时缓存格式化和紧凑两种 JSON，以及它们的 gzip 压缩结果。ETag 由紧凑 JSON 的 SHA-256 计算，
+ * 内容不变时重启程序之后 ETag 也不会变化。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 08:00
+ */
+public class ConfigJsonSnapshot {
+    private static volatile ConfigJsonSnapshot current;
+
+    private final ConfigHolder.Snapshot source;
+    private final String etag;
+    private final Variant pretty;
+    private final Variant compact;
+
+    /**
+     * 一种输出格式的响应体，以及对应的 ETag
+     */
+    public record Variant(byte[] body, byte[] gzipBody, String etag, String gzipEtag) {
+        public byte[] body(boolean gzip) {
+            return gzip ? gzipBody : body;
+        }
+
+        public String etag(boolean gzip) {
+            return gzip ? gzipEtag : etag;
+        }
+    }
+
+    private ConfigJsonSnapshot(ConfigHolder.Snapshot source) {
+        this.source = source;
+        AppConfig config = source.config();
+
+        byte[] compactBody = CommonUtils.GSON_COMPACT.toJson(config).getBytes(StandardCharsets.UTF_8);
+        byte[] prettyBody = CommonUtils.GSON.toJson(config).getBytes(StandardCharsets.UTF_8);
+        this.etag = sha256Hex(compactBody).substring(0, 32);
+        this.compact = newVariant(compactBody, etag + "-c");
+        this.pretty = newVariant(prettyBody, etag + "-p");
+    }
+
+    /**
+     * 获取配置快照对应的响应缓存，配置快照变化时重新生成
+     */
+    public static ConfigJsonSnapshot get(ConfigHolder.Snapshot source) {
+        ConfigJsonSnapshot snapshot = current;
+        if (snapshot != null && snapshot.source == source) {
+            return snapshot;
+        }
+
+        synchronized (ConfigJsonSnapshot.class) {
+            snapshot = current;
+            if (snapshot == null || snapshot.source != source) {
+                // 只缓存最新的版本，避免并发请求拿到旧的快照时覆盖掉新的缓存
+                snapshot = new ConfigJsonSnapshot(source);
+                if (current == null || current.getVersion() < source.version()) {
+                    current = snapshot;
+                }
+            }
+            return snapshot;
+        }
+    }
+
+    public long getVersion() {
+        return source.version();
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public Variant getVariant(boolean compact) {
+        return compact ? this.compact : this.pretty;
+    }
+
+    private static Variant newVariant(byte[] body, String etag) {
+        return new Variant(body, gzip(body), "\"" + etag + "\"", "\"" + etag + "-gz\"");
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static String sha256Hex(byte[] bytes) {
+        try {
+            return Tc3Signer.toHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package cn.sleepybear.server;
+
+import cn.sleepybear.util.CommonUtils;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * 流式输出 JSON 响应。
+ * <p>
+ * 响应使用 chunked 编码，通过 Gson 的 JsonWriter 边生成边写入 exchange.getResponseBody()，不会先把整个响应拼成字符串。
+ * 列表类的数据通过 {@link Page} 分页，服务端每次只输出一页。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 08:16
+ */
+public class JsonStream {
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    @FunctionalInterface
+    public interface Body {
+        void write(JsonWriter out) throws IOException;
+    }
+
+    /**
+     * 可以分页输出的结果
+     */
+    public interface PagedBody {
+        void write(JsonWriter out, Page page) throws IOException;
+    }
+
+    /**
+     * 分页参数，offset 从 0 开始，没有指定 limit 时不限制数量
+     */
+    public record Page(int offset, int limit) {
+        public static final Page ALL = new Page(0, Integer.MAX_VALUE);
+
+        /**
+         * 从请求参数 offset 和 limit 中解析分页参数，格式错误时抛出 NumberFormatException
+         */
+        public static Page of(Map<String, String> params) {
+            int offset = params.containsKey("offset") ? Integer.parseInt(params.get("offset")) : 0;
+            int limit = params.containsKey("limit") ? Integer.parseInt(params.get("limit")) : Integer.MAX_VALUE;
+            if (offset < 0 || limit < 0) {
+                throw new NumberFormatException("offset 和 limit 不能小于 0");
+            }
+            return new Page(offset, limit);
+        }
+
+        /**
+         * 第 index 个元素（从 0 开始）是否在这一页中
+         */
+        public boolean contains(long index) {
+            return index >= offset && index - offset < limit;
+        }
+
+        /**
+         * 一共 total 个元素时下一页的 offset，没有下一页时返回 null
+         */
+        public Integer nextOffset(long total) {
+            long next = (long) offset + limit;
+            return next < total ? (int) next : null;
+        }
+
+        /**
+         * 写入分页信息：offset、limit（不限制时不输出）、total 和 nextOffset
+         */
+        public void writeInfo(JsonWriter out, long total) throws IOException {
+            out.name("offset").value(offset);
+            if (limit != Integer.MAX_VALUE) {
+                out.name("limit").value(limit);
+            }
+            out.name("total").value(total);
+            Integer nextOffset = nextOffset(total);
+            if (nextOffset != null) {
+                out.name("nextOffset").value(nextOffset);
+            }
+        }
+    }
+
+    /**
+     * 以 chunked 编码发送 JSON 响应。响应头发送之后出现的异常无法再返回错误状态码，只能中断连接：
+     * 这时不关闭响应体（关闭会写入 chunked 的结束块，客户端会把截断的 JSON 当作完整的响应），异常继续抛出，由 HttpServer 断开连接
+     */
+    public static void send(HttpExchange exchange, int statusCode, Body body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(statusCode, 0);
+        JsonWriter out = new JsonWriter(new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), BUFFER_SIZE));
+        body.write(out);
+        out.close();
+    }
+
+    /**
+     * 响应头是否已经发送，已经发送之后不能再返回错误响应
+     */
+    public static boolean isResponseStarted(HttpExchange exchange) {
+        return exchange.getResponseCode() != -1;
+    }
+
+    /**
+     * 用 Gson 把对象直接写入 JsonWriter
+     */
+    public static void writeValue(JsonWriter out, Object value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        CommonUtils.GSON.toJson(value, value.getClass(), out);
+    }
+}
@@ -0,0 +1,264 @@
+package cn.sleepybear.server;
+
+import cn.sleepybear.App;
+import cn.sleepybear.config.ConfigHolder;
+import cn.sleepybear.config.ConfigPersister;
+import cn.sleepybear.model.PlatformSslCertInfo;
+import cn.sleepybear.model.ScanRootStat;
+import cn.sleepybear.service.CertDeployer;
+import cn.sleepybear.service.CertService;
+import cn.sleepybear.service.LocalCertScanner;
+import cn.sleepybear.util.HttpLatencyStats;
+import cn.sleepybear.util.KeyPairVerifier;
+import cn.sleepybear.util.LatencyHistogram;
+import cn.sleepybear.util.TencentCloudApi;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prometheus 文本格式的指标。
+ * <p>
+ * 指标的数据都来自各个模块已有的统计（扫描统计、云平台接口的耗时直方图、配置保存统计、配置快照），
+ * 只在抓取时读取并输出；本类自己记录的只有 HTTP 请求的耗时，记录时只是 LongAdder 加一，请求路径上没有锁。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 08:23
+ */
+public class PrometheusMetrics {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String PREFIX = "sslcert_";
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * HTTP 请求的统计，key 为注册的路径
+     */
+    private static final Map<String, RequestTimings> requestTimings = new ConcurrentHashMap<>();
+
+    private static class RequestTimings {
+        private final LatencyHistogram duration = new LatencyHistogram();
+        private final Map<Integer, LongAdder> byStatus = new ConcurrentHashMap<>();
+
+        private void record(long nanos, int status) {
+            duration.record(nanos);
+            byStatus.computeIfAbsent(status, k -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * 记录 HTTP 请求耗时和状态码的过滤器，每个路径注册一个
+     */
+    public static class RequestTimingFilter extends Filter {
+        private final RequestTimings timings;
+
+        public RequestTimingFilter(String context) {
+            this.timings = requestTimings.computeIfAbsent(context, k -> new RequestTimings());
+        }
+
+        @Override
+        public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+            long start = System.nanoTime();
+            try {
+                chain.doFilter(exchange);
+            } finally {
+                // 没有发送响应时状态码为 -1
+                timings.record(System.nanoTime() - start, exchange.getResponseCode());
+            }
+        }
+
+        @Override
+        public String description() {
+            return "记录请求耗时";
+        }
+    }
+
+    public static String render() {
+        Output out = new Output();
+        writeScanMetrics(out);
+        writeCloudApiMetrics(out);
+        writeConfigMetrics(out);
+        writeHttpMetrics(out);
+        writeExpiryMetrics(out);
+        return out.toString();
+    }
+
+    private static void writeScanMetrics(Output out) {
+        out.help("scan_duration_seconds", "gauge", "最近一次完整扫描每个根目录的耗时");
+        for (ScanRootStat stat : CertService.getLastScanRootStats()) {
+            out.sample("scan_duration_seconds", labels("root", stat.getRoot()), millisToSeconds(stat.getCostMillis()));
+        }
+        out.help("scan_files_visited", "gauge", "最近一次完整扫描每个根目录遍历到的文件数");
+        for (ScanRootStat stat : CertService.getLastScanRootStats()) {
+            out.sample("scan_files_visited", labels("root", stat.getRoot()), stat.getFilesVisited());
+        }
+        out.help("scan_crt_files_found", "gauge", "最近一次完整扫描每个根目录找到的证书文件数");
+        for (ScanRootStat stat : CertService.getLastScanRootStats()) {
+            out.sample("scan_crt_files_found", labels("root", stat.getRoot()), stat.getCrtFilesFound());
+        }
+        out.help("scan_certs_parsed", "gauge", "最近一次完整扫描每个根目录解析出的有效证书数");
+        for (ScanRootStat stat : CertService.getLastScanRootStats()) {
+            out.sample("scan_certs_parsed", labels("root", stat.getRoot()), stat.getCertsParsed());
+        }
+        out.help("cert_parse_failures_total", "counter", "证书解析失败的累计次数");
+        out.sample("cert_parse_failures_total", "", LocalCertScanner.getParseFailureCount());
+
+        CertDeployer.Stats deployStats = CertDeployer.getStats();
+        out.help("cert_deploy_batches_total", "counter", "证书部署的批次数");
+        out.sample("cert_deploy_batches_total", "", deployStats.batches());
+        out.help("cert_deployed_total", "counter", "部署成功的证书数");
+        out.sample("cert_deployed_total", "", deployStats.deployed());
+        out.help("cert_deploy_rollbacks_total", "counter", "部署之后被还原的证书数");
+        out.sample("cert_deploy_rollbacks_total", "", deployStats.rolledBack());
+        out.help("cert_deploy_command_failures_total", "counter", "部署后命令失败的次数");
+        out.sample("cert_deploy_command_failures_total", "", deployStats.commandFailures());
+
+        KeyPairVerifier.Stats keyStats = KeyPairVerifier.getStats();
+        out.help("key_verifications_total", "counter", "私钥与证书匹配的实际验证次数，不包括使用缓存的");
+        out.sample("key_verifications_total", "", keyStats.verifications());
+        out.help("key_verification_cache_hits_total", "counter", "私钥与证书匹配直接使用缓存结果的次数");
+        out.sample("key_verification_cache_hits_total", "", keyStats.cacheHits());
+        out.help("key_mismatches_total", "counter", "私钥与证书不匹配的次数");
+        out.sample("key_mismatches_total", "", keyStats.mismatches());
+    }
+
+    private static void writeCloudApiMetrics(Output out) {
+        Map<String, HttpLatencyStats.Snapshot> byAction = HttpLatencyStats.snapshotByAction();
+        out.help("cloud_api_requests_total", "counter", "云平台接口的请求次数，包括重试");
+        byAction.forEach((action, snapshot) -> out.sample("cloud_api_requests_total", labels("action", action), snapshot.total().count()));
+        out.help("cloud_api_errors_total", "counter", "云平台接口网络错误和 5xx 的次数");
+        byAction.forEach((action, snapshot) -> out.sample("cloud_api_errors_total", labels("action", action), snapshot.errors()));
+        out.help("cloud_api_duration_seconds", "histogram", "云平台接口各阶段的耗时，phase 为 ttfb（包括域名解析和建立连接）或者 total");
+        byAction.forEach((action, snapshot) -> {
+            out.histogram("cloud_api_duration_seconds", labels("action", action, "phase", "ttfb"), snapshot.ttfb());
+            out.histogram("cloud_api_duration_seconds", labels("action", action, "phase", "total"), snapshot.total());
+        });
+
+        TencentCloudApi.Stats stats = TencentCloudApi.getStats();
+        out.help("cloud_api_retries_total", "counter", "云平台接口的重试次数");
+        out.sample("cloud_api_retries_total", "", stats.retries());
+        out.help("cloud_api_throttled_total", "counter", "云平台接口被限流的次数");
+        out.sample("cloud_api_throttled_total", "", stats.throttled());
+        out.help("cloud_api_failures_total", "counter", "重试之后仍然失败的云平台接口调用次数");
+        out.sample("cloud_api_failures_total", "", stats.failures());
+        out.help("cloud_api_circuit_rejected_total", "counter", "账号熔断期间被直接拒绝的调用次数");
+        out.sample("cloud_api_circuit_rejected_total", "", stats.circuitRejected());
+        out.help("cloud_api_circuit_open", "gauge", "账号是否处于熔断状态");
+        stats.openCircuits().forEach((account, state) -> out.sample("cloud_api_circuit_open", labels("account", account, "state", state), 1));
+    }
+
+    private static void writeConfigMetrics(Output out) {
+        ConfigPersister.Stats stats = App.configPersister.getStats();
+        out.help("config_save_requests_total", "counter", "配置保存请求的次数");
+        out.sample("config_save_requests_total", "", stats.getSaveRequests());
+        out.help("config_writes_total", "counter", "配置文件实际写入的次数");
+        out.sample("config_writes_total", "", stats.getWrites());
+        out.help("config_write_failures_total", "counter", "配置文件写入失败的次数");
+        out.sample("config_write_failures_total", "", stats.getFailures());
+        out.help("config_written_bytes_total", "counter", "配置文件累计写入的字节数");
+        out.sample("config_written_bytes_total", "", stats.getBytesWritten());
+        out.help("config_size_bytes", "gauge", "最近一次写入的配置文件大小");
+        out.sample("config_size_bytes", "", stats.getLastWriteBytes());
+        out.help("config_version", "gauge", "当前配置快照的版本号");
+        out.sample("config_version", "", App.configHolder.snapshot().version());
+    }
+
+    private static void writeHttpMetrics(Output out) {
+        Map<String, RequestTimings> sorted = new TreeMap<>(requestTimings);
+        out.help("http_requests_total", "counter", "HTTP 请求次数，code 为响应状态码");
+        sorted.forEach((context, timings) -> new TreeMap<>(timings.byStatus).forEach((status, count) ->
+                out.sample("http_requests_total", labels("context", context, "code", String.valueOf(status)), count.sum())));
+        out.help("http_request_duration_seconds", "histogram", "HTTP 请求的处理耗时，包括输出响应体");
+        sorted.forEach((context, timings) -> out.histogram("http_request_duration_seconds", labels("context", context), timings.duration.snapshot()));
+    }
+
+    private static void writeExpiryMetrics(Output out) {
+        ConfigHolder.Snapshot snapshot = App.configHolder.snapshot();
+        long now = System.currentTimeMillis();
+        out.help("cert_days_until_expiry", "gauge", "已启用的证书距离过期的天数，已过期时为负数");
+        if (snapshot.config().getPlatformSslCertInfos() == null) {
+            return;
+        }
+        for (PlatformSslCertInfo info : snapshot.config().getPlatformSslCertInfos()) {
+            if (info == null || !Boolean.TRUE.equals(info.getEnable()) || info.getExpireTimeAt() == null) {
+                continue;
+            }
+            out.sample("cert_days_until_expiry", labels("id", info.getId(), "domain", info.getDomain()), (info.getExpireTimeAt() - now) / (double) DAY_MILLIS);
+        }
+    }
+
+    private static double millisToSeconds(Long millis) {
+        return millis != null ? millis / 1000.0 : 0;
+    }
+
+    private static String labels(String... nameValues) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i + 1 < nameValues.length; i += 2) {
+            sb.append(sb.isEmpty() ? "" : ",").append(nameValues[i]).append("=\"").append(escape(nameValues[i + 1])).append('"');
+        }
+        return sb.toString();
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static class Output {
+        private final StringBuilder sb = new StringBuilder();
+
+        private void help(String name, String type, String help) {
+            sb.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+            sb.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+        }
+
+        private void sample(String name, String labels, Number value) {
+            sb.append(PREFIX).append(name);
+            if (!labels.isEmpty()) {
+                sb.append('{').append(labels).append('}');
+            }
+            sb.append(' ').append(value instanceof Double || value instanceof Float ? formatDouble(value.doubleValue()) : value.toString()).append('\n');
+        }
+
+        /**
+         * 输出直方图，桶的数量是累计的，边界从毫秒换算为秒
+         */
+        private void histogram(String name, String labels, LatencyHistogram.Snapshot snapshot) {
+            String prefix = labels.isEmpty() ? "" : labels + ",";
+            long cumulative = 0;
+            long[] buckets = snapshot.buckets();
+            for (int i = 0; i < LatencyHistogram.BOUNDS_MILLIS.length; i++) {
+                cumulative += buckets[i];
+                String le = BigDecimal.valueOf(LatencyHistogram.BOUNDS_MILLIS[i]).movePointLeft(3).stripTrailingZeros().toPlainString();
+                sample(name + "_bucket", prefix + "le=\"" + le + "\"", cumulative);
+            }
+            sample(name + "_bucket", prefix + "le=\"+Inf\"", snapshot.count());
+            sample(name + "_sum", labels, snapshot.sumMillis() / 1000.0);
+            sample(name + "_count", labels, snapshot.count());
+        }
+
+        private static String formatDouble(double value) {
+            if (Double.isNaN(value)) {
+                return "NaN";
+            }
+            if (Double.isInfinite(value)) {
+                return value > 0 ? "+Inf" : "-Inf";
+            }
+            return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+        }
+
+        @Override
+        public String toString() {
+            return sb.toString();
+        }
+    }
+}
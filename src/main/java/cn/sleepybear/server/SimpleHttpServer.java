@@ -1,10 +1,26 @@
 package cn.sleepybear.server;
 
 import cn.sleepybear.App;
+import cn.sleepybear.config.AppConfig;
+import cn.sleepybear.config.ConfigPersister;
 import cn.sleepybear.model.CertInfo;
+import cn.sleepybear.model.CloudSyncResult;
+import cn.sleepybear.model.PlatformSslCertInfo;
+import cn.sleepybear.model.ScanRootStat;
+import cn.sleepybear.service.CertInventoryIndex;
+import cn.sleepybear.service.CertScanIndex;
 import cn.sleepybear.service.CertService;
+import cn.sleepybear.service.JobManager;
+import cn.sleepybear.service.TlsProber;
 import cn.sleepybear.util.CommonUtils;
+import cn.sleepybear.util.HttpLatencyStats;
+import cn.sleepybear.util.LatencyHistogram;
 import cn.sleepybear.util.LogUtil;
+import cn.sleepybear.util.SharedHttpClient;
+import cn.sleepybear.util.SingleFlight;
+import cn.sleepybear.util.TencentCloudApi;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
@@ -12,13 +28,22 @@ import com.sun.net.httpserver.HttpServer;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 public class SimpleHttpServer {
+    private static final String JOBS_PATH = "/api/jobs";
+
     private final CertService certService;
+    private final JobManager jobManager;
 
     private HttpServer server;
 
@@ -26,6 +51,11 @@ public class SimpleHttpServer {
 
     public SimpleHttpServer(CertService certService) {
         this.certService = certService;
+
+        AppConfig appConfig = App.configHolder.get();
+        this.jobManager = new JobManager(positiveOrDefault(appConfig.getJobConcurrency(), 2),
+                TimeUnit.SECONDS.toMillis(positiveOrDefault(appConfig.getJobRetentionSeconds(), 600)),
+                positiveOrDefault(appConfig.getJobMaxRetained(), 1000));
     }
 
     public void start(int port) {
@@ -35,7 +65,7 @@ public class SimpleHttpServer {
         }
 
         if (CommonUtils.isPortInUse(port)) {
-            LogUtil.warn("端口 %s 已被占用, HTTP 服务器将不启动!".formatted(port));
+            LogUtil.warn("端口 %s 已被占用, HTTP 服务器将不启动!", port);
             return;
         }
 
@@ -43,7 +73,7 @@ public class SimpleHttpServer {
         try {
             this.server = HttpServer.create(new InetSocketAddress(port), 0);
         } catch (IOException e) {
-            LogUtil.error("创建HTTP服务器失败，端口 %s 可能被占用".formatted(port), e);
+            LogUtil.error(e, "创建HTTP服务器失败，端口 %s 可能被占用", port);
             return;
         }
 
@@ -51,15 +81,27 @@ public class SimpleHttpServer {
         this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
 
         // 注册 API 路径
-        this.server.createContext("/api/getConfigJson", new GetConfigJsonHandler());
-        this.server.createContext("/api/refreshLocalSslCert", new RefreshLocalSslCertHandler());
-        this.server.createContext("/api/getTencentCerts", new GetTencentCertsHandler());
+        createContext("/api/getConfigJson", new GetConfigJsonHandler());
+        createContext("/api/refreshLocalSslCert", new RefreshLocalSslCertHandler());
+        createContext("/api/getTencentCerts", new GetTencentCertsHandler());
+        createContext("/api/certs", new CertsHandler());
+        createContext(JOBS_PATH, new JobsHandler());
+        createContext("/api/httpStats", new HttpStatsHandler());
+        createContext("/api/tlsProbe", new TlsProbeHandler());
+        createContext("/metrics", new MetricsHandler());
 
         this.server.start();
-        LogUtil.info("HTTP 服务器已启动，运行于端口 %s".formatted(port));
+        LogUtil.info("HTTP 服务器已启动，运行于端口 %s", port);
         isRunning = true;
     }
 
+    /**
+     * 注册路径，并记录该路径的请求耗时
+     */
+    private void createContext(String path, HttpHandler handler) {
+        this.server.createContext(path, handler).getFilters().add(new PrometheusMetrics.RequestTimingFilter(path));
+    }
+
     public void stop() {
         if (!isRunning) {
             LogUtil.warn("HTTP 服务器未运行，无法停止");
@@ -74,10 +116,28 @@ public class SimpleHttpServer {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             try {
-                String response = CommonUtils.GSON.toJson(App.appConfig);
-                sendResponse(exchange, 200, response);
+                ConfigJsonSnapshot snapshot = ConfigJsonSnapshot.get(App.configHolder.snapshot());
+                boolean compact = isCompactRequested(exchange.getRequestURI().getRawQuery());
+                boolean gzip = acceptsGzip(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+                ConfigJsonSnapshot.Variant variant = snapshot.getVariant(compact);
+                String etag = variant.etag(gzip);
+
+                Headers headers = exchange.getResponseHeaders();
+                headers.set("ETag", etag);
+                headers.set("Cache-Control", "no-cache");
+                headers.set("Vary", "Accept-Encoding");
+                if (etagMatches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+
+                if (gzip) {
+                    headers.set("Content-Encoding", "gzip");
+                }
+                sendResponse(exchange, 200, variant.body(gzip));
             } catch (Exception e) {
-                LogUtil.error("解析配置文件失败，请检查配置文件的格式。程序将使用默认配置。错误：%s".formatted(e.getMessage()), e);
+                LogUtil.error(e, "解析配置文件失败，请检查配置文件的格式。程序将使用默认配置。错误：%s", e.getMessage());
                 sendErrorResponse(exchange, e);
             }
         }
@@ -87,60 +147,481 @@ public class SimpleHttpServer {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             try {
-                Map<String, Object> result = new HashMap<>();
-                Map<String, Object> certs = new HashMap<>();
-
-                Map<String, CertInfo> certInfoMap = CertService.scanLocalCerts(App.appConfig.getSslCertPathList(), App.appConfig.getSslCertPathMaxDepth());
-                certService.updateConfigWithLocalCerts(certInfoMap);
-                certInfoMap.forEach((domain, certInfo) -> {
-                    Map<String, Object> cert = new HashMap<>();
-                    cert.put("keyFile", certInfo.getKeyFile().getAbsolutePath());
-                    cert.put("crtFile", certInfo.getCrtFile().getAbsolutePath());
-                    cert.put("expireTimeAt", certInfo.getExpireTimeAt());
-                    certs.put(domain, cert);
+                Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+                if (isSyncRequested(params)) {
+                    JsonStream.Page page = JsonStream.Page.of(params);
+                    LocalRefreshResult result = refreshLocalCerts();
+                    JsonStream.send(exchange, 200, out -> result.write(out, page));
+                    return;
+                }
+
+                JobManager.Job job = jobManager.submit("refreshLocalSslCert", j -> {
+                    j.updateProgress(10, "扫描本地证书");
+                    return refreshLocalCerts();
                 });
+                sendJobAccepted(exchange, job);
+            } catch (NumberFormatException e) {
+                sendBadRequest(exchange, "分页参数格式错误: %s".formatted(e.getMessage()));
+            } catch (Exception e) {
+                LogUtil.error(e, "刷新本地证书失败: %s", e.getMessage());
+                sendErrorResponse(exchange, e);
+            }
+        }
+    }
 
-                result.put("status", "success");
-                result.put("message", "Local SSL certificates refreshed");
-                result.put("certs", certs);
+    private LocalRefreshResult refreshLocalCerts() throws Exception {
+        return new LocalRefreshResult(certService.refreshLocalCertsShared(), CertService.getLastScanRootStats(),
+                CertService.getScanIndex().getLastStats(), App.configPersister.getStats());
+    }
 
-                sendResponse(exchange, 200, CommonUtils.GSON.toJson(result));
+    /**
+     * 刷新本地证书的结果，证书列表按照分页输出
+     */
+    private record LocalRefreshResult(SingleFlight.Result<Map<String, CertInfo>> refresh, List<ScanRootStat> scanStats,
+                                      CertScanIndex.Stats scanIndex, ConfigPersister.Stats configPersist) implements JsonStream.PagedBody {
+        @Override
+        public void write(JsonWriter out, JsonStream.Page page) throws IOException {
+            Map<String, CertInfo> certInfoMap = refresh.value();
+            out.beginObject();
+            out.name("status").value("success");
+            out.name("message").value("Local SSL certificates refreshed");
+            out.name("certs").beginObject();
+            long index = 0;
+            for (Map.Entry<String, CertInfo> entry : certInfoMap.entrySet()) {
+                if (page.contains(index++)) {
+                    CertInfo certInfo = entry.getValue();
+                    out.name(entry.getKey()).beginObject();
+                    out.name("keyFile").value(certInfo.getKeyFile().getAbsolutePath());
+                    out.name("crtFile").value(certInfo.getCrtFile().getAbsolutePath());
+                    out.name("expireTimeAt").value(certInfo.getExpireTimeAt());
+                    out.endObject();
+                }
+            }
+            out.endObject();
+            page.writeInfo(out, certInfoMap.size());
+            out.name("shared").value(refresh.shared());
+            out.name("completedAt").value(refresh.completedAt());
+            out.name("scanStats");
+            JsonStream.writeValue(out, scanStats);
+            out.name("scanIndex");
+            JsonStream.writeValue(out, scanIndex);
+            out.name("configPersist");
+            JsonStream.writeValue(out, configPersist);
+            out.endObject();
+        }
+    }
+
+    private class GetTencentCertsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+                if (isSyncRequested(params)) {
+                    JsonStream.Page page = JsonStream.Page.of(params);
+                    CloudQueryResult result = queryCloudCerts();
+                    JsonStream.send(exchange, 200, out -> result.write(out, page));
+                    return;
+                }
+
+                JobManager.Job job = jobManager.submit("getTencentCerts", j -> {
+                    j.updateProgress(10, "查询云平台证书");
+                    return queryCloudCerts();
+                });
+                sendJobAccepted(exchange, job);
+            } catch (NumberFormatException e) {
+                sendBadRequest(exchange, "分页参数格式错误: %s".formatted(e.getMessage()));
             } catch (Exception e) {
-                LogUtil.error("刷新本地证书失败: %s".formatted(e.getMessage()), e);
+                LogUtil.error(e, "查询腾讯云证书失败: %s", e.getMessage());
                 sendErrorResponse(exchange, e);
             }
         }
     }
 
-    private class GetTencentCertsHandler implements HttpHandler {
+    private CloudQueryResult queryCloudCerts() throws Exception {
+        return new CloudQueryResult(certService.queryCloudCertsShared(), App.configHolder.get().getPlatformSslCertInfos());
+    }
+
+    /**
+     * 同步云平台证书的结果，certs 是同步完成时配置中的证书列表，按照分页输出；不再返回完整的配置，
+     * 需要按照域名、账号等条件查询证书时使用 /api/certs
+     */
+    private record CloudQueryResult(SingleFlight.Result<CloudSyncResult> sync, List<PlatformSslCertInfo> certs) implements JsonStream.PagedBody {
+        @Override
+        public void write(JsonWriter out, JsonStream.Page page) throws IOException {
+            CloudSyncResult syncResult = sync.value();
+            out.beginObject();
+            out.name("status").value(syncResult.isAllSuccess() ? "success" : "partial");
+            out.name("message").value("Tencent Cloud certificates queried");
+            out.name("sync");
+            JsonStream.writeValue(out, syncResult);
+            out.name("shared").value(sync.shared());
+            out.name("completedAt").value(sync.completedAt());
+            out.name("certs").beginArray();
+            long index = 0;
+            for (PlatformSslCertInfo info : certs) {
+                if (info != null && page.contains(index++)) {
+                    JsonStream.writeValue(out, info);
+                }
+            }
+            out.endArray();
+            page.writeInfo(out, certs.stream().filter(Objects::nonNull).count());
+            out.endObject();
+        }
+    }
+
+    /**
+     * Prometheus 文本格式的指标
+     */
+    private class MetricsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                byte[] body = PrometheusMetrics.render().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", PrometheusMetrics.CONTENT_TYPE);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+            } catch (Exception e) {
+                LogUtil.error(e, "输出指标失败: %s", e.getMessage());
+                sendErrorResponse(exchange, e);
+            }
+        }
+    }
+
+    /**
+     * 通过 TLS 握手检查线上提供的证书是否就是本地的证书，支持的参数：domain（包括 SAN 中的名称）、target（host:port，覆盖所有证书的探测目标）、
+     * mismatchOnly（只返回不一致的结果），以及 offset、limit 分页
+     */
+    private class TlsProbeHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+                JsonStream.Page page = JsonStream.Page.of(params);
+                boolean mismatchOnly = Boolean.parseBoolean(params.get("mismatchOnly"));
+                List<TlsProber.ProbeResult> results = certService.probeTls(params.get("domain"), params.get("target"));
+
+                Map<TlsProber.Status, Integer> summary = new EnumMap<>(TlsProber.Status.class);
+                results.forEach(result -> summary.merge(result.getStatus(), 1, Integer::sum));
+                JsonStream.send(exchange, 200, out -> {
+                    out.beginObject();
+                    out.name("status").value("success");
+                    out.name("probed").value(results.size());
+                    out.name("mismatches").value(results.size() - summary.getOrDefault(TlsProber.Status.MATCH, 0));
+                    out.name("summary");
+                    JsonStream.writeValue(out, summary);
+                    out.name("results").beginArray();
+                    long matched = 0;
+                    for (TlsProber.ProbeResult result : results) {
+                        if ((!mismatchOnly || !result.isMatch()) && page.contains(matched++)) {
+                            JsonStream.writeValue(out, result);
+                        }
+                    }
+                    out.endArray();
+                    page.writeInfo(out, matched);
+                    out.endObject();
+                });
+            } catch (IllegalArgumentException e) {
+                sendBadRequest(exchange, "参数格式错误: %s".formatted(e.getMessage()));
+            } catch (Exception e) {
+                LogUtil.error(e, "TLS 探测失败: %s", e.getMessage());
+                sendErrorResponse(exchange, e);
+            }
+        }
+    }
+
+    /**
+     * 云平台接口请求的耗时分布，按照接口和域名分别统计 ttfb 和 total 两个阶段，以及 HTTP 客户端的参数和重试、限流、熔断的统计
+     */
+    private class HttpStatsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                Map<String, HttpLatencyStats.Snapshot> byAction = HttpLatencyStats.snapshotByAction();
+                Map<String, HttpLatencyStats.Snapshot> byEndpoint = HttpLatencyStats.snapshotByEndpoint();
+                JsonStream.send(exchange, 200, out -> {
+                    out.beginObject();
+                    out.name("status").value("success");
+                    out.name("client");
+                    JsonStream.writeValue(out, SharedHttpClient.getSettings());
+                    out.name("requests");
+                    JsonStream.writeValue(out, TencentCloudApi.getStats());
+                    out.name("bucketBoundsMillis");
+                    JsonStream.writeValue(out, LatencyHistogram.BOUNDS_MILLIS);
+                    out.name("actions");
+                    JsonStream.writeValue(out, byAction);
+                    out.name("endpoints");
+                    JsonStream.writeValue(out, byEndpoint);
+                    out.endObject();
+                });
+            } catch (Exception e) {
+                LogUtil.error(e, "获取 HTTP 请求统计失败: %s", e.getMessage());
+                sendErrorResponse(exchange, e);
+            }
+        }
+    }
+
+    /**
+     * /api/jobs 返回所有保留中的任务，/api/jobs/{id} 返回单个任务的进度、耗时和结果，结果中的列表支持 offset 和 limit 分页
+     */
+    private class JobsHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             try {
-                certService.queryCloudCerts();
+                String path = exchange.getRequestURI().getPath();
+                String id = path.length() > JOBS_PATH.length() ? path.substring(JOBS_PATH.length()).replaceAll("^/+|/+$", "") : "";
+                if (id.isEmpty()) {
+                    List<JobManager.Job> jobs = jobManager.list();
+                    JsonStream.send(exchange, 200, out -> {
+                        out.beginObject();
+                        out.name("status").value("success");
+                        out.name("jobs").beginArray();
+                        for (JobManager.Job job : jobs) {
+                            out.beginObject();
+                            writeJobFields(out, job);
+                            out.endObject();
+                        }
+                        out.endArray();
+                        out.endObject();
+                    });
+                    return;
+                }
 
-                Map<String, Object> result = new HashMap<>();
-                result.put("status", "success");
-                result.put("message", "Tencent Cloud certificates queried");
-                result.put("config", App.appConfig);
+                JobManager.Job job = jobManager.get(id);
+                if (job == null) {
+                    sendResponse(exchange, 404, CommonUtils.GSON.toJson(Map.of("status", "error", "message", "任务不存在或者已经被清理: %s".formatted(id))));
+                    return;
+                }
 
-                sendResponse(exchange, 200, CommonUtils.GSON.toJson(result));
+                JsonStream.Page page = JsonStream.Page.of(parseQuery(exchange.getRequestURI().getRawQuery()));
+                Object result = job.getResult();
+                JsonStream.send(exchange, 200, out -> {
+                    out.beginObject();
+                    writeJobFields(out, job);
+                    out.name("result");
+                    if (result instanceof JsonStream.PagedBody pagedBody) {
+                        pagedBody.write(out, page);
+                    } else {
+                        JsonStream.writeValue(out, result);
+                    }
+                    out.name("error").value(job.getError());
+                    out.endObject();
+                });
+            } catch (NumberFormatException e) {
+                sendBadRequest(exchange, "分页参数格式错误: %s".formatted(e.getMessage()));
             } catch (Exception e) {
-                LogUtil.error("查询腾讯云证书失败: %s".formatted(e.getMessage()), e);
+                LogUtil.error(e, "查询任务失败: %s", e.getMessage());
                 sendErrorResponse(exchange, e);
             }
         }
     }
 
+    /**
+     * 任务的基本信息，不包含任务的结果
+     */
+    private static void writeJobFields(JsonWriter out, JobManager.Job job) throws IOException {
+        out.name("id").value(job.getId());
+        out.name("type").value(job.getType());
+        out.name("status").value(job.getStatus());
+        out.name("progress").value(job.getProgress());
+        out.name("progressPercent").value(job.getProgressPercent());
+        out.name("createdAt").value(job.getCreatedAt());
+        out.name("startedAt").value(job.getStartedAt());
+        out.name("finishedAt").value(job.getFinishedAt());
+        out.name("costMillis").value(job.getCostMillis());
+    }
+
+    /**
+     * 请求参数中有 sync=true 时在请求中直接执行并返回结果，否则提交为后台任务
+     */
+    private static boolean isSyncRequested(Map<String, String> params) {
+        String sync = params.get("sync");
+        return "true".equalsIgnoreCase(sync) || "1".equals(sync);
+    }
+
+    private void sendJobAccepted(HttpExchange exchange, JobManager.Job job) throws IOException {
+        String location = JOBS_PATH + "/" + job.getId();
+        Map<String, Object> result = new HashMap<>();
+        result.put("status", "accepted");
+        result.put("jobId", job.getId());
+        result.put("location", location);
+        exchange.getResponseHeaders().set("Location", location);
+        sendResponse(exchange, 202, CommonUtils.GSON.toJson(result));
+    }
+
+    /**
+     * 通过索引查询配置中的证书，支持的参数：host（包含通配符证书）、domain、certId、accountId、cloudPlatform、
+     * expireAfter 和 expireBefore（13 位时间戳），多个参数同时使用时取交集。结果通过 offset 和 limit 分页，流式输出
+     */
+    private class CertsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+                JsonStream.Page page = JsonStream.Page.of(params);
+                CertInventoryIndex index = certService.getInventoryIndex();
+                Long expireAfter = params.containsKey("expireAfter") ? Long.valueOf(params.get("expireAfter")) : null;
+                Long expireBefore = params.containsKey("expireBefore") ? Long.valueOf(params.get("expireBefore")) : null;
+
+                // 先用最精确的条件从索引中取出候选，再用其他条件过滤；没有任何条件时直接遍历当前配置快照中的列表，不需要复制
+                List<PlatformSslCertInfo> candidates;
+                if (params.containsKey("certId")) {
+                    candidates = listOfNullable(index.getByCertId(params.get("certId")));
+                } else if (params.containsKey("domain")) {
+                    candidates = listOfNullable(index.getByDomain(params.get("domain")));
+                } else if (params.containsKey("host")) {
+                    candidates = index.findByHost(params.get("host"));
+                } else if (params.containsKey("accountId")) {
+                    candidates = index.getByAccountId(params.get("accountId"));
+                } else if (params.containsKey("cloudPlatform")) {
+                    candidates = index.getByCloudPlatform(params.get("cloudPlatform"));
+                } else if (expireAfter != null || expireBefore != null) {
+                    candidates = index.getByExpireTime(expireAfter, expireBefore);
+                } else {
+                    candidates = App.configHolder.get().getPlatformSslCertInfos();
+                }
+
+                Predicate<PlatformSslCertInfo> filter = info -> info != null
+                        && (!params.containsKey("certId") || params.get("certId").equals(info.getCertId()))
+                        && (!params.containsKey("domain") || params.get("domain").equals(info.getDomain()))
+                        && (!params.containsKey("accountId") || params.get("accountId").equals(info.getAccountId()))
+                        && (!params.containsKey("cloudPlatform") || params.get("cloudPlatform").equals(info.getCloudPlatform()))
+                        && (expireAfter == null || (info.getExpireTimeAt() != null && info.getExpireTimeAt() >= expireAfter))
+                        && (expireBefore == null || (info.getExpireTimeAt() != null && info.getExpireTimeAt() < expireBefore));
+
+                long version = index.getVersion();
+                JsonStream.send(exchange, 200, out -> {
+                    out.beginObject();
+                    out.name("status").value("success");
+                    out.name("version").value(version);
+                    out.name("certs").beginArray();
+                    long matched = 0;
+                    for (PlatformSslCertInfo info : candidates) {
+                        if (filter.test(info) && page.contains(matched++)) {
+                            JsonStream.writeValue(out, info);
+                        }
+                    }
+                    out.endArray();
+                    page.writeInfo(out, matched);
+                    out.endObject();
+                });
+            } catch (NumberFormatException e) {
+                sendBadRequest(exchange, "参数格式错误: %s".formatted(e.getMessage()));
+            } catch (Exception e) {
+                LogUtil.error(e, "查询证书失败: %s", e.getMessage());
+                sendErrorResponse(exchange, e);
+            }
+        }
+    }
+
+    private static int positiveOrDefault(Integer value, int defaultValue) {
+        return value != null && value > 0 ? value : defaultValue;
+    }
+
+    private static List<PlatformSslCertInfo> listOfNullable(PlatformSslCertInfo info) {
+        return info != null ? List.of(info) : List.of();
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String param : rawQuery.split("&")) {
+            int eq = param.indexOf('=');
+            String name = URLDecoder.decode(eq >= 0 ? param.substring(0, eq) : param, StandardCharsets.UTF_8);
+            String value = eq >= 0 ? URLDecoder.decode(param.substring(eq + 1), StandardCharsets.UTF_8) : "";
+            if (!name.isEmpty() && !value.isEmpty()) {
+                params.putIfAbsent(name, value);
+            }
+        }
+        return params;
+    }
+
     private void sendResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
-        exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.sendResponseHeaders(statusCode, response.getBytes(StandardCharsets.UTF_8).length);
+        sendResponse(exchange, statusCode, response.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void sendResponse(HttpExchange exchange, int statusCode, byte[] response) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(statusCode, response.length);
 
         try (OutputStream os = exchange.getResponseBody()) {
-            os.write(response.getBytes(StandardCharsets.UTF_8));
+            os.write(response);
+        }
+    }
+
+    /**
+     * 请求参数中有 compact=true 或者 pretty=false 时输出紧凑的 JSON
+     */
+    private static boolean isCompactRequested(String query) {
+        if (query == null) {
+            return false;
+        }
+        for (String param : query.split("&")) {
+            if (param.equalsIgnoreCase("compact") || param.equalsIgnoreCase("compact=true") || param.equalsIgnoreCase("compact=1") || param.equalsIgnoreCase("pretty=false")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 请求头 Accept-Encoding 中是否接受 gzip，q=0 表示不接受
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim();
+            if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+                continue;
+            }
+            boolean rejected = false;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim().replace(" ", "");
+                if (param.matches("q=0(\\.0*)?")) {
+                    rejected = true;
+                }
+            }
+            return !rejected;
+        }
+        return false;
+    }
+
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
         }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
     }
 
+    private void sendBadRequest(HttpExchange exchange, String message) throws IOException {
+        if (JsonStream.isResponseStarted(exchange)) {
+            throw new IOException("响应已经开始发送，中断连接: " + message);
+        }
+        sendResponse(exchange, 400, CommonUtils.GSON.toJson(Map.of("status", "error", "message", message)));
+    }
+
+    /**
+     * 返回 500 错误。流式响应已经开始发送时无法再返回错误，重新抛出异常，由 HttpServer 断开连接
+     */
     private void sendErrorResponse(HttpExchange exchange, Exception e) throws IOException {
+        if (JsonStream.isResponseStarted(exchange)) {
+            throw e instanceof IOException ioException ? ioException : new IOException("响应已经开始发送，中断连接", e);
+        }
         Map<String, String> errorResponse = new HashMap<>();
         errorResponse.put("status", "error");
         errorResponse.put("message", e.getMessage());
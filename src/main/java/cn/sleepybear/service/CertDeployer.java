@@ -0,0 +1,339 @@
+package cn.sleepybear.service;
+
+import cn.sleepybear.util.LogUtil;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 证书的批量部署。
+ * <p>
+ * 下载并校验通过的证书先放入待部署的批次，debounce 时间内没有新的证书（或者批次中第一个证书已经等待了 maxDelay）时，
+ * 整批并行替换到目标目录：替换前把原来的证书和私钥复制为同目录下的 .bak 文件，再原子移动临时文件。
+ * 整批替换完成之后只执行一次部署后命令（例如 nginx -t && nginx -s reload），命令失败或者超时时把这一批替换过的文件全部还原。
+ * .bak 文件只在这一批部署期间存在，部署成功或者还原成功之后删除；只有还原失败时保留，用于手动恢复。
+ * 备份复制时保留原文件的权限，私钥的备份不会比私钥本身的权限更宽。
+ * 同一个证书文件在一个批次中多次出现时只部署最后一次的。批次在单独的线程中依次执行，不会同时部署两批。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 08:40
+ */
+public class CertDeployer {
+    public static final String BACKUP_SUFFIX = ".bak";
+    /**
+     * 日志中保留的命令输出的最大长度
+     */
+    private static final int MAX_OUTPUT_LENGTH = 2000;
+    private static final Charset NATIVE_CHARSET = nativeCharset();
+
+    private static final LongAdder batches = new LongAdder();
+    private static final LongAdder deployed = new LongAdder();
+    private static final LongAdder rolledBack = new LongAdder();
+    private static final LongAdder commandFailures = new LongAdder();
+
+    private final long debounceMillis;
+    private final long maxDelayMillis;
+    private final String command;
+    private final Duration commandTimeout;
+    /**
+     * 一批证书部署成功之后的回调，参数为这一批部署成功的证书
+     */
+    private final Consumer<List<CertDownloader.StagedCert>> onDeployed;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cert-deployer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * 待部署的证书，key 为证书文件的目标位置
+     */
+    private final Map<Path, Deployment> pending = new LinkedHashMap<>();
+    private long firstPendingAt;
+    private ScheduledFuture<?> flushTask;
+
+    /**
+     * 部署统计：batches 为部署的批次数，deployed 为部署成功的证书数，rolledBack 为被还原的证书数，commandFailures 为部署后命令失败的次数
+     */
+    public record Stats(long batches, long deployed, long rolledBack, long commandFailures) {
+    }
+
+    /**
+     * 部署后命令的执行结果，output 为合并了标准错误的输出，超过 {@link #MAX_OUTPUT_LENGTH} 时只保留最后的部分
+     */
+    public record CommandResult(boolean success, int exitCode, boolean timedOut, String output) {
+    }
+
+    private static class Deployment {
+        private final CertDownloader.StagedCert stagedCert;
+        private final CompletableFuture<CertDownloader.StagedCert> future = new CompletableFuture<>();
+        /**
+         * 原来的证书和私钥的备份，原来没有该文件时为 null
+         */
+        private Path crtBackup;
+        private Path keyBackup;
+        private boolean installed;
+
+        private Deployment(CertDownloader.StagedCert stagedCert) {
+            this.stagedCert = stagedCert;
+        }
+    }
+
+    /**
+     * @param command 部署后命令，为空时不执行命令
+     */
+    public CertDeployer(Duration debounce, Duration maxDelay, String command, Duration commandTimeout, Consumer<List<CertDownloader.StagedCert>> onDeployed) {
+        this.debounceMillis = Math.max(0, debounce.toMillis());
+        this.maxDelayMillis = Math.max(debounceMillis, maxDelay.toMillis());
+        this.command = command != null && !command.isBlank() ? command : null;
+        this.commandTimeout = commandTimeout;
+        this.onDeployed = onDeployed;
+    }
+
+    public static Stats getStats() {
+        return new Stats(batches.sum(), deployed.sum(), rolledBack.sum(), commandFailures.sum());
+    }
+
+    /**
+     * 把已经下载并校验通过的证书加入待部署的批次，返回的 future 在这一批部署成功之后完成，部署失败或者被还原时异常完成
+     */
+    public CompletableFuture<CertDownloader.StagedCert> submit(CertDownloader.StagedCert stagedCert) {
+        Deployment deployment = new Deployment(stagedCert);
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            if (pending.isEmpty()) {
+                firstPendingAt = now;
+            }
+            Deployment previous = pending.put(stagedCert.getCrtTarget(), deployment);
+            if (previous != null) {
+                // 同一个证书在批次中被替换，之前的临时文件不再需要，结果与新的一致
+                previous.stagedCert.deleteTempFiles();
+                deployment.future.whenComplete((result, e) -> {
+                    if (e != null) {
+                        previous.future.completeExceptionally(e);
+                    } else {
+                        previous.future.complete(result);
+                    }
+                });
+            }
+
+            if (flushTask != null) {
+                flushTask.cancel(false);
+            }
+            long delay = Math.min(debounceMillis, Math.max(0, firstPendingAt + maxDelayMillis - now));
+            flushTask = executor.schedule(this::flush, delay, TimeUnit.MILLISECONDS);
+        } finally {
+            lock.unlock();
+        }
+        return deployment.future;
+    }
+
+    private void flush() {
+        List<Deployment> batch;
+        lock.lock();
+        try {
+            batch = new ArrayList<>(pending.values());
+            pending.clear();
+            flushTask = null;
+        } finally {
+            lock.unlock();
+        }
+        if (!batch.isEmpty()) {
+            try {
+                deploy(batch);
+            } catch (RuntimeException e) {
+                LogUtil.error(e, "部署证书失败: %s", e.getMessage());
+                batch.forEach(deployment -> deployment.future.completeExceptionally(e));
+            }
+        }
+    }
+
+    private void deploy(List<Deployment> batch) {
+        long start = System.nanoTime();
+        batches.increment();
+        try (ExecutorService installExecutor = Executors.newVirtualThreadPerTaskExecutor()) {
+            batch.forEach(deployment -> installExecutor.submit(() -> install(deployment)));
+        }
+
+        List<Deployment> installed = batch.stream().filter(deployment -> deployment.installed).toList();
+        if (installed.isEmpty()) {
+            return;
+        }
+
+        CommandResult result = command != null ? runCommand(command, commandTimeout) : null;
+        if (result != null && !result.success()) {
+            commandFailures.increment();
+            LogUtil.warn("部署后命令执行失败（退出码 %s%s），还原这一批的 %s 个证书，命令输出: %s",
+                    result.exitCode(), result.timedOut() ? "，超时" : "", installed.size(), result.output());
+            try (ExecutorService rollbackExecutor = Executors.newVirtualThreadPerTaskExecutor()) {
+                installed.forEach(deployment -> rollbackExecutor.submit(() -> rollback(deployment)));
+            }
+            IllegalStateException e = new IllegalStateException("部署后命令执行失败，证书已还原，退出码: %s".formatted(result.exitCode()));
+            installed.forEach(deployment -> deployment.future.completeExceptionally(e));
+            return;
+        }
+
+        deployed.add(installed.size());
+        LogUtil.info("部署证书 %s 个，失败 %s 个，耗时 %s ms%s", installed.size(), batch.size() - installed.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), result != null ? "，部署后命令执行成功" : "");
+        List<CertDownloader.StagedCert> stagedCerts = installed.stream().map(deployment -> deployment.stagedCert).toList();
+        if (onDeployed != null) {
+            try {
+                onDeployed.accept(stagedCerts);
+            } catch (RuntimeException e) {
+                LogUtil.error(e, "证书部署之后的处理失败: %s", e.getMessage());
+            }
+        }
+        installed.forEach(deployment -> {
+            deleteBackups(deployment);
+            deployment.future.complete(deployment.stagedCert);
+        });
+    }
+
+    /**
+     * 备份原来的文件之后替换证书，备份失败时不替换，替换失败时还原这一个证书
+     */
+    private static void install(Deployment deployment) {
+        CertDownloader.StagedCert stagedCert = deployment.stagedCert;
+        try {
+            deployment.keyBackup = backup(stagedCert.getKeyTarget());
+            deployment.crtBackup = backup(stagedCert.getCrtTarget());
+        } catch (IOException e) {
+            LogUtil.error(e, "备份证书 %s 失败: %s", stagedCert.getTask().getDomain(), e.getMessage());
+            deleteBackups(deployment);
+            stagedCert.deleteTempFiles();
+            deployment.future.completeExceptionally(e);
+            return;
+        }
+
+        try {
+            CertDownloader.commit(stagedCert);
+            deployment.installed = true;
+        } catch (IOException | RuntimeException e) {
+            LogUtil.error(e, "替换证书 %s 失败: %s", stagedCert.getTask().getDomain(), e.getMessage());
+            rollback(deployment);
+            deployment.future.completeExceptionally(e);
+        }
+    }
+
+    private static Path backup(Path target) throws IOException {
+        if (!Files.exists(target)) {
+            return null;
+        }
+        Path backup = target.resolveSibling(target.getFileName() + BACKUP_SUFFIX);
+        Files.copy(target, backup, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        return backup;
+    }
+
+    /**
+     * 用备份还原证书和私钥，原来没有的文件直接删除；还原成功之后删除备份，失败时保留备份
+     */
+    private static void rollback(Deployment deployment) {
+        CertDownloader.StagedCert stagedCert = deployment.stagedCert;
+        try {
+            restore(stagedCert.getCrtTarget(), deployment.crtBackup);
+            restore(stagedCert.getKeyTarget(), deployment.keyBackup);
+            deleteBackups(deployment);
+            rolledBack.increment();
+            LogUtil.info("证书 %s 已还原", stagedCert.getTask().getDomain());
+        } catch (IOException e) {
+            LogUtil.error(e, "还原证书 %s 失败，备份文件: %s, %s", stagedCert.getTask().getDomain(), deployment.crtBackup, deployment.keyBackup);
+        }
+    }
+
+    /**
+     * 删除证书和私钥的备份，删除失败只记录日志，不影响部署的结果
+     */
+    private static void deleteBackups(Deployment deployment) {
+        for (Path backup : new Path[]{deployment.crtBackup, deployment.keyBackup}) {
+            if (backup == null) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(backup);
+            } catch (IOException e) {
+                LogUtil.warn("删除备份文件 %s 失败: %s", backup, e.getMessage());
+            }
+        }
+        deployment.crtBackup = null;
+        deployment.keyBackup = null;
+    }
+
+    private static void restore(Path target, Path backup) throws IOException {
+        if (backup == null) {
+            Files.deleteIfExists(target);
+            return;
+        }
+        // 先复制为同目录下的临时文件再原子移动，还原过程中目标文件始终是完整的
+        Path tempFile = Files.createTempFile(target.getParent(), ".restore-", ".tmp");
+        try {
+            Files.copy(backup, tempFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            CertDownloader.moveAtomically(tempFile, target);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * 通过系统的 shell 执行命令，超时时强制结束
+     */
+    public static CommandResult runCommand(String command, Duration timeout) {
+        boolean windows = System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("windows");
+        ProcessBuilder builder = windows ? new ProcessBuilder("cmd", "/c", command) : new ProcessBuilder("/bin/sh", "-c", command);
+        Path outputFile = null;
+        try {
+            outputFile = Files.createTempFile("cert-deploy-", ".log");
+            Process process = builder.redirectErrorStream(true).redirectOutput(outputFile.toFile()).start();
+            boolean finished = process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            if (!finished) {
+                process.destroyForcibly().waitFor(5, TimeUnit.SECONDS);
+            }
+            int exitCode = finished ? process.exitValue() : -1;
+            return new CommandResult(finished && exitCode == 0, exitCode, !finished, readOutput(outputFile));
+        } catch (IOException e) {
+            return new CommandResult(false, -1, false, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new CommandResult(false, -1, false, "执行被中断");
+        } finally {
+            if (outputFile != null) {
+                try {
+                    Files.deleteIfExists(outputFile);
+                } catch (IOException e) {
+                    // 忽略
+                }
+            }
+        }
+    }
+
+    private static Charset nativeCharset() {
+        try {
+            return Charset.forName(System.getProperty("native.encoding", Charset.defaultCharset().name()));
+        } catch (IllegalArgumentException e) {
+            return Charset.defaultCharset();
+        }
+    }
+
+    /**
+     * 命令的输出按系统的编码解码（例如中文 Windows 下 cmd 的 GBK），无法解码的字节替换掉，输出只用于日志，读取失败不影响命令的结果
+     */
+    private static String readOutput(Path outputFile) {
+        try {
+            String output = new String(Files.readAllBytes(outputFile), NATIVE_CHARSET).strip();
+            return output.length() > MAX_OUTPUT_LENGTH ? "..." + output.substring(output.length() - MAX_OUTPUT_LENGTH) : output;
+        } catch (IOException e) {
+            return "读取命令输出失败: " + e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package cn.sleepybear.service;
+
+import cn.sleepybear.util.LogUtil;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * 基于 {@link WatchService} 的本地证书目录监听。
+ * <p>
+ * 监听 sslCertPathList 下深度不超过 sslCertPathMaxDepth 的所有目录，新建的子目录会自动加入监听。
+ * 收到事件后会继续等待 debounceMillis，直到这段时间内没有新的事件，再把期间变化过的目录一次性交给 {@link CertService} 增量更新，
+ * 这样解压一个 nginx 证书包只会触发一次更新。事件一直不断时，从第一个事件开始最多等待 maxDelayMillis 就更新一次。
+ * 只有启动时和事件溢出（OVERFLOW）时才会做完整扫描。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 07:47
+ */
+public class CertDirWatcher {
+    private final CertService certService;
+    private final List<String> sslCertPathList;
+    private final int maxDepth;
+    private final long debounceMillis;
+    private final long maxDelayMillis;
+
+    private WatchService watchService;
+    /**
+     * 监听的目录，以及该目录相对于扫描根目录的深度
+     */
+    private final Map<WatchKey, WatchedDir> watchedDirs = new HashMap<>();
+    private Thread thread;
+
+    private record WatchedDir(Path dir, int depth) {
+    }
+
+    public CertDirWatcher(CertService certService, List<String> sslCertPathList, int maxDepth, long debounceMillis, long maxDelayMillis) {
+        this.certService = certService;
+        this.sslCertPathList = sslCertPathList == null ? List.of() : List.copyOf(sslCertPathList);
+        this.maxDepth = maxDepth;
+        this.debounceMillis = Math.max(0, debounceMillis);
+        this.maxDelayMillis = Math.max(this.debounceMillis, maxDelayMillis);
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            LogUtil.error(e, "创建目录监听失败: %s", e.getMessage());
+            return;
+        }
+
+        thread = Thread.ofPlatform().daemon().name("cert-dir-watcher").start(this::run);
+        LogUtil.info("开始监听本地证书目录: %s", sslCertPathList);
+    }
+
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+
+        thread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            LogUtil.warn("关闭目录监听失败: %s", e.getMessage());
+        }
+        thread = null;
+        LogUtil.info("停止监听本地证书目录");
+    }
+
+    private void run() {
+        fullRescan();
+
+        while (!Thread.currentThread().isInterrupted()) {
+            Set<Path> changedDirs = new LinkedHashSet<>();
+            boolean overflow;
+            try {
+                WatchKey key = watchService.take();
+                overflow = handleKey(key, changedDirs);
+
+                // 合并一段时间内连续到达的事件，从第一个事件开始最多等待 maxDelayMillis
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+                long waitNanos;
+                while ((waitNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(debounceMillis), deadline - System.nanoTime())) >= 0
+                       && (key = watchService.poll(waitNanos, TimeUnit.NANOSECONDS)) != null) {
+                    overflow |= handleKey(key, changedDirs);
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            }
+
+            try {
+                if (overflow) {
+                    LogUtil.warn("目录监听事件溢出，重新完整扫描本地证书");
+                    fullRescan();
+                } else if (!changedDirs.isEmpty()) {
+                    certService.refreshLocalDirectories(changedDirs);
+                }
+            } catch (Exception e) {
+                LogUtil.error(e, "更新本地证书失败: %s", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 处理一个 WatchKey 上的事件，返回是否发生了事件溢出
+     */
+    private boolean handleKey(WatchKey key, Set<Path> changedDirs) {
+        WatchedDir watchedDir = watchedDirs.get(key);
+        boolean overflow = false;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            if (watchedDir == null) {
+                continue;
+            }
+
+            Path child = watchedDir.dir().resolve((Path) event.context());
+            changedDirs.add(watchedDir.dir());
+
+            // 新建的子目录加入监听，子目录中在注册之前已经存在的文件也需要扫描
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                registerTree(child, watchedDir.depth() + 1, changedDirs);
+            }
+        }
+
+        if (!key.reset()) {
+            // 目录被删除或者不可访问了，目录下的证书都需要移除
+            watchedDirs.remove(key);
+            if (watchedDir != null) {
+                changedDirs.add(watchedDir.dir());
+            }
+        }
+        return overflow;
+    }
+
+    private void fullRescan() {
+        for (WatchKey key : watchedDirs.keySet()) {
+            key.cancel();
+        }
+        watchedDirs.clear();
+
+        for (String path : sslCertPathList) {
+            Path root = Paths.get(path);
+            if (Files.isDirectory(root)) {
+                registerTree(root, 0, null);
+            }
+        }
+        LogUtil.info("监听本地证书目录数量: %s", watchedDirs.size());
+
+        try {
+            certService.refreshLocalCerts();
+        } catch (Exception e) {
+            LogUtil.error(e, "扫描本地证书失败: %s", e.getMessage());
+        }
+    }
+
+    /**
+     * 注册 dir 以及它下面的子目录，只注册其中的文件仍在扫描深度之内的目录
+     *
+     * @param depth       dir 相对扫描根目录的深度
+     * @param changedDirs 不为空时，把注册的目录都加入其中
+     */
+    private void registerTree(Path dir, int depth, Set<Path> changedDirs) {
+        int remaining = maxDepth - 1 - depth;
+        if (remaining < 0) {
+            return;
+        }
+
+        try {
+            Files.walkFileTree(dir, EnumSet.noneOf(FileVisitOption.class), remaining, new SimpleFileVisitor<>() {
+                @NonNull
+                @Override
+                public FileVisitResult preVisitDirectory(Path subDir, @NonNull BasicFileAttributes attrs) {
+                    register(subDir, subDir.equals(dir) ? depth : depth + dir.relativize(subDir).getNameCount());
+                    if (changedDirs != null) {
+                        changedDirs.add(subDir);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @NonNull
+                @Override
+                public FileVisitResult visitFile(Path file, @NonNull BasicFileAttributes attrs) {
+                    // 处于最大深度的目录会作为文件被访问到
+                    if (attrs.isDirectory()) {
+                        return preVisitDirectory(file, attrs);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @NonNull
+                @Override
+                public FileVisitResult visitFileFailed(Path file, @NonNull IOException exc) {
+                    LogUtil.warn("访问文件失败: %s", file);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            LogUtil.error(e, "监听目录 %s 失败: %s", dir, e.getMessage());
+        }
+    }
+
+    private void register(Path dir, int depth) {
+        try {
+            WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+            watchedDirs.put(key, new WatchedDir(dir, depth));
+        } catch (IOException e) {
+            LogUtil.warn("监听目录 %s 失败: %s", dir, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package cn.sleepybear.service;
+
+import cn.sleepybear.util.CertUtils;
+import cn.sleepybear.util.HttpLatencyStats;
+import cn.sleepybear.util.LogUtil;
+import cn.sleepybear.util.TencentCloudApi;
+import lombok.Data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * 证书包的下载和替换。
+ * <p>
+ * 下载的响应体不会整体读入内存，而是边下载边解压 DescribeDownloadCertificateUrl 返回的 nginx 证书包，
+ * 其中的 .crt 和 .key 直接写入目标目录下的临时文件。校验证书可以解析、私钥与证书匹配之后，
+ * 再通过原子移动替换目标目录中的证书文件，任何一步失败都会删除临时文件，不会影响原有的证书。
+ * 多个下载并行执行，同时下载的数量受 concurrency 限制。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 07:58
+ */
+public class CertDownloader {
+    /**
+     * 耗时统计中下载证书包使用的接口名
+     */
+    public static final String DOWNLOAD_ACTION = "DownloadCertificate";
+
+    private final Semaphore permits;
+    private final Duration timeout;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public CertDownloader(int concurrency, Duration timeout) {
+        this.permits = new Semaphore(Math.max(1, concurrency));
+        this.timeout = timeout;
+    }
+
+    @Data
+    public static class DownloadTask {
+        private String domain;
+        private String url;
+        private Path targetDir;
+        private String crtFilename;
+        private String keyFilename;
+
+        public DownloadTask(String domain, String url, Path targetDir, String crtFilename, String keyFilename) {
+            this.domain = domain;
+            this.url = url;
+            this.targetDir = targetDir;
+            this.crtFilename = crtFilename;
+            this.keyFilename = keyFilename;
+        }
+    }
+
+    /**
+     * 下载并解压后校验通过、还没有替换到目标位置的证书文件
+     */
+    @Data
+    public static class StagedCert {
+        private DownloadTask task;
+        private Path crtTempFile;
+        private Path keyTempFile;
+        private Long expireTimeAt;
+
+        public Path getCrtTarget() {
+            return task.getTargetDir().resolve(task.getCrtFilename());
+        }
+
+        public Path getKeyTarget() {
+            return task.getTargetDir().resolve(task.getKeyFilename());
+        }
+
+        public void deleteTempFiles() {
+            deleteQuietly(crtTempFile);
+            deleteQuietly(keyTempFile);
+        }
+    }
+
+    /**
+     * 异步下载并替换证书，同时下载的数量受 concurrency 限制
+     */
+    public CompletableFuture<StagedCert> submit(DownloadTask task) {
+        return CompletableFuture.supplyAsync(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                StagedCert stagedCert = download(task);
+                commit(stagedCert);
+                return stagedCert;
+            } catch (IOException e) {
+                throw new IllegalStateException("下载证书 %s 失败: %s".formatted(task.getDomain(), e.getMessage()), e);
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+
+    /**
+     * 异步下载并校验证书，不替换目标位置的文件，由调用方决定何时 {@link #commit(StagedCert)}，同时下载的数量受 concurrency 限制
+     */
+    public CompletableFuture<StagedCert> stage(DownloadTask task) {
+        return CompletableFuture.supplyAsync(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                return download(task);
+            } catch (IOException e) {
+                throw new IllegalStateException("下载证书 %s 失败: %s".formatted(task.getDomain(), e.getMessage()), e);
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+
+    /**
+     * 并行下载并替换多个证书，等待全部完成
+     */
+    public List<CompletableFuture<StagedCert>> downloadAll(List<DownloadTask> tasks) {
+        List<CompletableFuture<StagedCert>> futures = tasks.stream().map(this::submit).toList();
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).exceptionally(e -> null).join();
+        return futures;
+    }
+
+    /**
+     * 下载证书包，边下载边解压到目标目录下的临时文件，并校验证书和私钥
+     */
+    public StagedCert download(DownloadTask task) throws IOException {
+        Files.createDirectories(task.getTargetDir());
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(task.getUrl()))
+                .timeout(timeout)
+                .GET()
+                .build();
+
+        StagedCert stagedCert = new StagedCert();
+        stagedCert.setTask(task);
+        String host = request.uri().getHost();
+        long start = System.nanoTime();
+        long ttfbNanos = -1;
+        boolean success = false;
+        try {
+            HttpResponse<InputStream> response = TencentCloudApi.getHttpClient().send(request, HttpResponse.BodyHandlers.ofInputStream());
+            ttfbNanos = System.nanoTime() - start;
+            try (InputStream body = response.body()) {
+                if (response.statusCode() != 200) {
+                    throw new IOException("下载失败，状态码: %s".formatted(response.statusCode()));
+                }
+                extract(body, stagedCert);
+            }
+            success = true;
+            HttpLatencyStats.record(DOWNLOAD_ACTION, host, ttfbNanos, System.nanoTime() - start, true);
+
+            if (stagedCert.getCrtTempFile() == null || stagedCert.getKeyTempFile() == null) {
+                throw new IOException("证书包中没有找到 .crt 或 .key 文件");
+            }
+            verify(stagedCert);
+            return stagedCert;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stagedCert.deleteTempFiles();
+            throw new IOException("下载被中断", e);
+        } catch (IOException | RuntimeException e) {
+            if (!success) {
+                HttpLatencyStats.record(DOWNLOAD_ACTION, host, ttfbNanos, System.nanoTime() - start, false);
+            }
+            stagedCert.deleteTempFiles();
+            throw e;
+        }
+    }
+
+    /**
+     * 把临时文件原子地移动到目标位置，先替换私钥再替换证书。
+     * 替换私钥前先把原来的私钥复制一份，证书替换失败时用它还原私钥，不会留下新私钥和旧证书这样不匹配的一对
+     */
+    public static void commit(StagedCert stagedCert) throws IOException {
+        Path keyTarget = stagedCert.getKeyTarget();
+        Path keyBackup = null;
+        try {
+            if (Files.exists(keyTarget)) {
+                keyBackup = Files.createTempFile(keyTarget.getParent(), ".key-", ".tmp");
+                Files.copy(keyTarget, keyBackup, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+            moveAtomically(stagedCert.getKeyTempFile(), keyTarget);
+            try {
+                moveAtomically(stagedCert.getCrtTempFile(), stagedCert.getCrtTarget());
+            } catch (IOException | RuntimeException e) {
+                restoreKey(keyTarget, keyBackup, e);
+                throw e;
+            }
+            LogUtil.info("证书 %s 已更新到: %s", stagedCert.getTask().getDomain(), stagedCert.getTask().getTargetDir());
+        } finally {
+            stagedCert.deleteTempFiles();
+            deleteQuietly(keyBackup);
+        }
+    }
+
+    /**
+     * 证书替换失败之后还原私钥，原来没有私钥时删除新的私钥，还原失败的异常附加到替换失败的异常上
+     */
+    private static void restoreKey(Path keyTarget, Path keyBackup, Exception cause) {
+        try {
+            if (keyBackup != null) {
+                moveAtomically(keyBackup, keyTarget);
+            } else {
+                Files.deleteIfExists(keyTarget);
+            }
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+            LogUtil.error(e, "还原私钥 %s 失败", keyTarget);
+        }
+    }
+
+    public static void moveAtomically(Path source, Path target) throws IOException {
+        Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void extract(InputStream body, StagedCert stagedCert) throws IOException {
+        Path targetDir = stagedCert.getTask().getTargetDir();
+        try (ZipInputStream zip = new ZipInputStream(body)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+
+                String name = entry.getName();
+                // nginx 证书包中可能同时有 _bundle.crt 和单独的 .crt，优先使用包含证书链的 _bundle.crt
+                boolean isBundle = name.endsWith("_bundle.crt");
+                if (name.endsWith(".crt") && (stagedCert.getCrtTempFile() == null || isBundle)) {
+                    deleteQuietly(stagedCert.getCrtTempFile());
+                    stagedCert.setCrtTempFile(writeTempFile(zip, targetDir));
+                } else if (name.endsWith(".key") && stagedCert.getKeyTempFile() == null) {
+                    stagedCert.setKeyTempFile(writeTempFile(zip, targetDir));
+                }
+            }
+        }
+    }
+
+    private static Path writeTempFile(InputStream in, Path targetDir) throws IOException {
+        Path tempFile = Files.createTempFile(targetDir, ".download-", ".tmp");
+        try (OutputStream out = Files.newOutputStream(tempFile)) {
+            in.transferTo(out);
+        }
+        return tempFile;
+    }
+
+    private static void verify(StagedCert stagedCert) throws IOException {
+        List<X509Certificate> certificates = CertUtils.readCertificates(stagedCert.getCrtTempFile().toFile());
+        if (certificates.isEmpty()) {
+            throw new IOException("下载的证书无法解析");
+        }
+
+        PrivateKey privateKey;
+        try {
+            privateKey = CertUtils.readPrivateKey(stagedCert.getKeyTempFile().toFile());
+        } catch (Exception e) {
+            throw new IOException("下载的私钥无法解析: %s".formatted(e.getMessage()), e);
+        }
+        if (!CertUtils.isKeyPairMatch(certificates.getFirst(), privateKey)) {
+            throw new IOException("下载的私钥与证书不匹配");
+        }
+        stagedCert.setExpireTimeAt(certificates.getFirst().getNotAfter().getTime());
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LogUtil.warn("删除临时文件 %s 失败: %s", path, e.getMessage());
+        }
+    }
+}
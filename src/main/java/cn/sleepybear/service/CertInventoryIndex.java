@@ -0,0 +1,416 @@
+package cn.sleepybear.service;
+
+import cn.sleepybear.config.ConfigHolder;
+import cn.sleepybear.model.PlatformSslCertInfo;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToIntFunction;
+
+/**
+ * 证书配置的内存索引。
+ * <p>
+ * 按照 id、域名（支持通配符证书）、证书中的所有名称（SAN）、certId、accountId、cloudPlatform 以及过期时间索引配置中的证书，
+ * 过期时间使用有序的 NavigableMap。
+ * 配置每发布一个新的快照就调用 {@link #apply(ConfigHolder.Snapshot)} 同步索引，没有修改的证书配置在前后两个快照中是同一个对象，
+ * 只需要比较引用，只有变化的证书才会更新各个索引；有证书被删除或者位置发生变化时才完整重建。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 08:09
+ */
+public class CertInventoryIndex {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private long version = -1;
+    private final Map<String, Entry> byId = new HashMap<>();
+    private final Map<String, Entry> byDomain = new HashMap<>();
+    private final Map<String, Entry> byCertId = new HashMap<>();
+    /**
+     * 小写的域名和 SAN 中的名称
+     */
+    private final Map<String, Map<String, PlatformSslCertInfo>> byName = new HashMap<>();
+    private final Map<String, Map<String, PlatformSslCertInfo>> byAccountId = new HashMap<>();
+    private final Map<String, Map<String, PlatformSslCertInfo>> byCloudPlatform = new HashMap<>();
+    private final NavigableMap<Long, Map<String, PlatformSslCertInfo>> byExpireTime = new TreeMap<>();
+
+    /**
+     * 证书配置以及它在快照列表中的位置
+     */
+    private record Entry(PlatformSslCertInfo info, int position) {
+    }
+
+    /**
+     * 同步到指定的配置快照，比当前索引旧的快照会被忽略
+     */
+    public void apply(ConfigHolder.Snapshot snapshot) {
+        lock.writeLock().lock();
+        try {
+            if (snapshot.version() <= version) {
+                return;
+            }
+
+            List<PlatformSslCertInfo> infos = snapshot.config().getPlatformSslCertInfos();
+            if (!applyIncrementally(infos)) {
+                rebuild(infos);
+            }
+            version = snapshot.version();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 只更新变化的证书，有证书被删除或者位置变化时返回 false
+     */
+    private boolean applyIncrementally(List<PlatformSslCertInfo> infos) {
+        int count = 0;
+        for (int i = 0; i < infos.size(); i++) {
+            PlatformSslCertInfo info = infos.get(i);
+            if (info == null || info.getId() == null) {
+                continue;
+            }
+            count++;
+
+            Entry old = byId.get(info.getId());
+            if (old != null && old.position() != i) {
+                return false;
+            }
+            if (old != null && old.info() == info) {
+                continue;
+            }
+            if (old != null) {
+                unindex(old);
+            }
+            index(new Entry(info, i));
+        }
+        return count == byId.size();
+    }
+
+    private void rebuild(List<PlatformSslCertInfo> infos) {
+        byId.clear();
+        byDomain.clear();
+        byCertId.clear();
+        byName.clear();
+        byAccountId.clear();
+        byCloudPlatform.clear();
+        byExpireTime.clear();
+        for (int i = 0; i < infos.size(); i++) {
+            PlatformSslCertInfo info = infos.get(i);
+            if (info != null && info.getId() != null) {
+                index(new Entry(info, i));
+            }
+        }
+    }
+
+    private void index(Entry entry) {
+        PlatformSslCertInfo info = entry.info();
+        byId.put(info.getId(), entry);
+        // 同一个域名有多个证书配置时，按域名查找返回第一个
+        if (info.getDomain() != null) {
+            byDomain.merge(info.getDomain(), entry, (a, b) -> a.position() <= b.position() ? a : b);
+        }
+        if (info.getCertId() != null) {
+            byCertId.put(info.getCertId(), entry);
+        }
+        for (String name : namesOf(info)) {
+            addToGroup(byName, name, info);
+        }
+        addToGroup(byAccountId, info.getAccountId(), info);
+        addToGroup(byCloudPlatform, info.getCloudPlatform(), info);
+        addToGroup(byExpireTime, info.getExpireTimeAt(), info);
+    }
+
+    private void unindex(Entry entry) {
+        PlatformSslCertInfo info = entry.info();
+        byId.remove(info.getId(), entry);
+        if (info.getDomain() != null) {
+            byDomain.remove(info.getDomain(), entry);
+        }
+        if (info.getCertId() != null) {
+            byCertId.remove(info.getCertId(), entry);
+        }
+        for (String name : namesOf(info)) {
+            removeFromGroup(byName, name, info);
+        }
+        removeFromGroup(byAccountId, info.getAccountId(), info);
+        removeFromGroup(byCloudPlatform, info.getCloudPlatform(), info);
+        removeFromGroup(byExpireTime, info.getExpireTimeAt(), info);
+    }
+
+    /**
+     * 证书的域名和 SAN 中的名称，小写并去重
+     */
+    private static Set<String> namesOf(PlatformSslCertInfo info) {
+        Set<String> names = new LinkedHashSet<>();
+        if (info.getDomain() != null) {
+            names.add(info.getDomain().toLowerCase(Locale.ROOT));
+        }
+        if (info.getSubjectAltNames() != null) {
+            for (String name : info.getSubjectAltNames()) {
+                if (name != null) {
+                    names.add(name.toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return names;
+    }
+
+    private static <K> void addToGroup(Map<K, Map<String, PlatformSslCertInfo>> groups, K key, PlatformSslCertInfo info) {
+        if (key != null) {
+            groups.computeIfAbsent(key, k -> new LinkedHashMap<>()).put(info.getId(), info);
+        }
+    }
+
+    private static <K> void removeFromGroup(Map<K, Map<String, PlatformSslCertInfo>> groups, K key, PlatformSslCertInfo info) {
+        if (key == null) {
+            return;
+        }
+        Map<String, PlatformSslCertInfo> group = groups.get(key);
+        if (group != null && group.remove(info.getId(), info) && group.isEmpty()) {
+            groups.remove(key);
+        }
+    }
+
+    public long getVersion() {
+        lock.readLock().lock();
+        try {
+            return version;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public PlatformSslCertInfo getById(String id) {
+        lock.readLock().lock();
+        try {
+            return infoOf(byId.get(id));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public PlatformSslCertInfo getByDomain(String domain) {
+        lock.readLock().lock();
+        try {
+            return infoOf(byDomain.get(domain));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public PlatformSslCertInfo getByCertId(String certId) {
+        lock.readLock().lock();
+        try {
+            return infoOf(byCertId.get(certId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 查找可以用于某个主机名的证书：完全相同的域名，以及覆盖它的通配符域名（*.example.com 覆盖 a.example.com，不覆盖 a.b.example.com），
+     * 按域名匹配的在前，之后是按证书 SAN 匹配的
+     */
+    public List<PlatformSslCertInfo> findByHost(String host) {
+        if (host == null || host.isEmpty()) {
+            return List.of();
+        }
+
+        String lowerHost = host.toLowerCase(Locale.ROOT);
+        List<PlatformSslCertInfo> result = new ArrayList<>(2);
+        lock.readLock().lock();
+        try {
+            addIfPresent(result, byDomain.get(host));
+            if (!lowerHost.equals(host)) {
+                addIfPresent(result, byDomain.get(lowerHost));
+            }
+            int dot = lowerHost.indexOf('.');
+            String wildcard = dot > 0 && !lowerHost.startsWith("*.") ? "*" + lowerHost.substring(dot) : null;
+            if (wildcard != null) {
+                addIfPresent(result, byDomain.get(wildcard));
+            }
+            addAllIfAbsent(result, byName.get(lowerHost));
+            if (wildcard != null) {
+                addAllIfAbsent(result, byName.get(wildcard));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * 域名或者证书 SAN 中有该名称（忽略大小写，通配符名称需要完全相同）的证书
+     */
+    public List<PlatformSslCertInfo> getByName(String name) {
+        return name != null ? getGroup(byName, name.toLowerCase(Locale.ROOT)) : List.of();
+    }
+
+    public List<PlatformSslCertInfo> getByAccountId(String accountId) {
+        return getGroup(byAccountId, accountId);
+    }
+
+    public List<PlatformSslCertInfo> getByCloudPlatform(String cloudPlatform) {
+        return getGroup(byCloudPlatform, cloudPlatform);
+    }
+
+    /**
+     * 过期时间在 [fromInclusive, toExclusive) 之间的证书，按照过期时间排序，参数为 null 表示不限制
+     */
+    public List<PlatformSslCertInfo> getByExpireTime(Long fromInclusive, Long toExclusive) {
+        lock.readLock().lock();
+        try {
+            NavigableMap<Long, Map<String, PlatformSslCertInfo>> range = byExpireTime;
+            if (fromInclusive != null && toExclusive != null) {
+                range = fromInclusive < toExclusive ? range.subMap(fromInclusive, true, toExclusive, false) : Collections.emptyNavigableMap();
+            } else if (fromInclusive != null) {
+                range = range.tailMap(fromInclusive, true);
+            } else if (toExclusive != null) {
+                range = range.headMap(toExclusive, false);
+            }
+
+            List<PlatformSslCertInfo> result = new ArrayList<>();
+            range.values().forEach(group -> result.addAll(group.values()));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private <K> List<PlatformSslCertInfo> getGroup(Map<K, Map<String, PlatformSslCertInfo>> groups, K key) {
+        lock.readLock().lock();
+        try {
+            Map<String, PlatformSslCertInfo> group = groups.get(key);
+            return group != null ? new ArrayList<>(group.values()) : List.of();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 在 prev 快照的副本 infos 上按域名修改证书配置，prev 就是索引当前的版本时直接使用索引中的位置，否则临时按域名建立位置表
+     */
+    public Editor editor(ConfigHolder.Snapshot prev, List<PlatformSslCertInfo> infos) {
+        apply(prev);
+
+        lock.readLock().lock();
+        try {
+            if (version == prev.version()) {
+                return new Editor(infos, domain -> {
+                    lock.readLock().lock();
+                    try {
+                        Entry entry = byDomain.get(domain);
+                        return entry != null ? entry.position() : -1;
+                    } finally {
+                        lock.readLock().unlock();
+                    }
+                });
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // 索引已经是更新的版本，这次修改之后的 compare-and-set 一定会失败，这里只需要保证结果正确
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < infos.size(); i++) {
+            PlatformSslCertInfo info = infos.get(i);
+            if (info != null && info.getDomain() != null) {
+                positions.putIfAbsent(info.getDomain(), i);
+            }
+        }
+        return new Editor(infos, domain -> positions.getOrDefault(domain, -1));
+    }
+
+    /**
+     * 按域名修改配置副本中的证书配置，修改前先复制一份替换到列表中，不会修改已经发布的快照中的对象
+     */
+    public static class Editor {
+        private final List<PlatformSslCertInfo> infos;
+        private final ToIntFunction<String> positions;
+        /**
+         * 这次修改中新增的域名的位置
+         */
+        private final Map<String, Integer> added = new HashMap<>();
+        /**
+         * 这次修改中已经复制过的位置
+         */
+        private final Set<Integer> copied = new HashSet<>();
+
+        private Editor(List<PlatformSslCertInfo> infos, ToIntFunction<String> positions) {
+            this.infos = infos;
+            this.positions = positions;
+        }
+
+        /**
+         * 获取域名对应的可修改的证书配置，没有时在列表末尾新增一个只设置了域名的证书配置
+         */
+        public PlatformSslCertInfo edit(String domain) {
+            int position = indexOf(domain);
+            if (position < 0) {
+                PlatformSslCertInfo info = new PlatformSslCertInfo();
+                info.setDomain(domain);
+                added.put(domain, infos.size());
+                copied.add(infos.size());
+                infos.add(info);
+                return info;
+            }
+
+            PlatformSslCertInfo info = infos.get(position);
+            if (copied.add(position)) {
+                info = info.clone();
+                infos.set(position, info);
+            }
+            return info;
+        }
+
+        /**
+         * 获取域名对应的证书配置，只用于读取，没有时返回 null，不会新增
+         */
+        public PlatformSslCertInfo peek(String domain) {
+            int position = indexOf(domain);
+            return position >= 0 ? infos.get(position) : null;
+        }
+
+        private int indexOf(String domain) {
+            Integer addedPosition = added.get(domain);
+            if (addedPosition != null) {
+                return addedPosition;
+            }
+            int position = positions.applyAsInt(domain);
+            if (position >= 0 && position < infos.size() && infos.get(position) != null && Objects.equals(domain, infos.get(position).getDomain())) {
+                return position;
+            }
+            return -1;
+        }
+    }
+
+    private static PlatformSslCertInfo infoOf(Entry entry) {
+        return entry != null ? entry.info() : null;
+    }
+
+    private static void addAllIfAbsent(List<PlatformSslCertInfo> result, Map<String, PlatformSslCertInfo> group) {
+        if (group == null) {
+            return;
+        }
+        for (PlatformSslCertInfo info : group.values()) {
+            if (!result.contains(info)) {
+                result.add(info);
+            }
+        }
+    }
+
+    private static void addIfPresent(List<PlatformSslCertInfo> result, Entry entry) {
+        if (entry != null && !result.contains(entry.info())) {
+            result.add(entry.info());
+        }
+    }
+}
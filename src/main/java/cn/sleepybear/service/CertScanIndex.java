@@ -0,0 +1,270 @@
+package cn.sleepybear.service;
+
+import cn.sleepybear.config.ConfigPersister;
+import cn.sleepybear.model.CertDetails;
+import cn.sleepybear.util.CertUtils;
+import cn.sleepybear.util.KeyPairVerifier;
+import cn.sleepybear.util.LogUtil;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import lombok.Data;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地证书扫描的索引，持久化在配置文件同目录下。
+ * <p>
+ * 以证书文件路径为 key，记录文件的大小、修改时间和 fileKey（inode），只要这三个值都没有变化，就直接使用上次解析的结果，
+ * 不会再次读取和解析证书文件。私钥是否匹配按照私钥文件的路径分别记录，同一个证书检查过的每个私钥都有自己的记录，
+ * 目录中有多个私钥时不会互相覆盖。每次完整扫描结束后，没有被访问到的文件会从索引中删除。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 07:45
+ */
+public class CertScanIndex {
+    public static final String INDEX_FILENAME = "scan-index.json";
+
+    private static final Gson GSON = new GsonBuilder().create();
+
+    private final Path indexPath;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<String> seen = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile boolean dirty = false;
+
+    private final Stats lastStats = new Stats();
+
+    public CertScanIndex(Path indexPath) {
+        this.indexPath = indexPath;
+        load();
+    }
+
+    /**
+     * 在配置文件的同一目录下创建索引
+     */
+    public static CertScanIndex nextToConfig(String configPath) {
+        Path parent = Path.of(configPath).toAbsolutePath().getParent();
+        return new CertScanIndex(parent.resolve(INDEX_FILENAME));
+    }
+
+    /**
+     * 获取证书的信息，文件指纹没有变化时直接使用索引中的结果，否则重新解析证书，解析失败时返回 null
+     */
+    public CertDetails getDetails(Path crtFile, BasicFileAttributes attrs) {
+        String key = crtFile.toAbsolutePath().toString();
+        seen.add(key);
+
+        long size = attrs.size();
+        long modifiedAt = attrs.lastModifiedTime().toMillis();
+        String fileKey = attrs.fileKey() != null ? attrs.fileKey().toString() : "";
+
+        Entry entry = entries.get(key);
+        // 旧版本的索引中没有证书信息，需要重新解析一次
+        if (entry != null && entry.matches(size, modifiedAt, fileKey) && (entry.getDetails() != null || entry.getExpireTimeAt() == null)) {
+            hits.incrementAndGet();
+            return entry.getDetails();
+        }
+
+        misses.incrementAndGet();
+        CertDetails details = CertUtils.readCertDetails(crtFile.toFile());
+        Entry newEntry = new Entry();
+        newEntry.setSize(size);
+        newEntry.setModifiedAt(modifiedAt);
+        newEntry.setFileKey(fileKey);
+        newEntry.setExpireTimeAt(details != null ? details.getExpireTimeAt() : null);
+        newEntry.setDetails(details);
+        entries.put(key, newEntry);
+        dirty = true;
+        return details;
+    }
+
+    /**
+     * 私钥是否与证书匹配。该私钥文件遍历时得到的大小、修改时间和 fileKey 与上次检查时相同时直接使用上次的结果，
+     * 否则交给 {@link KeyPairVerifier}，由它按照文件内容缓存验证的结果
+     */
+    public boolean isKeyMatch(Path crtFile, CertDetails details, Path keyFile, BasicFileAttributes keyAttrs) {
+        Entry entry = entries.get(crtFile.toAbsolutePath().toString());
+        String keyPath = keyFile.toAbsolutePath().toString();
+        String keyStamp = "%s:%s:%s".formatted(keyAttrs.size(), keyAttrs.lastModifiedTime().toMillis(), keyAttrs.fileKey() != null ? keyAttrs.fileKey() : "");
+        KeyCheck keyCheck = entry != null ? entry.getKeyChecks().get(keyPath) : null;
+        if (keyCheck != null && keyCheck.getMatched() != null && keyStamp.equals(keyCheck.getStamp())) {
+            return keyCheck.getMatched();
+        }
+
+        boolean matched = KeyPairVerifier.matches(crtFile.toFile(), details.getFingerprintSha256(), keyFile.toFile());
+        if (entry != null) {
+            entry.getKeyChecks().put(keyPath, new KeyCheck(keyStamp, matched));
+            dirty = true;
+        }
+        return matched;
+    }
+
+    /**
+     * 删除证书已经不在目录中的私钥的检查记录，keyFiles 为目录中当前所有的私钥
+     */
+    public void retainKeyChecks(Path crtFile, Collection<Path> keyFiles) {
+        Entry entry = entries.get(crtFile.toAbsolutePath().toString());
+        if (entry == null || entry.getKeyChecks().isEmpty()) {
+            return;
+        }
+        Set<String> keyPaths = new HashSet<>();
+        keyFiles.forEach(keyFile -> keyPaths.add(keyFile.toAbsolutePath().toString()));
+        if (entry.getKeyChecks().keySet().retainAll(keyPaths)) {
+            dirty = true;
+        }
+    }
+
+
+    /**
+     * 开始一次完整扫描，重置本次扫描的命中统计
+     */
+    public void beginScan() {
+        seen.clear();
+        hits.set(0);
+        misses.set(0);
+    }
+
+    /**
+     * 结束一次完整扫描，删除本次没有访问到的文件，并在有变化时写回磁盘
+     */
+    public void endScan() {
+        int before = entries.size();
+        entries.keySet().retainAll(seen);
+        int removed = before - entries.size();
+        if (removed > 0) {
+            dirty = true;
+        }
+        seen.clear();
+
+        lastStats.setHits(hits.get());
+        lastStats.setMisses(misses.get());
+        lastStats.setRemoved((long) removed);
+        lastStats.setSize((long) entries.size());
+        LogUtil.info("扫描索引命中 %s 个, 未命中 %s 个, 删除 %s 个, 当前共 %s 个",
+                lastStats.getHits(), lastStats.getMisses(), lastStats.getRemoved(), lastStats.getSize());
+
+        saveIfDirty();
+    }
+
+    /**
+     * 删除某个文件的索引，用于监听到文件被删除时
+     */
+    public void remove(Path crtFile) {
+        if (entries.remove(crtFile.toAbsolutePath().toString()) != null) {
+            dirty = true;
+        }
+    }
+
+    public void saveIfDirty() {
+        if (dirty) {
+            save();
+        }
+    }
+
+    /**
+     * 最近一次完整扫描的命中统计
+     */
+    public Stats getLastStats() {
+        Stats stats = new Stats();
+        stats.setHits(lastStats.getHits());
+        stats.setMisses(lastStats.getMisses());
+        stats.setRemoved(lastStats.getRemoved());
+        stats.setSize(lastStats.getSize());
+        return stats;
+    }
+
+    private void load() {
+        if (!Files.isRegularFile(indexPath)) {
+            return;
+        }
+
+        try {
+            String json = Files.readString(indexPath);
+            Map<String, Entry> loaded = GSON.fromJson(json, new TypeToken<Map<String, Entry>>() {
+            }.getType());
+            if (loaded != null) {
+                loaded.values().removeIf(Objects::isNull);
+                entries.putAll(loaded);
+            }
+            LogUtil.info("读取扫描索引 %s, 共 %s 个文件", indexPath, entries.size());
+        } catch (Exception e) {
+            LogUtil.warn("读取扫描索引 %s 失败，将重新建立索引。错误：%s", indexPath, e.getMessage());
+        }
+    }
+
+    /**
+     * 与配置文件一样先写临时文件并 fsync 再原子地重命名。先清除 dirty 再序列化，序列化期间的修改会重新标记，下次保存时写入
+     */
+    private synchronized void save() {
+        dirty = false;
+        try {
+            ConfigPersister.writeAtomically(indexPath, GSON.toJson(entries).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            dirty = true;
+            LogUtil.error(e, "保存扫描索引到本地失败: %s", e.getMessage());
+        }
+    }
+
+    @Data
+    public static class Entry {
+        private Long size;
+        private Long modifiedAt;
+        private String fileKey;
+        /**
+         * 证书过期时间，为空表示上次解析失败
+         */
+        private Long expireTimeAt;
+        private CertDetails details;
+        /**
+         * 检查过的私钥，key 为私钥文件的路径
+         */
+        private ConcurrentMap<String, KeyCheck> keyChecks = new ConcurrentHashMap<>();
+
+        public ConcurrentMap<String, KeyCheck> getKeyChecks() {
+            if (keyChecks == null) {
+                keyChecks = new ConcurrentHashMap<>();
+            }
+            return keyChecks;
+        }
+
+        private boolean matches(long size, long modifiedAt, String fileKey) {
+            return Objects.equals(this.size, size) && Objects.equals(this.modifiedAt, modifiedAt) && Objects.equals(this.fileKey, fileKey);
+        }
+    }
+
+    /**
+     * 一个私钥的检查结果，stamp 为检查时私钥文件的大小、修改时间和 fileKey
+     */
+    @Data
+    public static class KeyCheck {
+        private String stamp;
+        private Boolean matched;
+
+        public KeyCheck() {
+        }
+
+        public KeyCheck(String stamp, Boolean matched) {
+            this.stamp = stamp;
+            this.matched = matched;
+        }
+    }
+
+    @Data
+    public static class Stats {
+        private Long hits = 0L;
+        private Long misses = 0L;
+        private Long removed = 0L;
+        private Long size = 0L;
+    }
+}
@@ -1,49 +1,258 @@
 package cn.sleepybear.service;
 
 import cn.sleepybear.App;
+import cn.sleepybear.config.AppConfig;
+import cn.sleepybear.config.ConfigHolder;
+import cn.sleepybear.model.CertDetails;
 import cn.sleepybear.model.CertInfo;
 import cn.sleepybear.model.CloudApiKey;
 import cn.sleepybear.model.CloudPlatformActionBase;
+import cn.sleepybear.model.CloudSyncResult;
 import cn.sleepybear.model.PlatformSslCertInfo;
-import cn.sleepybear.util.CertUtils;
+import cn.sleepybear.model.ScanRootStat;
 import cn.sleepybear.util.CommonUtils;
 import cn.sleepybear.util.LogUtil;
-import lombok.NonNull;
+import cn.sleepybear.util.SingleFlight;
+import cn.sleepybear.util.TencentCloudApi;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
 
 public class CertService {
     public static final List<CloudApiKey> apiKeys = new ArrayList<>();
 
+    private static volatile List<ScanRootStat> lastScanRootStats = List.of();
+    private static volatile CertScanIndex scanIndex;
+
+    /**
+     * 内存中的本地证书，key 为域名
+     */
+    private final Map<String, CertInfo> localCertMap = new ConcurrentHashMap<>();
+    private CertDirWatcher certDirWatcher;
+    private final RenewalScheduler renewalScheduler = new RenewalScheduler(this::onCertDue);
+    /**
+     * 配置中证书的索引，随配置快照增量更新
+     */
+    private final CertInventoryIndex inventoryIndex = new CertInventoryIndex();
+    private CertDownloader certDownloader;
+    private CertDeployer certDeployer;
+    private final SingleFlight<Map<String, CertInfo>> localRefreshFlight = new SingleFlight<>();
+    private final SingleFlight<CloudSyncResult> cloudSyncFlight = new SingleFlight<>();
+    /**
+     * 本地证书扫描互斥锁。扫描会等待虚拟线程中的目录遍历完成，使用 synchronized 会把调用方的虚拟线程固定在载体线程上，
+     * 载体线程不足时遍历任务无法调度，因此使用 ReentrantLock
+     */
+    private final ReentrantLock localScanLock = new ReentrantLock();
+
     public CertService() {
         loadApiKeys();
+        inventoryIndex.apply(App.configHolder.snapshot());
+        App.configHolder.addListener(inventoryIndex::apply);
     }
 
-    public void startLoop() {
-        // 虚拟线程启动循环任务
-        Thread.ofVirtual().start(() -> {
-            while (true) {
-                try {
-                    // 每隔一段时间执行任务
-                    TimeUnit.MINUTES.sleep(5);
+    public CertInventoryIndex getInventoryIndex() {
+        return inventoryIndex;
+    }
+
+    /**
+     * 如果配置了监听本地证书目录，则启动目录监听，启动时会完整扫描一次
+     */
+    public synchronized void startWatcher() {
+        AppConfig appConfig = App.configHolder.get();
+        if (!Boolean.TRUE.equals(appConfig.getEnableSslCertWatch()) || certDirWatcher != null) {
+            return;
+        }
+
+        Integer debounceMillis = appConfig.getSslCertWatchDebounceMillis();
+        Integer maxDelayMillis = appConfig.getSslCertWatchMaxDelayMillis();
+        certDirWatcher = new CertDirWatcher(this, appConfig.getSslCertPathList(), appConfig.getSslCertPathMaxDepth(),
+                debounceMillis != null ? debounceMillis : 0, maxDelayMillis != null ? maxDelayMillis : 10000);
+        certDirWatcher.start();
+    }
+
+    public synchronized void stopWatcher() {
+        if (certDirWatcher != null) {
+            certDirWatcher.stop();
+            certDirWatcher = null;
+        }
+    }
+
+    public Map<String, CertInfo> getLocalCertMap() {
+        return Collections.unmodifiableMap(localCertMap);
+    }
+
+    /**
+     * 完整扫描所有本地证书目录，替换内存中的本地证书并更新配置
+     */
+    public Map<String, CertInfo> refreshLocalCerts() {
+        localScanLock.lock();
+        try {
+            AppConfig appConfig = App.configHolder.get();
+            Map<String, CertInfo> certInfoMap = scanLocalCerts(appConfig.getSslCertPathList(), appConfig.getSslCertPathMaxDepth());
+            localCertMap.keySet().retainAll(certInfoMap.keySet());
+            localCertMap.putAll(certInfoMap);
+
+            List<Path> roots = appConfig.getSslCertPathList() != null
+                    ? appConfig.getSslCertPathList().stream().map(path -> Path.of(path).toAbsolutePath().normalize()).toList()
+                    : List.of();
+            updateConfigWithLocalCerts(certInfoMap, findRemovedLocalCerts(certInfoMap, dir -> roots.stream().anyMatch(dir::startsWith)));
+            return certInfoMap;
+        } finally {
+            localScanLock.unlock();
+        }
+    }
 
-                } catch (InterruptedException e) {
-                    break;
+    /**
+     * 同 {@link #refreshLocalCerts()}，并发的调用合并为一次扫描，刚完成的扫描结果在 refreshFreshnessMillis 内直接复用
+     */
+    public SingleFlight.Result<Map<String, CertInfo>> refreshLocalCertsShared() throws Exception {
+        return localRefreshFlight.execute(this::refreshLocalCerts, refreshFreshnessMillis());
+    }
+
+    /**
+     * 同 {@link #queryCloudCerts()}，并发的调用合并为一次同步，刚完成的同步结果在 refreshFreshnessMillis 内直接复用
+     */
+    public SingleFlight.Result<CloudSyncResult> queryCloudCertsShared() throws Exception {
+        return cloudSyncFlight.execute(this::queryCloudCerts, refreshFreshnessMillis());
+    }
+
+    private static long refreshFreshnessMillis() {
+        Integer freshnessMillis = App.configHolder.get().getRefreshFreshnessMillis();
+        return freshnessMillis != null ? freshnessMillis : 0;
+    }
+
+    /**
+     * 只重新扫描发生变化的目录（不包含子目录），增量更新内存中的本地证书和配置
+     */
+    public Map<String, CertInfo> refreshLocalDirectories(Collection<Path> directories) {
+        localScanLock.lock();
+        try {
+            AppConfig appConfig = App.configHolder.get();
+            Integer parallelism = appConfig.getSslCertScanParallelism();
+            LocalCertScanner scanner = new LocalCertScanner(appConfig.getSslCertPathMaxDepth(), parallelism != null ? parallelism : 1, getScanIndex());
+            Map<String, CertInfo> certInfoMap = scanner.scanDirectories(directories);
+
+            // 移除这些目录中已经不存在的证书
+            Set<Path> directorySet = new HashSet<>();
+            directories.forEach(directory -> directorySet.add(directory.toAbsolutePath().normalize()));
+            localCertMap.values().removeIf(certInfo -> {
+                boolean removed = directorySet.contains(certInfo.getCrtFile().getParentFile().toPath().toAbsolutePath().normalize()) && !certInfoMap.containsKey(certInfo.getDomain());
+                if (removed) {
+                    getScanIndex().remove(certInfo.getCrtFile().toPath());
+                    LogUtil.info("本地证书已移除: %s", certInfo.getDomain());
                 }
+                return removed;
+            });
+            localCertMap.putAll(certInfoMap);
+
+            Map<String, File> removed = findRemovedLocalCerts(certInfoMap, directorySet::contains);
+            if (!certInfoMap.isEmpty() || !removed.isEmpty()) {
+                updateConfigWithLocalCerts(certInfoMap, removed);
             }
-        });
+            getScanIndex().saveIfDirty();
+            return certInfoMap;
+        } finally {
+            localScanLock.unlock();
+        }
+    }
+
+    /**
+     * 启动证书到期调度，调度线程只在最早的证书到期时醒来
+     */
+    public void startLoop() {
+        renewalScheduler.reload(App.configHolder.get().getPlatformSslCertInfos());
+        renewalScheduler.start();
+        Long nextDueAt = renewalScheduler.nextDueAt();
+        LogUtil.info("证书到期调度已启动，调度中的证书数量: %s, 最近的处理时间: %s", renewalScheduler.size(), nextDueAt != null ? new Date(nextDueAt) : "无");
+    }
+
+    /**
+     * 配置重新加载之后，用新的证书列表重建调度队列
+     */
+    public void reloadSchedule() {
+        renewalScheduler.reload(App.configHolder.get().getPlatformSslCertInfos());
+    }
+
+    /**
+     * 证书到期时自动下载，返回下载和部署的 future，失败时由调度器重试
+     */
+    private CompletableFuture<?> onCertDue(PlatformSslCertInfo info) {
+        LogUtil.warn("证书即将过期: %s, 过期时间: %s", info.getDomain(), new Date(info.getExpireTimeAt()));
+        if (Boolean.TRUE.equals(info.getAutoDownload())) {
+            return downloadCert(info);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * 从云平台下载证书包并替换本地的证书文件，下载在后台执行，同时下载的数量受 certDownloadConcurrency 限制。
+     * 下载校验通过的证书交给 {@link CertDeployer} 与同一时间段内的其他证书一起部署，返回的 future 在部署完成之后完成
+     */
+    public CompletableFuture<CertDownloader.StagedCert> downloadCert(PlatformSslCertInfo info) {
+        try {
+            if (!CommonUtils.notNullOrEmpty(info.getCertId()) || !CommonUtils.notNullOrEmpty(info.getLocalParentFoldPath())) {
+                throw new IllegalStateException("证书 %s 没有证书 ID 或者本地存放路径，无法下载".formatted(info.getDomain()));
+            }
+
+            CloudApiKey apiKey = apiKeys.stream().filter(key -> Objects.equals(key.getAccountId(), info.getAccountId())).findFirst()
+                    .orElseThrow(() -> new IllegalStateException("证书 %s 的账号 %s 没有对应的 API key".formatted(info.getDomain(), info.getAccountId())));
+
+            TencentCloudApi.DescribeDownloadCertificateUrlQuery query = new TencentCloudApi.DescribeDownloadCertificateUrlQuery();
+            query.setCertificateId(info.getCertId());
+            query.setServiceType("nginx");
+            TencentCloudApi.DescribeDownloadCertificateUrlResponse response = TencentCloudApi.describeDownloadCertificateUrl(query, apiKey.getSecretId(), apiKey.getSecretKey());
+            if (response == null || response.getError() != null) {
+                throw new IllegalStateException("获取证书 %s 的下载地址失败: %s".formatted(info.getDomain(), response != null ? response.getError().getMessage() : "响应为空"));
+            }
+
+            String domain = info.getDomain();
+            String crtFilename = CommonUtils.notNullOrEmpty(info.getCrtFilename()) ? info.getCrtFilename() : domain + "_bundle.crt";
+            String keyFilename = CommonUtils.notNullOrEmpty(info.getKeyFilename()) ? info.getKeyFilename() : domain + ".key";
+            CertDownloader.DownloadTask task = new CertDownloader.DownloadTask(domain, response.getDownloadCertificateUrl(), Path.of(info.getLocalParentFoldPath()), crtFilename, keyFilename);
+            return getCertDownloader().stage(task).thenCompose(getCertDeployer()::submit).whenComplete((stagedCert, e) -> {
+                if (e != null) {
+                    LogUtil.error(e, "下载证书 %s 失败: %s", domain, e.getMessage());
+                }
+            });
+        } catch (Exception e) {
+            LogUtil.error(e, "下载证书 %s 失败: %s", info.getDomain(), e.getMessage());
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private synchronized CertDownloader getCertDownloader() {
+        if (certDownloader == null) {
+            AppConfig appConfig = App.configHolder.get();
+            long timeoutSeconds = positiveOrDefault(appConfig.getCertDownloadTimeoutSeconds(), 60);
+            certDownloader = new CertDownloader((int) positiveOrDefault(appConfig.getCertDownloadConcurrency(), 4), Duration.ofSeconds(timeoutSeconds));
+        }
+        return certDownloader;
+    }
+
+    private synchronized CertDeployer getCertDeployer() {
+        if (certDeployer == null) {
+            AppConfig appConfig = App.configHolder.get();
+            certDeployer = new CertDeployer(Duration.ofMillis(positiveOrDefault(appConfig.getCertDeployDebounceMillis(), 5000)),
+                    Duration.ofMillis(positiveOrDefault(appConfig.getCertDeployMaxDelayMillis(), 60000)),
+                    appConfig.getCertDeployCommand(),
+                    Duration.ofSeconds(positiveOrDefault(appConfig.getCertDeployCommandTimeoutSeconds(), 60)),
+                    // 部署成功之后重新扫描这些目录，更新配置中的过期时间并重新调度
+                    stagedCerts -> refreshLocalDirectories(stagedCerts.stream().map(stagedCert -> stagedCert.getTask().getTargetDir()).distinct().toList()));
+        }
+        return certDeployer;
     }
 
     private void loadApiKeys() {
-        String keyTextFile = App.appConfig.getKeyTextFile();
+        String keyTextFile = App.configHolder.get().getKeyTextFile();
         if (CommonUtils.notNullOrEmpty(keyTextFile)) {
             apiKeys.clear();
             apiKeys.addAll(loadApiKeys(keyTextFile));
@@ -57,7 +266,7 @@ public class CertService {
 
         File keyFile = new File(keyTextFile);
         if (!keyFile.exists() || !keyFile.isFile()) {
-            LogUtil.warn("在路径 %s 下没有找到 API key 的文件".formatted(keyTextFile));
+            LogUtil.warn("在路径 %s 下没有找到 API key 的文件", keyTextFile);
             return cloudApiKeys;
         }
 
@@ -82,18 +291,18 @@ public class CertService {
                     if (CloudPlatformActionBase.validPlatforms(cloudPlatform)) {
                         if (CommonUtils.notNullOrEmpty(cloudPlatform) && CommonUtils.notNullOrEmpty(secretId) && CommonUtils.notNullOrEmpty(secretKey)) {
                             cloudApiKeys.add(new CloudApiKey(cloudPlatform, secretId, secretKey, accountId));
-                            LogUtil.info("加载 API key: %s - %s - %s".formatted(cloudPlatform, secretId, accountId));
+                            LogUtil.info("加载 API key: %s - %s - %s", cloudPlatform, CommonUtils.maskSecretId(secretId), accountId);
                         }
                     } else {
-                        LogUtil.warn("无效的云平台: %s".formatted(cloudPlatform));
+                        LogUtil.warn("无效的云平台: %s", cloudPlatform);
                     }
                 }
             }
         } catch (IOException e) {
-            LogUtil.error("读取 API key 的本地文件失败: %s".formatted(e.getMessage()), e);
+            LogUtil.error(e, "读取 API key 的本地文件失败: %s", e.getMessage());
         }
 
-        LogUtil.info("加载 API key 数量: %s".formatted(cloudApiKeys.size()));
+        LogUtil.info("加载 API key 数量: %s", cloudApiKeys.size());
         return cloudApiKeys;
     }
 
@@ -111,157 +320,284 @@ public class CertService {
     }
 
     public static Map<String, CertInfo> scanLocalCerts(List<String> sslCertPathList, int sslCertPathMaxDepth) {
-        Map<String, CertInfo> certMap = new HashMap<>();
+        Integer parallelism = App.configHolder.get().getSslCertScanParallelism();
+        return scanLocalCerts(sslCertPathList, sslCertPathMaxDepth, parallelism != null ? parallelism : 1);
+    }
 
+    public static Map<String, CertInfo> scanLocalCerts(List<String> sslCertPathList, int sslCertPathMaxDepth, int parallelism) {
         if (sslCertPathList == null || sslCertPathList.isEmpty()) {
             LogUtil.info("没有配置 SSL 证书路径，跳过扫描");
-            return certMap;
+            lastScanRootStats = List.of();
+            return new LinkedHashMap<>();
         }
 
-        for (String path : sslCertPathList) {
-            File directory = new File(path);
-            if (!directory.exists() || !directory.isDirectory()) {
-                LogUtil.warn("路径 %s 不存在或不是一个目录，跳过".formatted(path));
-                continue;
-            }
-
-            try {
-                Files.walkFileTree(Paths.get(path), EnumSet.noneOf(FileVisitOption.class), sslCertPathMaxDepth, new SimpleFileVisitor<>() {
-                    @NonNull
-                    @Override
-                    public FileVisitResult visitFile(Path file, @NonNull BasicFileAttributes attrs) {
-                        if (attrs.isRegularFile()) {
-                            String fileName = file.getFileName().toString();
-                            if (fileName.endsWith(".crt")) {
-                                processCertFile(file.toFile(), certMap);
-                            }
-                        }
-                        return FileVisitResult.CONTINUE;
-                    }
+        LocalCertScanner scanner = new LocalCertScanner(sslCertPathMaxDepth, parallelism, getScanIndex());
+        Map<String, CertInfo> certMap = scanner.scan(sslCertPathList);
+        lastScanRootStats = List.copyOf(scanner.getRootStats());
+        return certMap;
+    }
 
-                    @NonNull
-                    @Override
-                    public FileVisitResult visitFileFailed(Path file, @NonNull IOException exc) {
-                        LogUtil.warn("访问文件失败: %s".formatted(file));
-                        return FileVisitResult.CONTINUE;
-                    }
-                });
-            } catch (IOException e) {
-                LogUtil.error("扫描目录 %s 失败: %s".formatted(path, e.getMessage()), e);
-            }
+    /**
+     * 获取本地扫描索引，索引文件放在配置文件的同一目录下，第一次使用时从磁盘加载
+     */
+    public static synchronized CertScanIndex getScanIndex() {
+        if (scanIndex == null) {
+            scanIndex = CertScanIndex.nextToConfig(App.configHolder.get().getConfigPath());
         }
-
-        return certMap;
+        return scanIndex;
     }
 
-    private static void processCertFile(File crtFile, Map<String, CertInfo> certMap) {
-        String fileName = crtFile.getName();
-        String parentDirName = crtFile.getParentFile().getName();
-        String domain = null;
-        File keyFile = null;
+    /**
+     * 最近一次本地扫描每个根目录的耗时统计
+     */
+    public static List<ScanRootStat> getLastScanRootStats() {
+        return lastScanRootStats;
+    }
 
-        // 尝试从文件名获取域名
-        if (fileName.endsWith("_bundle.crt")) {
-            domain = fileName.substring(0, fileName.length() - "_bundle.crt".length());
-            keyFile = new File(crtFile.getParentFile(), domain + ".key");
-        } else if (fileName.endsWith(".crt")) {
-            domain = fileName.substring(0, fileName.length() - ".crt".length());
-            keyFile = new File(crtFile.getParentFile(), domain + ".key");
-        }
+    /**
+     * 把本地证书合并到配置中，在当前配置的副本上修改之后发布新的配置快照
+     */
+    public void updateConfigWithLocalCerts(Map<String, CertInfo> certMap) {
+        updateConfigWithLocalCerts(certMap, Map.of());
+    }
 
-        // 如果没有从文件名获取到域名或对应的key文件不存在，尝试从目录名获取
-        if ((domain == null || !keyFile.exists()) &&
-            (parentDirName.equals(domain) || parentDirName.equals(domain + "_nginx"))) {
-            domain = parentDirName.replace("_nginx", "");
+    /**
+     * 同 {@link #updateConfigWithLocalCerts(Map)}，removed 为已经不存在的本地证书（域名到证书文件），
+     * 配置中仍然指向这些文件的本地信息会被清除，到期调度、TLS 探测和部署不会再使用这些文件
+     */
+    public void updateConfigWithLocalCerts(Map<String, CertInfo> certMap, Map<String, File> removed) {
+        ConfigHolder.Snapshot snapshot = App.configHolder.update((prev, appConfig) -> {
+            CertInventoryIndex.Editor editor = inventoryIndex.editor(prev, appConfig.getPlatformSslCertInfos());
+            mergeLocalCerts(certMap, editor);
+            clearLocalCerts(removed, editor);
+            return appConfig;
+        });
+        inventoryIndex.apply(snapshot);
+        Set<String> domains = new HashSet<>(certMap.keySet());
+        domains.addAll(removed.keySet());
+        scheduleDomains(domains);
+        App.configPersister.requestSave();
+    }
 
-            // 寻找目录中的key文件
-            File[] files = crtFile.getParentFile().listFiles((dir, name) -> name.endsWith(".key"));
-            if (files != null && files.length > 0) {
-                keyFile = files[0];
+    /**
+     * 配置中指向 scope 范围内的目录、但是这次扫描没有找到的本地证书，key 为域名
+     */
+    private static Map<String, File> findRemovedLocalCerts(Map<String, CertInfo> certMap, Predicate<Path> scope) {
+        Map<String, File> removed = new HashMap<>();
+        for (PlatformSslCertInfo info : App.configHolder.get().getPlatformSslCertInfos()) {
+            if (info == null || info.getDomain() == null || info.getLocalParentFoldPath() == null || info.getCrtFilename() == null
+                || certMap.containsKey(info.getDomain())) {
+                continue;
+            }
+            Path dir = Path.of(info.getLocalParentFoldPath()).toAbsolutePath().normalize();
+            if (scope.test(dir)) {
+                removed.put(info.getDomain(), dir.resolve(info.getCrtFilename()).toFile());
             }
         }
+        return removed;
+    }
 
-        // 如果找到了域名和key文件
-        if (domain != null && keyFile != null && keyFile.exists()) {
-            Long expireTime = CertUtils.getCertificateExpireTime(crtFile);
-            if (expireTime != null) {
-                certMap.put(domain, new CertInfo(keyFile, crtFile, expireTime, domain));
-                LogUtil.info("找到证书: %s, 过期时间: %s".formatted(domain, new Date(expireTime)));
+    private static void clearLocalCerts(Map<String, File> removed, CertInventoryIndex.Editor editor) {
+        for (Map.Entry<String, File> entry : removed.entrySet()) {
+            PlatformSslCertInfo current = editor.peek(entry.getKey());
+            File crtFile = entry.getValue();
+            // 只清除仍然指向这个文件的配置，期间已经指向其他位置的不需要修改
+            if (current == null || !Objects.equals(current.getLocalParentFoldPath(), crtFile.getParentFile().getAbsolutePath())
+                || !Objects.equals(current.getCrtFilename(), crtFile.getName())) {
+                continue;
             }
+
+            PlatformSslCertInfo config = editor.edit(entry.getKey());
+            config.setLocalParentFoldPath(null);
+            config.setKeyFilename(null);
+            config.setCrtFilename(null);
+            config.setSubjectAltNames(null);
+            config.setIssuer(null);
+            config.setFingerprintSha256(null);
+            config.setChainExpireTimeAt(null);
+            LogUtil.info("本地证书已移除，清除配置中的本地路径: %s", entry.getKey());
         }
     }
 
-    public void updateConfigWithLocalCerts(Map<String, CertInfo> certMap) {
-        List<PlatformSslCertInfo> existingConfigs = App.appConfig.getPlatformSslCertInfos();
-        Map<String, PlatformSslCertInfo> existingConfigMap = existingConfigs.stream()
-                .collect(Collectors.toMap(PlatformSslCertInfo::getDomain, config -> config, (a, b) -> a));
-
+    private static void mergeLocalCerts(Map<String, CertInfo> certMap, CertInventoryIndex.Editor editor) {
         for (Map.Entry<String, CertInfo> entry : certMap.entrySet()) {
             String domain = entry.getKey();
             CertInfo certInfo = entry.getValue();
 
-            PlatformSslCertInfo config = existingConfigMap.getOrDefault(domain, new PlatformSslCertInfo());
-            config.setDomain(domain);
+            PlatformSslCertInfo config = editor.edit(domain);
 
             // 设置路径信息
             config.setLocalParentFoldPath(certInfo.getCrtFile().getParentFile().getAbsolutePath());
             config.setKeyFilename(certInfo.getKeyFile().getName());
             config.setCrtFilename(certInfo.getCrtFile().getName());
             config.setExpireTimeAt(certInfo.getExpireTimeAt());
+            CertDetails details = certInfo.getDetails();
+            if (details != null) {
+                config.setSubjectAltNames(List.copyOf(details.getSubjectAltNames()));
+                config.setIssuer(details.getIssuer());
+                config.setFingerprintSha256(details.getFingerprintSha256());
+                config.setChainExpireTimeAt(details.getChainExpireTimeAt());
+            }
 
             // 如果是新配置，添加 id 并设置默认值
-            if (!existingConfigMap.containsKey(domain)) {
+            if (config.getId() == null) {
                 config.setId(CommonUtils.randomString(8));
                 config.setEnable(false);
-                existingConfigs.add(config);
             }
+        }
+    }
 
-            existingConfigMap.put(domain, config);
+    /**
+     * 按照新发布的配置重新调度这些域名的证书
+     */
+    private void scheduleDomains(Set<String> domains) {
+        for (String domain : domains) {
+            PlatformSslCertInfo info = inventoryIndex.getByDomain(domain);
+            if (info != null) {
+                renewalScheduler.schedule(info);
+            }
+        }
+    }
+
+    /**
+     * 通过 TLS 握手检查线上提供的证书是否就是本地的证书。domain 为空时检查所有配置了本地证书的域名，
+     * 否则检查域名或者 SAN 中有该名称的证书；target 不为空时所有域名都连接到该目标，否则使用证书配置或者全局配置中的探测目标
+     */
+    public List<TlsProber.ProbeResult> probeTls(String domain, String target) {
+        AppConfig appConfig = App.configHolder.get();
+        TlsProber prober = new TlsProber((int) positiveOrDefault(appConfig.getTlsProbeConcurrency(), 16),
+                Duration.ofMillis(positiveOrDefault(appConfig.getTlsProbeTimeoutMillis(), 5000)));
+        List<PlatformSslCertInfo> infos = domain != null ? inventoryIndex.getByName(domain) : appConfig.getPlatformSslCertInfos();
+
+        long start = System.nanoTime();
+        List<TlsProber.ProbeResult> results;
+        if (target != null) {
+            TlsProber.Target probeTarget = TlsProber.Target.parse(target);
+            results = prober.probeAll(infos, info -> probeTarget);
+        } else {
+            String defaultTarget = appConfig.getTlsProbeTarget() != null ? appConfig.getTlsProbeTarget() : "127.0.0.1:" + TlsProber.DEFAULT_PORT;
+            results = prober.probeAll(infos, TlsProber.Target.parse(defaultTarget));
         }
 
-        App.appConfig.setPlatformSslCertInfos(new ArrayList<>(existingConfigMap.values()));
-        App.appConfig.save();
+        long mismatches = results.stream().filter(result -> !result.isMatch()).count();
+        LogUtil.info("TLS 探测完成, 耗时 %s ms, 域名 %s 个, 不一致 %s 个",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), results.size(), mismatches);
+        return results;
     }
 
-    public void queryCloudCerts() {
+    /**
+     * 并发查询所有账号的云平台证书，每个账号在单独的虚拟线程上执行。
+     * 单个账号超过 cloudAccountTimeoutSeconds、或者整体超过 cloudSyncTimeoutSeconds 还没有完成的账号会被取消并记为超时，
+     * 已经完成的账号仍然会合并到配置中
+     */
+    public CloudSyncResult queryCloudCerts() {
+        CloudSyncResult syncResult = new CloudSyncResult();
         if (apiKeys.isEmpty()) {
             LogUtil.warn("没有找到有效的 API 密钥，无法查询云平台的证书信息");
-            return;
+            syncResult.setCostMillis(0L);
+            return syncResult;
         }
 
-        List<PlatformSslCertInfo> existingConfigs = App.appConfig.getPlatformSslCertInfos();
-        Map<String, PlatformSslCertInfo> existingConfigMap = existingConfigs.stream().collect(Collectors.toMap(PlatformSslCertInfo::getDomain, config -> config, (a, b) -> a));
-
-        for (CloudApiKey apiKey : apiKeys) {
-            try {
-                CloudPlatformActionBase cloudPlatformActionBase = new CloudPlatformActionBase();
-                List<PlatformSslCertInfo> certInfoList = cloudPlatformActionBase.getCertInfoList(apiKey);
-                for (PlatformSslCertInfo certInfo : certInfoList) {
-                    String domain = certInfo.getDomain();
-                    PlatformSslCertInfo config = existingConfigMap.getOrDefault(domain, new PlatformSslCertInfo());
-                    config.setDomain(domain);
-                    config.setCertId(certInfo.getCertId());
-                    config.setCertStatus(certInfo.getCertStatus());
-                    config.setCertRemark(certInfo.getCertRemark());
-                    config.setExpireTimeAt(certInfo.getExpireTimeAt());
-                    config.setAccountId(apiKey.getAccountId());
-
-                    // 如果是新配置，添加 id 并设置默认值
-                    if (!existingConfigMap.containsKey(domain)) {
-                        config.setId(CommonUtils.randomString(8));
-                        config.setEnable(false);
-                        existingConfigs.add(config);
-                    }
+        long start = System.nanoTime();
+        AppConfig appConfig = App.configHolder.get();
+        long accountTimeoutNanos = TimeUnit.SECONDS.toNanos(positiveOrDefault(appConfig.getCloudAccountTimeoutSeconds(), 20));
+        long syncTimeoutNanos = TimeUnit.SECONDS.toNanos(positiveOrDefault(appConfig.getCloudSyncTimeoutSeconds(), 60));
+        boolean accountTimeoutFirst = accountTimeoutNanos <= syncTimeoutNanos;
+        long deadline = start + Math.min(accountTimeoutNanos, syncTimeoutNanos);
+
+        List<CloudApiKey> keys = List.copyOf(apiKeys);
+        List<Future<List<PlatformSslCertInfo>>> futures = new ArrayList<>();
+        // 每个账号查询本身的耗时，在查询任务中记录，不受前面的账号等待时间的影响
+        AtomicLongArray costNanos = new AtomicLongArray(keys.size());
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        for (int i = 0; i < keys.size(); i++) {
+            CloudApiKey apiKey = keys.get(i);
+            int index = i;
+            futures.add(executor.submit(() -> {
+                long accountStart = System.nanoTime();
+                try {
+                    return new CloudPlatformActionBase().getCertInfoList(apiKey);
+                } finally {
+                    costNanos.set(index, System.nanoTime() - accountStart);
+                }
+            }));
+        }
+
+        // 各个账号查询到的证书，全部完成之后一次性合并到配置中
+        Map<CloudApiKey, List<PlatformSslCertInfo>> accountCerts = new LinkedHashMap<>();
+        try {
+            for (int i = 0; i < keys.size(); i++) {
+                CloudApiKey apiKey = keys.get(i);
+                Future<List<PlatformSslCertInfo>> future = futures.get(i);
 
-                    existingConfigMap.put(domain, config);
+                CloudSyncResult.AccountResult accountResult = new CloudSyncResult.AccountResult();
+                accountResult.setCloudPlatform(apiKey.getCloudPlatform());
+                accountResult.setAccountId(apiKey.getAccountId());
+                accountResult.setSecretId(CommonUtils.maskSecretId(apiKey.getSecretId()));
+                syncResult.getAccounts().add(accountResult);
+
+                try {
+                    List<PlatformSslCertInfo> certInfoList = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    accountCerts.put(apiKey, certInfoList);
+                    accountResult.setStatus(CloudSyncResult.STATUS_SUCCESS);
+                    accountResult.setCertCount(certInfoList.size());
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                    accountResult.setStatus(CloudSyncResult.STATUS_TIMEOUT);
+                    accountResult.setMessage(accountTimeoutFirst ? "账号查询超时" : "同步整体超时");
+                    LogUtil.warn("查询云平台证书超时: %s - %s", apiKey.getCloudPlatform(), apiKey.getAccountId());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    accountResult.setStatus(CloudSyncResult.STATUS_FAILED);
+                    accountResult.setMessage(cause.getMessage());
+                    LogUtil.error(cause, "查询云平台证书失败: %s - %s, %s", apiKey.getCloudPlatform(), apiKey.getAccountId(), cause.getMessage());
                 }
-            } catch (Exception e) {
-                LogUtil.error("查询腾讯云证书失败: %s".formatted(e.getMessage()), e);
+                // 超时的账号还没有结束，耗时为到现在为止的时间
+                long cost = costNanos.get(i);
+                accountResult.setCostMillis(TimeUnit.NANOSECONDS.toMillis(cost > 0 ? cost : System.nanoTime() - start));
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
         }
 
-        App.appConfig.setPlatformSslCertInfos(new ArrayList<>(existingConfigMap.values()));
-        App.appConfig.save();
+        Set<String> domains = new HashSet<>();
+        accountCerts.values().forEach(list -> list.forEach(certInfo -> domains.add(certInfo.getDomain())));
+        ConfigHolder.Snapshot snapshot = App.configHolder.update((prev, config) -> {
+            CertInventoryIndex.Editor editor = inventoryIndex.editor(prev, config.getPlatformSslCertInfos());
+            accountCerts.forEach((apiKey, certInfoList) -> mergeCloudCerts(apiKey, certInfoList, editor));
+            return config;
+        });
+        inventoryIndex.apply(snapshot);
+        scheduleDomains(domains);
+        App.configPersister.requestSave();
+
+        syncResult.setCostMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return syncResult;
+    }
+
+    private static void mergeCloudCerts(CloudApiKey apiKey, List<PlatformSslCertInfo> certInfoList, CertInventoryIndex.Editor editor) {
+        for (PlatformSslCertInfo certInfo : certInfoList) {
+            String domain = certInfo.getDomain();
+            PlatformSslCertInfo config = editor.edit(domain);
+            config.setCertId(certInfo.getCertId());
+            config.setCertStatus(certInfo.getCertStatus());
+            config.setCertRemark(certInfo.getCertRemark());
+            config.setExpireTimeAt(certInfo.getExpireTimeAt());
+            config.setAccountId(apiKey.getAccountId());
+            config.setCloudPlatform(apiKey.getCloudPlatform());
+
+            // 如果是新配置，添加 id 并设置默认值
+            if (config.getId() == null) {
+                config.setId(CommonUtils.randomString(8));
+                config.setEnable(false);
+            }
+        }
+    }
+
+    private static long positiveOrDefault(Integer value, int defaultValue) {
+        return value != null && value > 0 ? value : defaultValue;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,171 @@
+package cn.sleepybear.service;
+
+import cn.sleepybear.util.CommonUtils;
+import cn.sleepybear.util.LogUtil;
+import lombok.Data;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 后台任务管理。
+ * <p>
+ * 耗时的刷新操作提交为任务之后立即返回任务 id，任务在虚拟线程上执行，同时执行的任务数量受 concurrency 限制，
+ * 调用方通过任务 id 查询任务的进度、耗时和结果。已经结束的任务保留 retentionMillis 之后被清理，
+ * 保留的任务数量超过 maxJobs 时优先清理最早结束的任务，保证内存占用有上限。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 08:12
+ */
+public class JobManager {
+    public static final String STATUS_PENDING = "pending";
+    public static final String STATUS_RUNNING = "running";
+    public static final String STATUS_SUCCESS = "success";
+    public static final String STATUS_FAILED = "failed";
+
+    private final Semaphore permits;
+    private final long retentionMillis;
+    private final int maxJobs;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    @Data
+    public static class Job {
+        private String id;
+        private String type;
+        private volatile String status;
+        /**
+         * 当前的进度说明
+         */
+        private volatile String progress;
+        private volatile Integer progressPercent;
+        private Long createdAt;
+        private volatile Long startedAt;
+        private volatile Long finishedAt;
+        private volatile Long costMillis;
+        private volatile Object result;
+        private volatile String error;
+
+        public boolean isFinished() {
+            return STATUS_SUCCESS.equals(status) || STATUS_FAILED.equals(status);
+        }
+
+        public void updateProgress(int percent, String progress) {
+            this.progressPercent = percent;
+            this.progress = progress;
+        }
+    }
+
+    /**
+     * 任务的执行内容，可以通过 job 更新进度，返回值作为任务的结果
+     */
+    public interface JobTask {
+        Object run(Job job) throws Exception;
+    }
+
+    public JobManager(int concurrency, long retentionMillis, int maxJobs) {
+        this.permits = new Semaphore(Math.max(1, concurrency));
+        this.retentionMillis = retentionMillis;
+        this.maxJobs = Math.max(1, maxJobs);
+    }
+
+    /**
+     * 提交任务，立即返回任务信息
+     */
+    public Job submit(String type, JobTask task) {
+        evictExpired();
+
+        Job job = new Job();
+        job.setId(newJobId());
+        job.setType(type);
+        job.setStatus(STATUS_PENDING);
+        job.updateProgress(0, "等待执行");
+        job.setCreatedAt(System.currentTimeMillis());
+        jobs.put(job.getId(), job);
+
+        executor.submit(() -> run(job, task));
+        return job;
+    }
+
+    public Job get(String id) {
+        evictExpired();
+        return jobs.get(id);
+    }
+
+    /**
+     * 所有保留中的任务，按创建时间倒序
+     */
+    public List<Job> list() {
+        evictExpired();
+        List<Job> list = new ArrayList<>(jobs.values());
+        list.sort(Comparator.comparing(Job::getCreatedAt).reversed());
+        return list;
+    }
+
+    private void run(Job job, JobTask task) {
+        long start = System.nanoTime();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            finish(job, start, null, "任务被中断");
+            return;
+        }
+
+        try {
+            job.setStartedAt(System.currentTimeMillis());
+            job.setStatus(STATUS_RUNNING);
+            job.updateProgress(0, "执行中");
+            Object result = task.run(job);
+            finish(job, start, result, null);
+        } catch (Exception | Error e) {
+            // Error（例如 StackOverflowError）同样结束任务，否则任务一直处于执行中，也不会被清理
+            LogUtil.error(e, "任务 %s(%s) 执行失败: %s", job.getId(), job.getType(), e.getMessage());
+            finish(job, start, null, e.getMessage() != null ? e.getMessage() : e.getClass().getName());
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void finish(Job job, long start, Object result, String error) {
+        job.setResult(result);
+        job.setError(error);
+        job.setCostMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        job.setFinishedAt(System.currentTimeMillis());
+        job.updateProgress(100, error == null ? "已完成" : "执行失败");
+        job.setStatus(error == null ? STATUS_SUCCESS : STATUS_FAILED);
+    }
+
+    /**
+     * 清理超过保留时间的已结束任务，数量仍然超过上限时按结束时间清理最早的已结束任务
+     */
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        jobs.values().removeIf(job -> job.isFinished() && now - job.getFinishedAt() > retentionMillis);
+        if (jobs.size() <= maxJobs) {
+            return;
+        }
+
+        List<Job> finished = new ArrayList<>(jobs.values().stream().filter(Job::isFinished).toList());
+        finished.sort(Comparator.comparing(Job::getFinishedAt));
+        for (int i = 0; i < finished.size() && jobs.size() > maxJobs; i++) {
+            jobs.remove(finished.get(i).getId());
+        }
+    }
+
+    private String newJobId() {
+        String id;
+        do {
+            id = CommonUtils.randomString(12);
+        } while (jobs.containsKey(id));
+        return id;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,418 @@
+package cn.sleepybear.service;
+
+import cn.sleepybear.model.CertDetails;
+import cn.sleepybear.model.CertInfo;
+import cn.sleepybear.model.ScanRootStat;
+import cn.sleepybear.util.CertUtils;
+import cn.sleepybear.util.KeyPairVerifier;
+import cn.sleepybear.util.LogUtil;
+import lombok.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 本地证书的并行扫描器。
+ * <p>
+ * 每个根目录会被拆分为「根目录下的文件」和「每个一级子目录」若干个遍历单元，遍历单元在虚拟线程上并发执行，
+ * 同时遍历的单元数量受 parallelism 限制；遍历时收集每个目录直接包含的证书文件（.crt/.cer/.der）和私钥文件以及它们的属性，
+ * 目录遍历结束之后在一张表中配对，每个目录只列出一次，之后也不会再读取文件属性。有私钥的目录中的证书交给独立的解析阶段处理，
+ * 同时解析的数量同样受 parallelism 限制，解析阶段满了之后遍历线程会被阻塞，避免堆积。
+ * <p>
+ * 结果按照根目录的配置顺序、文件路径的字典序合并，相同域名以后出现的为准，保证每次扫描结果的顺序一致。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 07:44
+ */
+public class LocalCertScanner {
+    /**
+     * 目录中有私钥、但是证书解析失败的累计次数
+     */
+    private static final LongAdder PARSE_FAILURES = new LongAdder();
+
+    private final int maxDepth;
+    private final int parallelism;
+    /**
+     * 扫描索引，为空时每个证书都会重新解析
+     */
+    private final CertScanIndex scanIndex;
+
+    private final List<ScanRootStat> rootStats = new ArrayList<>();
+
+    public LocalCertScanner(int maxDepth, int parallelism) {
+        this(maxDepth, parallelism, null);
+    }
+
+    public LocalCertScanner(int maxDepth, int parallelism, CertScanIndex scanIndex) {
+        this.maxDepth = maxDepth;
+        this.parallelism = Math.max(1, parallelism);
+        this.scanIndex = scanIndex;
+    }
+
+    public static long getParseFailureCount() {
+        return PARSE_FAILURES.sum();
+    }
+
+    /**
+     * 获取最近一次 {@link #scan(List)} 每个根目录的统计信息，顺序与传入的路径顺序一致
+     */
+    public List<ScanRootStat> getRootStats() {
+        return rootStats;
+    }
+
+    public Map<String, CertInfo> scan(List<String> sslCertPathList) {
+        List<RootScan> rootScans = new ArrayList<>();
+        for (String path : sslCertPathList) {
+            File directory = new File(path);
+            if (!directory.exists() || !directory.isDirectory()) {
+                LogUtil.warn("路径 %s 不存在或不是一个目录，跳过", path);
+                continue;
+            }
+
+            RootScan rootScan = new RootScan(path);
+            rootScan.units.addAll(splitRoot(rootScan));
+            rootScans.add(rootScan);
+        }
+
+        if (scanIndex != null) {
+            scanIndex.beginScan();
+        }
+        Map<String, CertInfo> certMap = run(rootScans);
+        if (scanIndex != null) {
+            scanIndex.endScan();
+        }
+        return certMap;
+    }
+
+    /**
+     * 只扫描给定目录下直接包含的证书文件，不会进入子目录，用于目录变化后的增量更新。
+     * 不存在的目录会被忽略，对应的结果为空
+     */
+    public Map<String, CertInfo> scanDirectories(Collection<Path> directories) {
+        List<RootScan> rootScans = new ArrayList<>();
+        for (Path directory : directories) {
+            if (!Files.isDirectory(directory)) {
+                continue;
+            }
+
+            RootScan rootScan = new RootScan(directory.toString());
+            rootScan.units.add(new WalkUnit(rootScan, directory, 1));
+            rootScans.add(rootScan);
+        }
+
+        Map<String, CertInfo> certMap = run(rootScans);
+        if (scanIndex != null) {
+            scanIndex.saveIfDirty();
+        }
+        return certMap;
+    }
+
+    private Map<String, CertInfo> run(List<RootScan> rootScans) {
+        Map<String, CertInfo> certMap = new LinkedHashMap<>();
+        rootStats.clear();
+
+        Semaphore walkPermits = new Semaphore(parallelism);
+        Semaphore parsePermits = new Semaphore(parallelism);
+
+        // 先关闭遍历的线程池，等遍历全部结束后再关闭解析的线程池
+        try (ExecutorService parseExecutor = Executors.newVirtualThreadPerTaskExecutor();
+             ExecutorService walkExecutor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (RootScan rootScan : rootScans) {
+                for (WalkUnit unit : rootScan.units) {
+                    walkExecutor.submit(() -> {
+                        walkPermits.acquireUninterruptibly();
+                        try {
+                            walk(unit, parseExecutor, parsePermits);
+                        } finally {
+                            walkPermits.release();
+                        }
+                    });
+                }
+            }
+        }
+
+        for (RootScan rootScan : rootScans) {
+            rootScan.units.sort(Comparator.comparing(unit -> unit.start.toString()));
+            for (WalkUnit unit : rootScan.units) {
+                unit.results.sort(Comparator.comparing(result -> result.crtFile.toString()));
+                for (ParseResult result : unit.results) {
+                    CertInfo certInfo = getQuietly(result.future);
+                    if (certInfo != null) {
+                        rootScan.certsParsed.incrementAndGet();
+                        certMap.put(certInfo.getDomain(), certInfo);
+                    }
+                }
+            }
+
+            ScanRootStat stat = rootScan.toStat();
+            rootStats.add(stat);
+            LogUtil.info("扫描目录 %s 完成, 耗时 %s ms, 文件 %s 个, 证书文件 %s 个, 有效证书 %s 个",
+                    stat.getRoot(), stat.getCostMillis(), stat.getFilesVisited(), stat.getCrtFilesFound(), stat.getCertsParsed());
+        }
+
+        return certMap;
+    }
+
+    /**
+     * 把根目录拆分为多个遍历单元：根目录自身只遍历一层，每个一级子目录作为单独的单元继续向下遍历
+     */
+    private List<WalkUnit> splitRoot(RootScan rootScan) {
+        Path root = Paths.get(rootScan.root);
+        List<WalkUnit> units = new ArrayList<>();
+        if (maxDepth <= 1) {
+            units.add(new WalkUnit(rootScan, root, maxDepth));
+            return units;
+        }
+
+        units.add(new WalkUnit(rootScan, root, 1));
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root, p -> Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS))) {
+            for (Path subDir : stream) {
+                units.add(new WalkUnit(rootScan, subDir, maxDepth - 1));
+            }
+        } catch (IOException e) {
+            LogUtil.error(e, "扫描目录 %s 失败: %s", root, e.getMessage());
+        }
+        return units;
+    }
+
+    private void walk(WalkUnit unit, ExecutorService parseExecutor, Semaphore parsePermits) {
+        RootScan rootScan = unit.rootScan;
+        rootScan.markStart();
+        // 正在遍历的目录，子目录遍历结束之后回到父目录继续收集
+        Deque<DirFiles> dirs = new ArrayDeque<>();
+        try {
+            Files.walkFileTree(unit.start, EnumSet.noneOf(FileVisitOption.class), unit.maxDepth, new SimpleFileVisitor<>() {
+                @NonNull
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, @NonNull BasicFileAttributes attrs) {
+                    dirs.push(new DirFiles(dir));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @NonNull
+                @Override
+                public FileVisitResult visitFile(Path file, @NonNull BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        rootScan.filesVisited.incrementAndGet();
+                        String fileName = file.getFileName().toString();
+                        if (CertUtils.isCertFileName(fileName)) {
+                            rootScan.crtFilesFound.incrementAndGet();
+                            dirs.element().certFiles.add(new ScannedFile(file, attrs));
+                        } else if (fileName.endsWith(".key")) {
+                            dirs.element().keyFiles.put(fileName, new ScannedFile(file, attrs));
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @NonNull
+                @Override
+                public FileVisitResult visitFileFailed(Path file, @NonNull IOException exc) {
+                    LogUtil.warn("访问文件失败: %s", file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                /**
+                 * 目录中的文件都已经收集完毕，目录中没有私钥时不需要解析其中的证书
+                 */
+                @NonNull
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                    DirFiles dirFiles = dirs.pop();
+                    if (dirFiles.keyFiles.isEmpty()) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    for (ScannedFile certFile : dirFiles.certFiles) {
+                        // 解析阶段已满时阻塞遍历线程
+                        parsePermits.acquireUninterruptibly();
+                        Future<CertInfo> future = parseExecutor.submit(() -> {
+                            try {
+                                return processCertFile(certFile, dirFiles);
+                            } finally {
+                                rootScan.markEnd();
+                                parsePermits.release();
+                            }
+                        });
+                        unit.results.add(new ParseResult(certFile.path(), future));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            LogUtil.error(e, "扫描目录 %s 失败: %s", unit.start, e.getMessage());
+        } finally {
+            rootScan.markEnd();
+        }
+    }
+
+    private CertInfo processCertFile(ScannedFile certFile, DirFiles dirFiles) {
+        Path crtPath = certFile.path();
+        File crtFile = crtPath.toFile();
+        String fileName = crtFile.getName();
+        String dirDomain = dirFiles.dir.getFileName().toString().replace("_nginx", "");
+
+        // 从文件名获取域名
+        String fileDomain = null;
+        if (fileName.endsWith("_bundle.crt")) {
+            fileDomain = fileName.substring(0, fileName.length() - "_bundle.crt".length());
+        } else if (CertUtils.isCertFileName(fileName)) {
+            fileDomain = fileName.substring(0, fileName.lastIndexOf('.'));
+        }
+
+        CertDetails details = scanIndex != null ? scanIndex.getDetails(crtPath, certFile.attrs()) : CertUtils.readCertDetails(crtFile);
+        if (details == null) {
+            PARSE_FAILURES.increment();
+            return null;
+        }
+
+        // 依次尝试与文件名同名、与目录同名的私钥，最后是目录中其他的私钥（按文件名排序），使用第一个与证书匹配的
+        ScannedFile namedKeyFile = dirFiles.keyFiles.get(fileDomain + ".key");
+        ScannedFile dirKeyFile = dirFiles.keyFiles.get(dirDomain + ".key");
+        Set<ScannedFile> candidates = new LinkedHashSet<>();
+        if (namedKeyFile != null) {
+            candidates.add(namedKeyFile);
+        }
+        if (dirKeyFile != null) {
+            candidates.add(dirKeyFile);
+        }
+        candidates.addAll(dirFiles.keyFiles.values());
+
+        ScannedFile matchedKeyFile = null;
+        for (ScannedFile candidate : candidates) {
+            boolean matched = scanIndex != null
+                    ? scanIndex.isKeyMatch(crtPath, details, candidate.path(), candidate.attrs())
+                    : KeyPairVerifier.matches(crtFile, details.getFingerprintSha256(), candidate.path().toFile());
+            if (matched) {
+                matchedKeyFile = candidate;
+                break;
+            }
+        }
+        if (scanIndex != null) {
+            scanIndex.retainKeyChecks(crtPath, dirFiles.keyFiles.values().stream().map(ScannedFile::path).toList());
+        }
+        if (matchedKeyFile == null) {
+            // 有同名的私钥却不匹配时才是需要处理的问题，目录中的其他证书（例如 CA 证书）只记录调试日志
+            List<Path> checked = candidates.stream().map(ScannedFile::path).toList();
+            if (namedKeyFile != null || dirKeyFile != null) {
+                LogUtil.warn("证书 %s 与私钥不匹配，已检查: %s", crtFile, checked);
+            } else {
+                LogUtil.debug("证书 %s 在目录中没有找到匹配的私钥，已检查: %s", crtFile, checked);
+            }
+            return null;
+        }
+
+        // 与之前的版本一样以文件名（其次是目录名）作为配置中的域名，例如 _.example.com_bundle.crt 对应 _.example.com，
+        // 升级之后已有的配置仍然能对应上。文件名和目录名都对应不上时才使用证书的 CN 或者第一个 SAN，SAN 只用于索引
+        String domain;
+        if (fileDomain != null && (matchedKeyFile == namedKeyFile || details.hasName(fileDomain))) {
+            domain = fileDomain;
+        } else if (matchedKeyFile == dirKeyFile || details.hasName(dirDomain)) {
+            domain = dirDomain;
+        } else if (details.getCommonName() != null) {
+            domain = details.getCommonName();
+        } else if (!details.getSubjectAltNames().isEmpty()) {
+            domain = details.getSubjectAltNames().getFirst();
+        } else {
+            domain = fileDomain != null ? fileDomain : dirDomain;
+        }
+
+        LogUtil.info("找到证书: %s, 过期时间: %s", domain, new Date(details.getExpireTimeAt()));
+        CertInfo certInfo = new CertInfo(matchedKeyFile.path().toFile(), crtFile, details.getExpireTimeAt(), domain);
+        certInfo.setDetails(details);
+        return certInfo;
+    }
+
+    private static CertInfo getQuietly(Future<CertInfo> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            PARSE_FAILURES.increment();
+            LogUtil.error(e.getCause(), "解析证书失败: %s", e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    private static class RootScan {
+        private final String root;
+        private final List<WalkUnit> units = new ArrayList<>();
+        private final AtomicLong startNanos = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong endNanos = new AtomicLong(Long.MIN_VALUE);
+        private final AtomicLong filesVisited = new AtomicLong();
+        private final AtomicLong crtFilesFound = new AtomicLong();
+        private final AtomicLong certsParsed = new AtomicLong();
+
+        private RootScan(String root) {
+            this.root = root;
+        }
+
+        private void markStart() {
+            startNanos.accumulateAndGet(System.nanoTime(), Math::min);
+        }
+
+        private void markEnd() {
+            endNanos.accumulateAndGet(System.nanoTime(), Math::max);
+        }
+
+        private ScanRootStat toStat() {
+            ScanRootStat stat = new ScanRootStat();
+            stat.setRoot(root);
+            long start = startNanos.get();
+            long end = endNanos.get();
+            stat.setCostMillis(start <= end ? TimeUnit.NANOSECONDS.toMillis(end - start) : 0L);
+            stat.setFilesVisited(filesVisited.get());
+            stat.setCrtFilesFound(crtFilesFound.get());
+            stat.setCertsParsed(certsParsed.get());
+            return stat;
+        }
+    }
+
+    private static class WalkUnit {
+        private final RootScan rootScan;
+        private final Path start;
+        private final int maxDepth;
+        /**
+         * 只会被遍历该单元的线程写入，在线程池关闭之后才会被读取
+         */
+        private final List<ParseResult> results = new ArrayList<>();
+
+        private WalkUnit(RootScan rootScan, Path start, int maxDepth) {
+            this.rootScan = rootScan;
+            this.start = start;
+            this.maxDepth = maxDepth;
+        }
+    }
+
+    private record ParseResult(Path crtFile, Future<CertInfo> future) {
+    }
+
+    /**
+     * 遍历时得到的文件以及它的属性，之后不需要再次读取文件属性
+     */
+    private record ScannedFile(Path path, BasicFileAttributes attrs) {
+    }
+
+    /**
+     * 一个目录中直接包含的证书文件和私钥文件，遍历该目录时收集，目录遍历结束之后一次性配对
+     */
+    private static class DirFiles {
+        private final Path dir;
+        private final List<ScannedFile> certFiles = new ArrayList<>();
+        /**
+         * key 为私钥的文件名，按照文件名排序
+         */
+        private final NavigableMap<String, ScannedFile> keyFiles = new TreeMap<>();
+
+        private DirFiles(Path dir) {
+            this.dir = dir;
+        }
+    }
+}
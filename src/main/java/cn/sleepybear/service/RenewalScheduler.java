@@ -0,0 +1,275 @@
+package cn.sleepybear.service;
+
+import cn.sleepybear.model.PlatformSslCertInfo;
+import cn.sleepybear.util.LogUtil;
+
+import java.util.*;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * 证书到期调度。
+ * <p>
+ * 已启用的证书按照到期处理时间（expireTimeAt - beforeExpireDays）放在有序集合中，调度线程只睡眠到最早的一个到期时间，
+ * 不会定时轮询整个证书列表。证书的过期时间或者配置变化时通过 {@link #schedule(PlatformSslCertInfo)} 重新排序，
+ * 增删改都是 O(log n)。每个证书的同一个到期时间只会触发一次，到期时间变化之后才会再次触发。
+ * 处理失败（onDue 抛出异常或者返回的 future 异常完成）时按照指数退避重新排队，直到处理成功或者到期时间变化。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 07:55
+ */
+public class RenewalScheduler {
+    /**
+     * 没有配置 beforeExpireDays 时，默认过期前 7 天处理
+     */
+    public static final int DEFAULT_BEFORE_EXPIRE_DAYS = 7;
+    /**
+     * 处理失败之后第一次重试的等待时间，之后每次翻倍，最多等待 DEFAULT_RETRY_MAX_DELAY
+     */
+    public static final Duration DEFAULT_RETRY_BASE_DELAY = Duration.ofMinutes(1);
+    public static final Duration DEFAULT_RETRY_MAX_DELAY = Duration.ofHours(1);
+
+    /**
+     * 处理到期的证书，返回的 future 完成表示处理结束，异常完成表示需要重试
+     */
+    private final Function<PlatformSslCertInfo, CompletableFuture<?>> onDue;
+    private final long retryBaseDelayMillis;
+    private final long retryMaxDelayMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final TreeSet<Entry> queue = new TreeSet<>(Comparator.comparingLong(Entry::runAt).thenComparing(Entry::id));
+    private final Map<String, Entry> entries = new HashMap<>();
+    /**
+     * 已经触发过的证书，以及触发时的到期时间
+     */
+    private final Map<String, Long> fired = new HashMap<>();
+    /**
+     * 处理失败的证书连续失败的次数，用于计算下一次重试的等待时间
+     */
+    private final Map<String, Integer> failures = new HashMap<>();
+
+    private Thread thread;
+
+    /**
+     * 队列中的证书，dueAt 为证书的到期处理时间，runAt 为实际执行的时间，重试时 runAt 晚于 dueAt
+     */
+    private record Entry(long runAt, long dueAt, String id, PlatformSslCertInfo info) {
+    }
+
+    public RenewalScheduler(Function<PlatformSslCertInfo, CompletableFuture<?>> onDue) {
+        this(onDue, DEFAULT_RETRY_BASE_DELAY, DEFAULT_RETRY_MAX_DELAY);
+    }
+
+    public RenewalScheduler(Function<PlatformSslCertInfo, CompletableFuture<?>> onDue, Duration retryBaseDelay, Duration retryMaxDelay) {
+        this.onDue = onDue;
+        this.retryBaseDelayMillis = Math.max(1, retryBaseDelay.toMillis());
+        this.retryMaxDelayMillis = Math.max(retryBaseDelayMillis, retryMaxDelay.toMillis());
+    }
+
+    /**
+     * 计算证书的到期处理时间，证书未启用或者没有过期时间时返回 null
+     */
+    public static Long dueAt(PlatformSslCertInfo info) {
+        if (info == null || info.getId() == null || !Boolean.TRUE.equals(info.getEnable()) || info.getExpireTimeAt() == null) {
+            return null;
+        }
+
+        int beforeExpireDays = info.getBeforeExpireDays() != null ? info.getBeforeExpireDays() : DEFAULT_BEFORE_EXPIRE_DAYS;
+        return info.getExpireTimeAt() - TimeUnit.DAYS.toMillis(beforeExpireDays);
+    }
+
+    /**
+     * 用完整的证书列表重建调度队列，用于启动和重新加载配置
+     */
+    public void reload(List<PlatformSslCertInfo> infos) {
+        lock.lock();
+        try {
+            queue.clear();
+            entries.clear();
+            Set<String> ids = new HashSet<>();
+            for (PlatformSslCertInfo info : infos) {
+                if (info != null && info.getId() != null) {
+                    ids.add(info.getId());
+                    scheduleLocked(info);
+                }
+            }
+            fired.keySet().retainAll(ids);
+            failures.keySet().retainAll(ids);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 新增或更新一个证书的调度，证书未启用时会从队列中移除
+     */
+    public void schedule(PlatformSslCertInfo info) {
+        lock.lock();
+        try {
+            scheduleLocked(info);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void remove(String id) {
+        lock.lock();
+        try {
+            Entry entry = entries.remove(id);
+            if (entry != null) {
+                queue.remove(entry);
+            }
+            fired.remove(id);
+            failures.remove(id);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 下一个到期的证书的处理时间（重试时为重试的时间），没有时返回 null
+     */
+    public Long nextDueAt() {
+        lock.lock();
+        try {
+            return queue.isEmpty() ? null : queue.first().runAt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void scheduleLocked(PlatformSslCertInfo info) {
+        String id = info.getId();
+        Entry old = entries.remove(id);
+        if (old != null) {
+            queue.remove(old);
+        }
+
+        Long dueAt = dueAt(info);
+        if (dueAt == null) {
+            fired.remove(id);
+            failures.remove(id);
+            return;
+        }
+        // 同一个到期时间已经触发过，不再重复触发
+        Long firedDueAt = fired.get(id);
+        if (firedDueAt != null) {
+            if (firedDueAt.equals(dueAt)) {
+                return;
+            }
+            fired.remove(id);
+        }
+
+        // 到期时间没有变化时保留重试的等待时间，否则清除之前的失败记录
+        long runAt = dueAt;
+        if (old != null && old.dueAt() == dueAt) {
+            runAt = old.runAt();
+        } else {
+            failures.remove(id);
+        }
+        Entry entry = new Entry(runAt, dueAt, id, info);
+        entries.put(id, entry);
+        queue.add(entry);
+    }
+
+    /**
+     * 处理结束之后调用，失败时如果证书的到期时间没有变化，清除触发记录并按照退避时间重新排队
+     */
+    private void onDone(Entry due, Throwable error) {
+        lock.lock();
+        try {
+            if (!Objects.equals(fired.get(due.id()), due.dueAt())) {
+                // 处理期间证书被移除或者到期时间已经变化，由新的调度接管
+                return;
+            }
+            if (error == null) {
+                failures.remove(due.id());
+                return;
+            }
+
+            int failureCount = failures.merge(due.id(), 1, Integer::sum);
+            long delayMillis = Math.min(retryMaxDelayMillis, retryBaseDelayMillis << Math.min(failureCount - 1, 20));
+            fired.remove(due.id());
+            Entry retry = new Entry(System.currentTimeMillis() + delayMillis, due.dueAt(), due.id(), due.info());
+            entries.put(retry.id(), retry);
+            queue.add(retry);
+            changed.signalAll();
+            LogUtil.warn("处理到期证书 %s 失败，第 %s 次，%s 秒后重试: %s", due.info().getDomain(), failureCount, delayMillis / 1000, error.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = Thread.ofVirtual().name("renewal-scheduler").start(this::run);
+    }
+
+    public synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Entry due;
+            lock.lock();
+            try {
+                if (queue.isEmpty()) {
+                    changed.await();
+                    continue;
+                }
+
+                Entry first = queue.first();
+                long waitMillis = first.runAt() - System.currentTimeMillis();
+                if (waitMillis > 0) {
+                    // 队列变化时会被唤醒重新计算等待时间
+                    changed.await(waitMillis, TimeUnit.MILLISECONDS);
+                    continue;
+                }
+
+                due = queue.pollFirst();
+                entries.remove(due.id());
+                fired.put(due.id(), due.dueAt());
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                lock.unlock();
+            }
+
+            CompletableFuture<?> future;
+            try {
+                future = onDue.apply(due.info());
+            } catch (Exception e) {
+                LogUtil.error(e, "处理到期证书 %s 失败: %s", due.info().getDomain(), e.getMessage());
+                future = CompletableFuture.failedFuture(e);
+            }
+            if (future == null) {
+                future = CompletableFuture.completedFuture(null);
+            }
+            future.whenComplete((result, error) -> onDone(due, error instanceof CompletionException && error.getCause() != null ? error.getCause() : error));
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package cn.sleepybear.service;
+
+import cn.sleepybear.model.CertDetails;
+import cn.sleepybear.model.PlatformSslCertInfo;
+import cn.sleepybear.util.CertUtils;
+import cn.sleepybear.util.LogUtil;
+import lombok.Data;
+
+import javax.net.ssl.*;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * 检查线上实际提供的证书是否就是本地的证书。
+ * <p>
+ * 对每个配置了本地证书的域名，连接到探测目标（一般是本机的 nginx），使用该域名作为 SNI 完成 TLS 握手，
+ * 取服务端返回的叶子证书，与本地证书文件中的叶子证书比较 SHA-256 指纹和过期时间。
+ * 握手只是为了取回证书，不校验证书链和主机名，因此自签名、已经过期的证书同样可以比较。
+ * 每个域名在单独的虚拟线程上探测，同时建立的连接数量受 concurrency 限制，单个域名探测时的任何异常都只记为该域名 FAILED。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 08:37
+ */
+public class TlsProber {
+    public static final int DEFAULT_PORT = 443;
+    private static final Pattern IPV4_LITERAL = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}");
+
+    private final Semaphore permits;
+    private final Duration timeout;
+    private final SSLSocketFactory socketFactory;
+
+    public TlsProber(int concurrency, Duration timeout) {
+        this.permits = new Semaphore(Math.max(1, concurrency));
+        this.timeout = timeout;
+        this.socketFactory = trustAllContext().getSocketFactory();
+    }
+
+    public enum Status {
+        /**
+         * 线上的证书与本地证书相同
+         */
+        MATCH,
+        /**
+         * 线上的证书比本地证书先过期，一般是证书已经替换但是服务还没有重新加载
+         */
+        STALE,
+        /**
+         * 线上的证书与本地证书不同，并且不是更旧的证书，例如 SNI 没有匹配到对应的站点
+         */
+        MISMATCH,
+        /**
+         * 连接或者握手失败
+         */
+        FAILED,
+        /**
+         * 本地证书文件不存在或者无法解析
+         */
+        NO_LOCAL_CERT
+    }
+
+    /**
+     * 探测目标，host 可以是 IPv6 地址
+     */
+    public record Target(String host, int port) {
+        /**
+         * 解析 host:port 或者 [ipv6]:port，没有端口时使用 {@link #DEFAULT_PORT}
+         */
+        public static Target parse(String value) {
+            String text = value.trim();
+            if (text.startsWith("[")) {
+                int end = text.indexOf(']');
+                if (end < 0) {
+                    throw new IllegalArgumentException("探测目标格式错误: %s".formatted(value));
+                }
+                String host = text.substring(1, end);
+                return new Target(host, end + 1 < text.length() && text.charAt(end + 1) == ':' ? Integer.parseInt(text.substring(end + 2)) : DEFAULT_PORT);
+            }
+            int colon = text.lastIndexOf(':');
+            if (colon < 0 || text.indexOf(':') != colon) {
+                return new Target(text, DEFAULT_PORT);
+            }
+            return new Target(text.substring(0, colon), Integer.parseInt(text.substring(colon + 1)));
+        }
+
+        @Override
+        public String toString() {
+            return (host.contains(":") ? "[" + host + "]" : host) + ":" + port;
+        }
+    }
+
+    @Data
+    public static class ProbeResult {
+        private String id;
+        private String domain;
+        /**
+         * 握手时使用的 SNI，通配符域名会替换为一个具体的名称，域名是 IP 地址时不发送 SNI，为 null
+         */
+        private String serverName;
+        private String target;
+        private Status status;
+        private String localFingerprintSha256;
+        private String servedFingerprintSha256;
+        private Long localExpireTimeAt;
+        private Long servedExpireTimeAt;
+        private String servedSubject;
+        private String protocol;
+        private Long costMillis;
+        private String error;
+
+        public boolean isMatch() {
+            return status == Status.MATCH;
+        }
+    }
+
+    /**
+     * 探测所有配置了本地证书的域名，证书配置中没有单独设置 probeTarget 时使用 defaultTarget。结果的顺序与传入的顺序一致
+     */
+    public List<ProbeResult> probeAll(List<PlatformSslCertInfo> infos, Target defaultTarget) {
+        return probeAll(infos, info -> targetOf(info, defaultTarget));
+    }
+
+    /**
+     * 探测所有配置了本地证书的域名，每个域名的探测目标由 targets 决定
+     */
+    public List<ProbeResult> probeAll(List<PlatformSslCertInfo> infos, Function<PlatformSslCertInfo, Target> targets) {
+        List<Future<ProbeResult>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (PlatformSslCertInfo info : infos) {
+                if (!hasLocalCert(info)) {
+                    continue;
+                }
+                futures.add(executor.submit(() -> {
+                    permits.acquireUninterruptibly();
+                    try {
+                        return probe(info, targets.apply(info));
+                    } catch (RuntimeException e) {
+                        return failed(info, null, e);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+        }
+
+        List<ProbeResult> results = new ArrayList<>(futures.size());
+        for (Future<ProbeResult> future : futures) {
+            results.add(future.resultNow());
+        }
+        return results;
+    }
+
+    public static boolean hasLocalCert(PlatformSslCertInfo info) {
+        return info != null && info.getDomain() != null && info.getLocalParentFoldPath() != null && info.getCrtFilename() != null;
+    }
+
+    /**
+     * 证书配置单独设置的探测目标，没有设置或者格式错误时使用 defaultTarget
+     */
+    public static Target targetOf(PlatformSslCertInfo info, Target defaultTarget) {
+        if (info.getProbeTarget() == null || info.getProbeTarget().isBlank()) {
+            return defaultTarget;
+        }
+        try {
+            return Target.parse(info.getProbeTarget());
+        } catch (IllegalArgumentException e) {
+            LogUtil.warn("证书 %s 的探测目标 %s 格式错误，使用默认的 %s", info.getDomain(), info.getProbeTarget(), defaultTarget);
+            return defaultTarget;
+        }
+    }
+
+    /**
+     * 探测单个域名，本地证书每次都从文件中重新读取，保证比较的是刚刚替换的文件
+     */
+    public ProbeResult probe(PlatformSslCertInfo info, Target target) {
+        ProbeResult result = new ProbeResult();
+        result.setId(info.getId());
+        result.setDomain(info.getDomain());
+        result.setServerName(serverNameOf(info));
+        result.setTarget(String.valueOf(target));
+
+        File crtFile = new File(info.getLocalParentFoldPath(), info.getCrtFilename());
+        CertDetails local = crtFile.isFile() ? CertUtils.readCertDetails(crtFile) : null;
+        if (local == null) {
+            result.setStatus(Status.NO_LOCAL_CERT);
+            result.setError(crtFile.isFile() ? "本地证书无法解析" : "本地证书文件不存在");
+            return result;
+        }
+        result.setLocalFingerprintSha256(local.getFingerprintSha256());
+        result.setLocalExpireTimeAt(local.getExpireTimeAt());
+
+        long start = System.nanoTime();
+        try {
+            X509Certificate served = handshake(result, target);
+            result.setServedFingerprintSha256(CertUtils.fingerprintSha256(served));
+            result.setServedExpireTimeAt(served.getNotAfter().getTime());
+            result.setServedSubject(served.getSubjectX500Principal().getName());
+            if (result.getServedFingerprintSha256().equals(local.getFingerprintSha256())) {
+                result.setStatus(Status.MATCH);
+            } else if (result.getServedExpireTimeAt() < local.getExpireTimeAt()) {
+                result.setStatus(Status.STALE);
+            } else {
+                result.setStatus(Status.MISMATCH);
+            }
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            // RuntimeException 例如 SNI 不是合法的主机名，只影响这一个域名
+            result.setStatus(Status.FAILED);
+            result.setError(errorOf(e));
+        } finally {
+            result.setCostMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        return result;
+    }
+
+    /**
+     * 还没有开始握手就失败的探测，例如取探测目标时出错
+     */
+    private static ProbeResult failed(PlatformSslCertInfo info, Target target, RuntimeException e) {
+        ProbeResult result = new ProbeResult();
+        result.setId(info.getId());
+        result.setDomain(info.getDomain());
+        result.setTarget(target != null ? target.toString() : null);
+        result.setStatus(Status.FAILED);
+        result.setError(errorOf(e));
+        return result;
+    }
+
+    private static String errorOf(Exception e) {
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    private X509Certificate handshake(ProbeResult result, Target target) throws IOException {
+        int timeoutMillis = (int) timeout.toMillis();
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(target.host(), target.port()), timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            String serverName = result.getServerName();
+            try (SSLSocket sslSocket = (SSLSocket) socketFactory.createSocket(socket, serverName != null ? serverName : target.host(), target.port(), false)) {
+                SSLParameters parameters = sslSocket.getSSLParameters();
+                // SNI 不允许是 IP 地址，这时不设置，默认的 SNI 也会因为目标是 IP 而为空
+                parameters.setServerNames(serverName != null ? List.of(new SNIHostName(serverName)) : List.of());
+                sslSocket.setSSLParameters(parameters);
+                sslSocket.startHandshake();
+
+                SSLSession session = sslSocket.getSession();
+                result.setProtocol(session.getProtocol());
+                Certificate[] chain = session.getPeerCertificates();
+                if (chain.length == 0 || !(chain[0] instanceof X509Certificate leaf)) {
+                    throw new SSLPeerUnverifiedException("服务端没有返回 X.509 证书");
+                }
+                return leaf;
+            }
+        }
+    }
+
+    /**
+     * SNI 不能是通配符，通配符域名使用证书 SAN 中第一个具体的名称，没有时把 * 替换为 www。
+     * SNI 也不能是 IP 地址，IP 证书返回 null，握手时不发送 SNI
+     */
+    static String serverNameOf(PlatformSslCertInfo info) {
+        String domain = info.getDomain();
+        if (isIpLiteral(domain)) {
+            return null;
+        }
+        if (!domain.startsWith("*.")) {
+            return domain;
+        }
+        if (info.getSubjectAltNames() != null) {
+            for (String name : info.getSubjectAltNames()) {
+                if (!name.contains("*") && name.contains(".")) {
+                    return name;
+                }
+            }
+        }
+        return "www" + domain.substring(1);
+    }
+
+    /**
+     * 只按格式判断，不做 DNS 查询。IPv6 地址一定包含冒号，域名不会
+     */
+    static boolean isIpLiteral(String host) {
+        return host.contains(":") || IPV4_LITERAL.matcher(host).matches();
+    }
+
+    /**
+     * 不校验证书的 SSLContext，只用于取回服务端的证书
+     */
+    private static SSLContext trustAllContext() {
+        try {
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, new TrustManager[]{new X509ExtendedTrustManager() {
+                @Override
+                public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) {
+                }
+
+                @Override
+                public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) {
+                }
+
+                @Override
+                public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+                }
+
+                @Override
+                public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+                }
+
+                @Override
+                public void checkClientTrusted(X509Certificate[] chain, String authType) {
+                }
+
+                @Override
+                public void checkServerTrusted(X509Certificate[] chain, String authType) {
+                }
+
+                @Override
+                public X509Certificate[] getAcceptedIssuers() {
+                    return new X509Certificate[0];
+                }
+            }}, new SecureRandom());
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
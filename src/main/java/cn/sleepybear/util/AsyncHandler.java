@@ -0,0 +1,163 @@
+package cn.sleepybear.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * 异步输出日志的 Handler。
+ * <p>
+ * 调用方只把日志记录放入固定大小的环形缓冲区，由后台线程批量取出，交给真正输出到控制台和文件的 Handler，
+ * 消息的格式化和 I/O 都不在调用方的线程中进行。缓冲区满时 INFO 及以下的日志直接丢弃并计数，
+ * WARNING 及以上的日志会等待缓冲区有空位，保证错误不会丢失。{@link #close()} 会先输出完缓冲区中的日志。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 08:27
+ */
+public class AsyncHandler extends Handler {
+    private static final int BATCH_SIZE = 256;
+
+    private final List<Handler> delegates;
+    private final BlockingQueue<LogRecord> buffer;
+    private final Thread worker;
+    private final LongAdder dropped = new LongAdder();
+    /**
+     * 已经放入缓冲区、还没有交给 delegates 输出的日志数量，包括后台线程已经取出正在输出的
+     */
+    private final AtomicLong pending = new AtomicLong();
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private final Condition drained = drainLock.newCondition();
+    private volatile boolean closed;
+
+    public AsyncHandler(List<Handler> delegates, int bufferSize) {
+        this.delegates = List.copyOf(delegates);
+        this.buffer = new ArrayBlockingQueue<>(Math.max(16, bufferSize));
+        this.worker = Thread.ofPlatform().name("log-writer").daemon().start(this::drainLoop);
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        pending.incrementAndGet();
+        if (buffer.offer(record)) {
+            return;
+        }
+        if (record.getLevel().intValue() < Level.WARNING.intValue()) {
+            dropped.increment();
+            written(1);
+            return;
+        }
+        try {
+            buffer.put(record);
+        } catch (InterruptedException e) {
+            written(1);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 缓冲区满时被丢弃的日志数量
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * 等待缓冲区中的日志输出完成。后台线程输出完所有日志时会发出通知，定时醒来只是为了发现后台线程已经退出的情况
+     */
+    @Override
+    public void flush() {
+        drainLock.lock();
+        try {
+            while (pending.get() > 0 && worker.isAlive()) {
+                drained.await(100, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            drainLock.unlock();
+        }
+        delegates.forEach(Handler::flush);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 后台线程退出之后输出剩余的日志
+        List<LogRecord> remaining = new ArrayList<>();
+        buffer.drainTo(remaining);
+        remaining.forEach(this::write);
+        written(remaining.size());
+        delegates.forEach(Handler::close);
+    }
+
+    private void drainLoop() {
+        List<LogRecord> batch = new ArrayList<>(BATCH_SIZE);
+        while (!closed) {
+            try {
+                batch.add(buffer.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            buffer.drainTo(batch, BATCH_SIZE - 1);
+            batch.forEach(this::write);
+            written(batch.size());
+            batch.clear();
+
+            long droppedCount = dropped.sumThenReset();
+            if (droppedCount > 0) {
+                write(new LogRecord(Level.WARNING, "日志缓冲区已满，丢弃了 %s 条日志".formatted(droppedCount)));
+            }
+            if (buffer.isEmpty()) {
+                delegates.forEach(Handler::flush);
+            }
+        }
+    }
+
+    /**
+     * 减少未输出的日志数量，全部输出完时通知等待中的 {@link #flush()}
+     */
+    private void written(int count) {
+        if (pending.addAndGet(-count) > 0) {
+            return;
+        }
+        drainLock.lock();
+        try {
+            drained.signalAll();
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    private void write(LogRecord record) {
+        for (Handler delegate : delegates) {
+            try {
+                delegate.publish(record);
+            } catch (Exception e) {
+                reportError("输出日志失败", e, ErrorManager.WRITE_FAILURE);
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package cn.sleepybear.util;
+
+import java.io.Serial;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 熔断器。
+ * <p>
+ * 连续失败 failureThreshold 次之后进入 OPEN 状态，openMillis 内的请求直接被拒绝。时间到了之后进入 HALF_OPEN 状态，
+ * 只放行一个试探请求：试探成功则恢复为 CLOSED，失败则重新进入 OPEN 状态。任意一次成功都会清零连续失败的次数。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 08:19
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int failureThreshold;
+    private final long openMillis;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    /**
+     * 熔断期间拒绝请求时抛出的异常
+     */
+    public static class OpenException extends IllegalStateException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        public OpenException(String message) {
+            super(message);
+        }
+    }
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = Math.max(0, openMillis);
+    }
+
+    /**
+     * 是否允许发起请求，HALF_OPEN 状态下只允许一个试探请求
+     */
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            switch (state) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if (System.currentTimeMillis() - openedAt < openMillis) {
+                        return false;
+                    }
+                    state = State.HALF_OPEN;
+                    trialInFlight = true;
+                    return true;
+                default:
+                    if (trialInFlight) {
+                        return false;
+                    }
+                    trialInFlight = true;
+                    return true;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void onSuccess() {
+        lock.lock();
+        try {
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+            trialInFlight = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void onFailure() {
+        lock.lock();
+        try {
+            consecutiveFailures++;
+            trialInFlight = false;
+            if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+                state = State.OPEN;
+                openedAt = System.currentTimeMillis();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 请求既不算成功也不算失败（例如被中断）时调用，释放 HALF_OPEN 状态下的试探机会
+     */
+    public void release() {
+        lock.lock();
+        try {
+            trialInFlight = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public State getState() {
+        lock.lock();
+        try {
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 熔断剩余的时间，单位：毫秒，不在熔断中时返回 0
+     */
+    public long getRemainingOpenMillis() {
+        lock.lock();
+        try {
+            return state == State.OPEN ? Math.max(0, openedAt + openMillis - System.currentTimeMillis()) : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
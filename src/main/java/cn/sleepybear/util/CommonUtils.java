@@ -13,6 +13,10 @@ import java.net.ServerSocket;
  */
 public class CommonUtils {
     public static final Gson GSON = new GsonBuilder().setDateFormat("yyyy-MM-dd HH:mm:ss").setPrettyPrinting().create();
+    /**
+     * 不格式化输出的 GSON，用于体积更小的响应
+     */
+    public static final Gson GSON_COMPACT = new GsonBuilder().setDateFormat("yyyy-MM-dd HH:mm:ss").create();
 
     public static boolean isPortInUse(int port) {
         try (var socket = new ServerSocket(port)) {
@@ -40,4 +44,14 @@ public class CommonUtils {
     public static boolean notNullOrEmpty(String str) {
         return str != null && !str.isEmpty();
     }
+
+    /**
+     * 隐藏 SecretId 中间的部分，只保留前后各 4 位，用于日志和接口返回
+     */
+    public static String maskSecretId(String secretId) {
+        if (secretId == null || secretId.length() <= 8) {
+            return "****";
+        }
+        return secretId.substring(0, 4) + "****" + secretId.substring(secretId.length() - 4);
+    }
 }
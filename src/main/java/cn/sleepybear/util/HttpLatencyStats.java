@@ -0,0 +1,67 @@
+package cn.sleepybear.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 云平台接口请求的耗时统计，按照接口（X-TC-Action）和请求的域名分别记录。
+ * <p>
+ * 每个请求记录两个阶段：ttfb 为从开始请求到收到响应头的耗时（包括域名解析、建立连接、TLS 握手和服务端处理），
+ * total 为到响应体读取完成的总耗时。JDK 的 HTTP 客户端不暴露域名解析和建立连接的耗时，因此不单独统计这两个阶段，
+ * 复用连接时 ttfb 与服务端处理时间接近，需要新建连接时 ttfb 会明显变长。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 08:21
+ */
+public class HttpLatencyStats {
+    private static final Map<String, Timings> byAction = new ConcurrentHashMap<>();
+    private static final Map<String, Timings> byEndpoint = new ConcurrentHashMap<>();
+
+    public static class Timings {
+        private final LatencyHistogram ttfb = new LatencyHistogram();
+        private final LatencyHistogram total = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+
+        private void record(long ttfbNanos, long totalNanos, boolean success) {
+            ttfb.record(ttfbNanos);
+            total.record(totalNanos);
+            if (!success) {
+                errors.increment();
+            }
+        }
+
+        public Snapshot snapshot() {
+            return new Snapshot(errors.sum(), ttfb.snapshot(), total.snapshot());
+        }
+    }
+
+    /**
+     * 一个接口或者域名的耗时快照，errors 为网络错误和 5xx 的次数
+     */
+    public record Snapshot(long errors, LatencyHistogram.Snapshot ttfb, LatencyHistogram.Snapshot total) {
+    }
+
+    /**
+     * 记录一次请求，没有收到响应头的请求 ttfbNanos 传 -1，不计入 ttfb
+     */
+    public static void record(String action, String endpoint, long ttfbNanos, long totalNanos, boolean success) {
+        byAction.computeIfAbsent(action, k -> new Timings()).record(ttfbNanos, totalNanos, success);
+        byEndpoint.computeIfAbsent(endpoint, k -> new Timings()).record(ttfbNanos, totalNanos, success);
+    }
+
+    public static Map<String, Snapshot> snapshotByAction() {
+        return snapshot(byAction);
+    }
+
+    public static Map<String, Snapshot> snapshotByEndpoint() {
+        return snapshot(byEndpoint);
+    }
+
+    private static Map<String, Snapshot> snapshot(Map<String, Timings> timingsMap) {
+        Map<String, Snapshot> result = new TreeMap<>();
+        timingsMap.forEach((key, timings) -> result.put(key, timings.snapshot()));
+        return result;
+    }
+}
@@ -0,0 +1,43 @@
+package cn.sleepybear.util;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+
+/**
+ * 每条日志输出为一行 JSON，便于日志采集按照字段检索，例如：
+ * <pre>{"time":"2026-10-19T01:20:00.123Z","level":"INFO","logger":"Log","thread":1,"message":"..."}</pre>
+ * 有异常时增加 error 字段，内容为完整的异常堆栈。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 08:27
+ */
+public class JsonLinesFormatter extends Formatter {
+    @Override
+    public String format(LogRecord record) {
+        StringWriter sw = new StringWriter(128);
+        try (JsonWriter out = new JsonWriter(sw)) {
+            out.beginObject();
+            out.name("time").value(Instant.ofEpochMilli(record.getMillis()).toString());
+            out.name("level").value(record.getLevel().getName());
+            out.name("logger").value(record.getLoggerName());
+            out.name("thread").value(record.getLongThreadID());
+            out.name("message").value(formatMessage(record));
+            if (record.getThrown() != null) {
+                StringWriter stackTrace = new StringWriter();
+                record.getThrown().printStackTrace(new PrintWriter(stackTrace));
+                out.name("error").value(stackTrace.toString());
+            }
+            out.endObject();
+        } catch (IOException e) {
+            // StringWriter 不会抛出 IOException
+            throw new IllegalStateException(e);
+        }
+        return sw.append('\n').toString();
+    }
+}
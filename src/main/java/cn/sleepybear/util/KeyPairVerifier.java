@@ -0,0 +1,101 @@
+package cn.sleepybear.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 检查私钥与证书是否匹配，结果按照内容缓存。
+ * <p>
+ * 缓存的 key 为证书的 SHA-256 指纹加上私钥文件内容的 SHA-256，文件内容不变时只会验证一次，
+ * 修改时间变化（例如被重新复制）也不会重新验证。每次检查仍然需要读取私钥文件计算哈希，私钥文件很小，
+ * 与签名验签相比可以忽略。缓存超过 {@link #MAX_CACHE_SIZE} 时清空重新开始。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 08:32
+ */
+public class KeyPairVerifier {
+    private static final int MAX_CACHE_SIZE = 10000;
+
+    private static final Map<String, Boolean> cache = new ConcurrentHashMap<>();
+    private static final LongAdder verifications = new LongAdder();
+    private static final LongAdder cacheHits = new LongAdder();
+    private static final LongAdder mismatches = new LongAdder();
+
+    /**
+     * 验证统计：verifications 为实际签名验签的次数，cacheHits 为直接使用缓存的次数，mismatches 为不匹配的次数
+     */
+    public record Stats(long verifications, long cacheHits, long mismatches, int cacheSize) {
+    }
+
+    /**
+     * 私钥文件内容的 SHA-256，读取失败时返回 null
+     */
+    public static String hashKeyFile(File keyFile) {
+        try {
+            return CertUtils.sha256Hex(Files.readAllBytes(keyFile.toPath()));
+        } catch (IOException e) {
+            LogUtil.warn("读取私钥文件 %s 失败: %s", keyFile, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 检查私钥是否与证书文件中的第一张证书匹配，certFingerprint 为该证书的 SHA-256 指纹
+     */
+    public static boolean matches(File crtFile, String certFingerprint, File keyFile) {
+        String keyHash = hashKeyFile(keyFile);
+        return keyHash != null && matches(crtFile, certFingerprint, keyFile, keyHash);
+    }
+
+    /**
+     * 同 {@link #matches(File, String, File)}，私钥文件内容的哈希已经计算好
+     */
+    public static boolean matches(File crtFile, String certFingerprint, File keyFile, String keyHash) {
+        String cacheKey = certFingerprint + ":" + keyHash;
+        Boolean cached = cache.get(cacheKey);
+        if (cached != null) {
+            cacheHits.increment();
+            return cached;
+        }
+
+        boolean matched = verify(crtFile, keyFile);
+        if (cache.size() >= MAX_CACHE_SIZE) {
+            cache.clear();
+        }
+        cache.put(cacheKey, matched);
+        return matched;
+    }
+
+    public static Stats getStats() {
+        return new Stats(verifications.sum(), cacheHits.sum(), mismatches.sum(), cache.size());
+    }
+
+    private static boolean verify(File crtFile, File keyFile) {
+        verifications.increment();
+        List<X509Certificate> certificates = CertUtils.readCertificates(crtFile);
+        if (certificates.isEmpty()) {
+            return false;
+        }
+
+        boolean matched;
+        try {
+            PrivateKey privateKey = CertUtils.readPrivateKey(Files.readString(keyFile.toPath(), StandardCharsets.US_ASCII), keyFile.getAbsolutePath());
+            matched = CertUtils.isKeyPairMatch(certificates.getFirst(), privateKey);
+        } catch (Exception e) {
+            LogUtil.warn("读取私钥 %s 失败: %s", keyFile, e.getMessage());
+            matched = false;
+        }
+        if (!matched) {
+            mismatches.increment();
+        }
+        return matched;
+    }
+}
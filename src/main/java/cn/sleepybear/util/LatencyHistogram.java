@@ -0,0 +1,78 @@
+package cn.sleepybear.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 固定分桶的耗时直方图。
+ * <p>
+ * 桶的上界（毫秒）固定为 {@link #BOUNDS_MILLIS}，最后还有一个不限上界的桶。记录只是对应桶的 LongAdder 加一，
+ * 并发记录时没有锁竞争。百分位数取所在桶的上界，落在最后一个桶时取最大值，精度取决于分桶，足够用于观察耗时分布。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 08:21
+ */
+public class LatencyHistogram {
+    public static final long[] BOUNDS_MILLIS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_MILLIS.length + 1];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * 直方图的快照，buckets 为每个桶（不是累计）的数量，耗时单位：毫秒
+     */
+    public record Snapshot(long count, double sumMillis, double meanMillis, double maxMillis, double p50Millis, double p90Millis, double p99Millis, long[] buckets) {
+    }
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int index = 0;
+        while (index < BOUNDS_MILLIS.length && millis >= BOUNDS_MILLIS[index]) {
+            index++;
+        }
+        buckets[index].increment();
+        count.increment();
+        sumNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        double sumMillis = sumNanos.sum() / 1e6;
+        double maxMillis = maxNanos.get() / 1e6;
+        return new Snapshot(total, sumMillis, total > 0 ? sumMillis / total : 0, maxMillis,
+                percentile(counts, total, 0.5, maxMillis), percentile(counts, total, 0.9, maxMillis), percentile(counts, total, 0.99, maxMillis), counts);
+    }
+
+    private static double percentile(long[] counts, long total, double quantile, double maxMillis) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * quantile);
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= rank) {
+                return i < BOUNDS_MILLIS.length ? Math.min(BOUNDS_MILLIS[i], maxMillis) : maxMillis;
+            }
+        }
+        return maxMillis;
+    }
+}
@@ -3,12 +3,20 @@ package cn.sleepybear.util;
 import lombok.Data;
 
 import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serial;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IllegalFormatException;
+import java.util.List;
+import java.util.function.Supplier;
 import java.util.logging.*;
 
 public class LogUtil {
     private static final Logger logger = Logger.getLogger("Log");
+    private static final String SOURCE_CLASS_NAME = LogUtil.class.getName();
     private static boolean initialized = false;
 
     @Data
@@ -20,27 +28,45 @@ public class LogUtil {
         private int maxBackupFiles = 3;
         private Level logLevel = Level.INFO;
         private Formatter formatter = new SimpleFormatter();
+        /**
+         * 是否在后台线程中输出日志，调用方只把日志放入环形缓冲区
+         */
+        private boolean async = true;
+        /**
+         * 异步输出时缓冲区的大小，缓冲区满时丢弃 INFO 及以下的日志，WARNING 及以上的日志等待缓冲区有空位
+         */
+        private int asyncBufferSize = 8192;
+        /**
+         * 是否输出为每行一个 JSON 对象，设置之后忽略 formatter
+         */
+        private boolean jsonLines = false;
     }
 
     public static void init() {
         init(new Config());
     }
 
-    public static void init(Config config) {
-        if (initialized) {
-            return;
+    /**
+     * 初始化日志，重复调用时关闭之前的输出（异步输出会先写完缓冲区中的日志），按照新的配置重新创建
+     */
+    public static synchronized void init(Config config) {
+        if (!initialized) {
+            initialized = true;
+            Runtime.getRuntime().addShutdownHook(new Thread(LogUtil::close, "log-flush"));
         }
-        initialized = true;
+        close();
 
         logger.setUseParentHandlers(false); // 禁用默认控制台输出
         logger.setLevel(config.getLogLevel());
 
+        Formatter formatter = config.isJsonLines() ? new JsonLinesFormatter() : config.getFormatter();
+        List<Handler> handlers = new ArrayList<>();
         try {
             if (config.isLogToConsole()) {
                 ConsoleHandler consoleHandler = new ConsoleHandler();
                 consoleHandler.setLevel(config.getLogLevel());
-                consoleHandler.setFormatter(config.getFormatter());
-                logger.addHandler(consoleHandler);
+                consoleHandler.setFormatter(formatter);
+                handlers.add(consoleHandler);
             }
 
             if (config.isLogToFile()) {
@@ -56,28 +82,98 @@ public class LogUtil {
                         true // append
                 );
                 fileHandler.setLevel(config.getLogLevel());
-                fileHandler.setFormatter(config.getFormatter());
-                logger.addHandler(fileHandler);
+                fileHandler.setFormatter(formatter);
+                handlers.add(fileHandler);
             }
         } catch (IOException e) {
             System.err.println("初始化Log失败: " + e.getMessage());
         }
+
+        if (config.isAsync() && !handlers.isEmpty()) {
+            AsyncHandler asyncHandler = new AsyncHandler(handlers, config.getAsyncBufferSize());
+            asyncHandler.setLevel(config.getLogLevel());
+            logger.addHandler(asyncHandler);
+        } else {
+            handlers.forEach(logger::addHandler);
+        }
+    }
+
+    /**
+     * 写完缓冲区中的日志并关闭所有输出
+     */
+    public static synchronized void close() {
+        for (Handler handler : logger.getHandlers()) {
+            logger.removeHandler(handler);
+            handler.close();
+        }
+    }
+
+    public static boolean isLoggable(Level level) {
+        return logger.isLoggable(level);
+    }
+
+    public static boolean isDebugEnabled() {
+        return logger.isLoggable(Level.FINE);
     }
 
     public static void info(String message) {
-        logger.info(message);
+        log(Level.INFO, "info", message, null);
+    }
+
+    /**
+     * 参数化的日志，pattern 使用 {@link String#format} 的格式，级别未开启时不会格式化，异步输出时在后台线程中格式化，
+     * 因此不要传入之后还会被修改的对象
+     */
+    public static void info(String pattern, Object... args) {
+        logFormatted(Level.INFO, "info", pattern, args, null);
+    }
+
+    /**
+     * 级别未开启时不会调用 supplier
+     */
+    public static void info(Supplier<String> supplier) {
+        if (logger.isLoggable(Level.INFO)) {
+            log(Level.INFO, "info", supplier.get(), null);
+        }
     }
 
     public static void warn(String message) {
-        logger.warning(message);
+        log(Level.WARNING, "warn", message, null);
+    }
+
+    public static void warn(String pattern, Object... args) {
+        logFormatted(Level.WARNING, "warn", pattern, args, null);
+    }
+
+    public static void warn(Supplier<String> supplier) {
+        if (logger.isLoggable(Level.WARNING)) {
+            log(Level.WARNING, "warn", supplier.get(), null);
+        }
     }
 
     public static void error(String message, Throwable throwable) {
-        logger.log(Level.SEVERE, message, throwable);
+        log(Level.SEVERE, "error", message, throwable);
+    }
+
+    /**
+     * 参数化的错误日志，throwable 放在最前面，避免与 {@link #error(String, Throwable)} 混淆
+     */
+    public static void error(Throwable throwable, String pattern, Object... args) {
+        logFormatted(Level.SEVERE, "error", pattern, args, throwable);
     }
 
     public static void debug(String message) {
-        logger.fine(message);
+        log(Level.FINE, "debug", message, null);
+    }
+
+    public static void debug(String pattern, Object... args) {
+        logFormatted(Level.FINE, "debug", pattern, args, null);
+    }
+
+    public static void debug(Supplier<String> supplier) {
+        if (logger.isLoggable(Level.FINE)) {
+            log(Level.FINE, "debug", supplier.get(), null);
+        }
     }
 
     public static void setLevel(Level level) {
@@ -86,5 +182,69 @@ public class LogUtil {
             handler.setLevel(level);
         }
     }
-}
 
+    private static void log(Level level, String methodName, String message, Throwable throwable) {
+        if (!logger.isLoggable(level)) {
+            return;
+        }
+        LogRecord record = new LogRecord(level, message);
+        record.setThrown(throwable);
+        publish(record, methodName);
+    }
+
+    private static void logFormatted(Level level, String methodName, String pattern, Object[] args, Throwable throwable) {
+        if (!logger.isLoggable(level)) {
+            return;
+        }
+        FormattedRecord record = new FormattedRecord(level, pattern, args);
+        record.setThrown(throwable);
+        publish(record, methodName);
+    }
+
+    private static void publish(LogRecord record, String methodName) {
+        // 直接指定来源，避免输出时遍历调用栈（异步输出时调用栈已经不是调用方的了）
+        record.setSourceClassName(SOURCE_CLASS_NAME);
+        record.setSourceMethodName(methodName);
+        record.setLoggerName(logger.getName());
+        logger.log(record);
+    }
+
+    /**
+     * 参数化的日志记录，第一次读取消息时才按照 {@link String#format} 格式化，之后复用格式化的结果
+     */
+    static class FormattedRecord extends LogRecord {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * 参数不一定能序列化，序列化之前先格式化，之后只保留格式化的结果
+         */
+        private final transient Object[] args;
+        private volatile String formatted;
+
+        FormattedRecord(Level level, String pattern, Object[] args) {
+            super(level, pattern);
+            this.args = args;
+        }
+
+        @Override
+        public String getMessage() {
+            String message = formatted;
+            if (message == null) {
+                try {
+                    message = args == null || args.length == 0 ? super.getMessage() : super.getMessage().formatted(args);
+                } catch (IllegalFormatException e) {
+                    message = super.getMessage() + " " + Arrays.toString(args);
+                }
+                formatted = message;
+            }
+            return message;
+        }
+
+        @Serial
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            getMessage();
+            out.defaultWriteObject();
+        }
+    }
+}
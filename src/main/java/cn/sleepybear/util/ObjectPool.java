@@ -0,0 +1,45 @@
+package cn.sleepybear.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * 有上限的对象池，用于创建开销较大且不是线程安全的对象，例如 CertificateFactory、Mac。
+ * <p>
+ * 扫描和请求都运行在每个任务一个的虚拟线程上，ThreadLocal 缓存在任务结束后就被丢弃，起不到复用的作用，
+ * 因此改为借出后归还。池中没有空闲对象时直接新建，归还时池已满则丢弃，不会阻塞调用者。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 08:56
+ */
+public class ObjectPool<T> {
+    private final BlockingQueue<T> idle;
+    private final Supplier<T> factory;
+
+    public ObjectPool(int capacity, Supplier<T> factory) {
+        this.idle = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.factory = factory;
+    }
+
+    /**
+     * 按照 CPU 核数确定池的容量，同时在使用的对象数量一般不会超过 CPU 核数
+     */
+    public ObjectPool(Supplier<T> factory) {
+        this(Runtime.getRuntime().availableProcessors() * 2, factory);
+    }
+
+    public T borrow() {
+        T object = idle.poll();
+        return object != null ? object : factory.get();
+    }
+
+    /**
+     * 归还对象，调用者需要保证对象已经恢复到可以复用的状态
+     */
+    public void release(T object) {
+        if (object != null) {
+            idle.offer(object);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package cn.sleepybear.util;
+
+import cn.sleepybear.App;
+import cn.sleepybear.config.AppConfig;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 访问云平台接口和下载证书共用的 HTTP 客户端。
+ * <p>
+ * 客户端的参数从当前配置中读取，参数变化时创建新的客户端，旧的客户端不再接受新请求，已经发出的请求正常完成后关闭。
+ * 连接复用的参数是 JDK HTTP 客户端的 JVM 参数，在第一次创建客户端之前写入，之后修改需要重启才能生效。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 08:21
+ */
+public class SharedHttpClient {
+    private static final ReentrantLock lock = new ReentrantLock();
+    private static volatile Instance current;
+
+    public record Settings(boolean preferHttp2, long connectTimeoutMillis, int executorThreads, int keepAliveSeconds, int connectionPoolSize) {
+        public static Settings from(AppConfig appConfig) {
+            return new Settings(
+                    !Boolean.FALSE.equals(appConfig.getHttpClientPreferHttp2()),
+                    appConfig.getHttpClientConnectTimeoutMillis() != null && appConfig.getHttpClientConnectTimeoutMillis() > 0 ? appConfig.getHttpClientConnectTimeoutMillis() : 5000,
+                    appConfig.getHttpClientExecutorThreads() != null ? Math.max(0, appConfig.getHttpClientExecutorThreads()) : 0,
+                    appConfig.getHttpClientKeepAliveSeconds() != null ? Math.max(0, appConfig.getHttpClientKeepAliveSeconds()) : 30,
+                    appConfig.getHttpClientConnectionPoolSize() != null ? Math.max(0, appConfig.getHttpClientConnectionPoolSize()) : 0);
+        }
+    }
+
+    private record Instance(Settings settings, HttpClient client, ExecutorService executor) {
+    }
+
+    public static HttpClient get() {
+        Settings settings = Settings.from(App.configHolder.get());
+        Instance instance = current;
+        if (instance != null && instance.settings().equals(settings)) {
+            return instance.client();
+        }
+
+        lock.lock();
+        try {
+            instance = current;
+            if (instance != null && instance.settings().equals(settings)) {
+                return instance.client();
+            }
+
+            if (instance == null) {
+                // 连接池的参数在 JDK 内部只读取一次
+                System.setProperty("jdk.httpclient.keepalive.timeout", String.valueOf(settings.keepAliveSeconds()));
+                System.setProperty("jdk.httpclient.connectionPoolSize", String.valueOf(settings.connectionPoolSize()));
+            }
+            Instance created = create(settings);
+            current = created;
+            if (instance != null) {
+                LogUtil.info("HTTP 客户端配置已变化，重新创建: %s", settings);
+                close(instance);
+            }
+            return created.client();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 当前使用中的客户端参数，还没有创建客户端时返回根据当前配置计算的参数
+     */
+    public static Settings getSettings() {
+        Instance instance = current;
+        return instance != null ? instance.settings() : Settings.from(App.configHolder.get());
+    }
+
+    /**
+     * 旧的客户端立即停止接受新请求，在后台等待已经发出的请求完成之后再关闭它的线程池。
+     * 客户端结束之前关闭线程池会让还在进行的请求因为 RejectedExecutionException 被中止
+     */
+    private static void close(Instance instance) {
+        instance.client().shutdown();
+        Thread.ofVirtual().name("http-client-close").start(() -> {
+            instance.client().close();
+            instance.executor().shutdown();
+        });
+    }
+
+    private static Instance create(Settings settings) {
+        ExecutorService executor = settings.executorThreads() > 0
+                ? Executors.newFixedThreadPool(settings.executorThreads(), Thread.ofPlatform().name("http-client-", 0).daemon().factory())
+                : Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-client-", 0).factory());
+        HttpClient client = HttpClient.newBuilder()
+                .version(settings.preferHttp2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(settings.connectTimeoutMillis()))
+                .executor(executor)
+                .build();
+        return new Instance(settings, client, executor);
+    }
+}
@@ -0,0 +1,95 @@
+package cn.sleepybear.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 合并同一个操作的并发调用。
+ * <p>
+ * 操作正在执行时，其他调用者不会再执行一次，而是等待正在执行的这一次完成并共享它的结果或者异常。
+ * 操作完成之后的 freshnessMillis 毫秒内到达的调用直接复用上一次成功的结果，失败的结果不会被复用。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 08:10
+ */
+public class SingleFlight<T> {
+    private final ReentrantLock lock = new ReentrantLock();
+    private CompletableFuture<T> inFlight;
+    private T lastValue;
+    private long lastCompletedNanos;
+    private long lastCompletedAt;
+
+    /**
+     * 操作的结果，shared 表示结果来自其他调用者发起的执行，completedAt 为操作完成的时间（13 位时间戳）
+     */
+    public record Result<T>(T value, boolean shared, long completedAt) {
+    }
+
+    public Result<T> execute(Callable<T> task, long freshnessMillis) throws Exception {
+        CompletableFuture<T> future;
+        boolean leader = false;
+        lock.lock();
+        try {
+            if (lastValue != null && freshnessMillis > 0 && System.nanoTime() - lastCompletedNanos <= TimeUnit.MILLISECONDS.toNanos(freshnessMillis)) {
+                return new Result<>(lastValue, true, lastCompletedAt);
+            }
+            if (inFlight == null) {
+                inFlight = new CompletableFuture<>();
+                leader = true;
+            }
+            future = inFlight;
+        } finally {
+            lock.unlock();
+        }
+
+        if (!leader) {
+            try {
+                T value = future.get();
+                return new Result<>(value, true, getLastCompletedAt());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception exception) {
+                    throw exception;
+                }
+                throw e;
+            }
+        }
+
+        try {
+            T value = task.call();
+            long completedAt = System.currentTimeMillis();
+            lock.lock();
+            try {
+                lastValue = value;
+                lastCompletedNanos = System.nanoTime();
+                lastCompletedAt = completedAt;
+                inFlight = null;
+            } finally {
+                lock.unlock();
+            }
+            future.complete(value);
+            return new Result<>(value, false, completedAt);
+        } catch (Throwable e) {
+            lock.lock();
+            try {
+                inFlight = null;
+            } finally {
+                lock.unlock();
+            }
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private long getLastCompletedAt() {
+        lock.lock();
+        try {
+            return lastCompletedAt;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
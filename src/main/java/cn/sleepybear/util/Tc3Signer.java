@@ -0,0 +1,119 @@
+package cn.sleepybear.util;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 腾讯云 API 3.0 的 TC3-HMAC-SHA256 签名。
+ * <p>
+ * 派生的签名密钥只与 (secretKey, UTC 日期, service) 有关，同一天内会被缓存起来，每次请求只需要计算一次 HMAC。
+ * 签名在虚拟线程上进行，Mac 和 MessageDigest 实例从有上限的对象池中借用，十六进制编码使用查表的方式。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 07:51
+ */
+public class Tc3Signer {
+    public static final String ALGORITHM = "TC3-HMAC-SHA256";
+    public static final String TC3REQUEST = "tc3_request";
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd").withZone(ZoneOffset.UTC);
+    private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
+    /**
+     * 缓存的签名密钥数量上限，超过之后清空重新缓存，日期变化后旧的密钥也会在这时候被清理
+     */
+    private static final int MAX_CACHED_KEYS = 1024;
+
+    private static final ObjectPool<Mac> HMAC_SHA256 = new ObjectPool<>(() -> {
+        try {
+            return Mac.getInstance("HmacSHA256");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private static final ObjectPool<MessageDigest> SHA256 = new ObjectPool<>(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private static final Map<SigningKeyId, byte[]> SIGNING_KEYS = new ConcurrentHashMap<>();
+
+    private record SigningKeyId(String secretKey, String date, String service) {
+    }
+
+    /**
+     * 时间戳（秒）对应的 UTC 日期，格式 yyyy-MM-dd
+     */
+    public static String utcDate(long timestampSeconds) {
+        return DATE_FORMATTER.format(Instant.ofEpochSecond(timestampSeconds));
+    }
+
+    /**
+     * 计算签名，返回小写十六进制字符串
+     */
+    public static String sign(String secretKey, String date, String service, String stringToSign) {
+        byte[] signingKey = getSigningKey(secretKey, date, service);
+        return toHex(hmacSha256(signingKey, stringToSign));
+    }
+
+    public static byte[] getSigningKey(String secretKey, String date, String service) {
+        SigningKeyId id = new SigningKeyId(secretKey, date, service);
+        byte[] signingKey = SIGNING_KEYS.get(id);
+        if (signingKey != null) {
+            return signingKey;
+        }
+
+        byte[] secretDate = hmacSha256(("TC3" + secretKey).getBytes(StandardCharsets.UTF_8), date);
+        byte[] secretService = hmacSha256(secretDate, service);
+        signingKey = hmacSha256(secretService, TC3REQUEST);
+
+        if (SIGNING_KEYS.size() >= MAX_CACHED_KEYS) {
+            SIGNING_KEYS.clear();
+        }
+        SIGNING_KEYS.put(id, signingKey);
+        return signingKey;
+    }
+
+    public static byte[] hmacSha256(byte[] key, String data) {
+        Mac mac = HMAC_SHA256.borrow();
+        try {
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            HMAC_SHA256.release(mac);
+        }
+    }
+
+    public static String sha256Hex(String s) {
+        MessageDigest digest = SHA256.borrow();
+        try {
+            return toHex(digest.digest(s.getBytes(StandardCharsets.UTF_8)));
+        } finally {
+            SHA256.release(digest);
+        }
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xff;
+            chars[i * 2] = HEX_CHARS[b >>> 4];
+            chars[i * 2 + 1] = HEX_CHARS[b & 0x0f];
+        }
+        return new String(chars);
+    }
+}
@@ -1,5 +1,7 @@
 package cn.sleepybear.util;
 
+import cn.sleepybear.App;
+import cn.sleepybear.config.AppConfig;
 import cn.sleepybear.model.CloudApiKey;
 import cn.sleepybear.service.CertService;
 import com.google.gson.Gson;
@@ -9,32 +11,96 @@ import com.google.gson.annotations.SerializedName;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
 import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.text.SimpleDateFormat;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
 
 public class TencentCloudApi {
     private static final String CONTENT_TYPE = "application/json; charset=utf-8";
     private static final String VERSION = "2019-12-05";
-    private static final String ALGORITHM = "TC3-HMAC-SHA256";
+    private static final String ALGORITHM = Tc3Signer.ALGORITHM;
     private static final String SIGNED_HEADERS = "content-type;host";
-    private static final String TC3REQUEST = "tc3_request";
+    private static final String TC3REQUEST = Tc3Signer.TC3REQUEST;
 
     private static final Gson GSON = new GsonBuilder().create();
 
-    private static final HttpClient httpClient = HttpClient.newBuilder()
-            .connectTimeout(Duration.ofSeconds(5))
-            .build();
+    public static HttpClient getHttpClient() {
+        return SharedHttpClient.get();
+    }
+
+    /**
+     * 客户端限流、重试和熔断的参数以及请求地址，从当前配置中读取，配置变化时会重建限流器和熔断器。
+     * endpointBaseUrl 为空时请求 https://{endpoint}
+     */
+    public record RequestPolicy(double rateLimitPerSecond, Duration requestTimeout, int maxRetries, long retryBaseDelayMillis,
+                                long retryMaxDelayMillis, int circuitFailureThreshold, long circuitOpenMillis, String endpointBaseUrl) {
+        public static RequestPolicy from(AppConfig appConfig) {
+            return new RequestPolicy(
+                    positiveOrDefault(appConfig.getTencentApiRateLimitPerSecond(), 10),
+                    Duration.ofMillis(positiveOrDefault(appConfig.getTencentApiRequestTimeoutMillis(), 5000)),
+                    appConfig.getTencentApiMaxRetries() != null ? Math.max(0, appConfig.getTencentApiMaxRetries()) : 3,
+                    positiveOrDefault(appConfig.getTencentApiRetryBaseDelayMillis(), 200),
+                    positiveOrDefault(appConfig.getTencentApiRetryMaxDelayMillis(), 5000),
+                    positiveOrDefault(appConfig.getTencentApiCircuitFailureThreshold(), 5),
+                    positiveOrDefault(appConfig.getTencentApiCircuitOpenSeconds(), 60) * 1000L,
+                    appConfig.getTencentApiEndpoint() != null && !appConfig.getTencentApiEndpoint().isBlank() ? appConfig.getTencentApiEndpoint().strip() : null);
+        }
+
+        private static int positiveOrDefault(Integer value, int defaultValue) {
+            return value != null && value > 0 ? value : defaultValue;
+        }
+    }
+
+    /**
+     * 请求的统计：requests 为实际发出的请求数（包括重试），throttled 为被限流（RequestLimitExceeded）的次数，
+     * failures 为重试之后仍然失败的调用数，circuitRejected 为熔断期间直接拒绝的调用数
+     */
+    public record Stats(long requests, long retries, long throttled, long failures, long circuitRejected, Map<String, String> openCircuits) {
+    }
+
+    private static volatile RequestPolicy policy;
+    /**
+     * 限流器，key 为 secretId/action
+     */
+    private static final Map<String, TokenBucket> rateLimiters = new ConcurrentHashMap<>();
+    /**
+     * 熔断器，key 为 secretId
+     */
+    private static final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    private static final LongAdder requestCount = new LongAdder();
+    private static final LongAdder retryCount = new LongAdder();
+    private static final LongAdder throttledCount = new LongAdder();
+    private static final LongAdder failureCount = new LongAdder();
+    private static final LongAdder circuitRejectedCount = new LongAdder();
+
+    public static Stats getStats() {
+        Map<String, String> openCircuits = new TreeMap<>();
+        circuitBreakers.forEach((secretId, breaker) -> {
+            if (breaker.getState() != CircuitBreaker.State.CLOSED) {
+                openCircuits.put(CommonUtils.maskSecretId(secretId), breaker.getState().name());
+            }
+        });
+        return new Stats(requestCount.sum(), retryCount.sum(), throttledCount.sum(), failureCount.sum(), circuitRejectedCount.sum(), openCircuits);
+    }
+
+    private static RequestPolicy currentPolicy() {
+        RequestPolicy latest = RequestPolicy.from(App.configHolder.get());
+        if (!latest.equals(policy)) {
+            policy = latest;
+            rateLimiters.clear();
+            circuitBreakers.clear();
+        }
+        return latest;
+    }
 
     public static void main(String[] args) throws Exception {
         List<CloudApiKey> cloudApiKeys = CertService.loadApiKeys("key.txt");
@@ -83,9 +149,7 @@ public class TencentCloudApi {
 
         String payload = params.toJson();
 
-        Map<String, String> headers = buildHeaders(action, secretId, secretKey, service, endpoint, payload);
-
-        JsonElement jsonElement = sendRequest(payload, headers, endpoint);
+        JsonElement jsonElement = call(action, secretId, secretKey, service, endpoint, payload);
         DescribeCertificatesResponse describeCertificatesResponse = GSON.fromJson(jsonElement, DescribeCertificatesResponse.class);
         if (describeCertificatesResponse == null) {
             System.out.println("响应体为空");
@@ -102,9 +166,7 @@ public class TencentCloudApi {
 
         String payload = params.toJson();
 
-        Map<String, String> headers = buildHeaders(action, secretId, secretKey, service, endpoint, payload);
-
-        JsonElement jsonElement = sendRequest(payload, headers, endpoint);
+        JsonElement jsonElement = call(action, secretId, secretKey, service, endpoint, payload);
         return GSON.fromJson(jsonElement, DescribeDownloadCertificateUrlResponse.class);
     }
 
@@ -127,49 +189,19 @@ public class TencentCloudApi {
         return ALGORITHM + "\n" + timestamp + "\n" + credentialScope + "\n" + sha256Hex(canonicalRequest);
     }
 
-    private static byte[] getSignatureKey(String secretKey, String date, String service) throws Exception {
-        byte[] secretDate = hmacSHA256(date, ("TC3" + secretKey).getBytes(StandardCharsets.UTF_8));
-        byte[] secretService = hmacSHA256(service, secretDate);
-        return hmacSHA256(TC3REQUEST, secretService);
-    }
-
-    private static byte[] hmacSHA256(String data, byte[] key) throws Exception {
-        Mac mac = Mac.getInstance("HmacSHA256");
-        mac.init(new SecretKeySpec(key, mac.getAlgorithm()));
-        return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
-    }
-
     private static String sha256Hex(String s) {
-        try {
-            java.security.MessageDigest digest = java.security.MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(s.getBytes(StandardCharsets.UTF_8));
-            return bytesToHex(hash).toLowerCase();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    private static String bytesToHex(byte[] bytes) {
-        StringBuilder hexString = new StringBuilder();
-        for (byte b : bytes) {
-            String hex = Integer.toHexString(0xff & b);
-            if (hex.length() == 1) hexString.append('0');
-            hexString.append(hex);
-        }
-        return hexString.toString();
+        return Tc3Signer.sha256Hex(s);
     }
 
     private static Map<String, String> buildHeaders(String action, String secretId, String secretKey, String service, String endPoint, String payload) throws Exception {
-        String timestamp = String.valueOf(System.currentTimeMillis() / 1000);
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
-        String date = sdf.format(new Date(Long.parseLong(timestamp) * 1000));
+        long timestampSeconds = System.currentTimeMillis() / 1000;
+        String timestamp = String.valueOf(timestampSeconds);
+        String date = Tc3Signer.utcDate(timestampSeconds);
 
         String canonicalRequest = buildCanonicalRequest(endPoint, payload);
         String credentialScope = date + "/" + service + "/" + TC3REQUEST;
         String stringToSign = buildStringToSign(timestamp, credentialScope, canonicalRequest);
-        byte[] signingKey = getSignatureKey(secretKey, date, service);
-        String signature = bytesToHex(hmacSHA256(stringToSign, signingKey)).toLowerCase();
+        String signature = Tc3Signer.sign(secretKey, date, service, stringToSign);
 
         String authorization = "%s Credential=%s/%s, SignedHeaders=%s, Signature=%s".formatted(ALGORITHM, secretId, credentialScope, SIGNED_HEADERS, signature);
 
@@ -182,14 +214,126 @@ public class TencentCloudApi {
         return headers;
     }
 
-    private static JsonElement sendRequest(String payload, Map<String, String> headers, String endPoint) throws IOException, InterruptedException {
+    /**
+     * 调用腾讯云接口。
+     * <p>
+     * 同一个 SecretId 的同一个接口先经过令牌桶限流；被限流（RequestLimitExceeded）、内部错误、返回 5xx 或者超时时，
+     * 按照指数退避加随机抖动重试，每次重试都会重新签名。重试之后仍然失败的调用计入该账号的熔断器，
+     * 账号熔断期间的调用直接抛出 {@link CircuitBreaker.OpenException}
+     */
+    private static JsonElement call(String action, String secretId, String secretKey, String service, String endpoint, String payload) throws Exception {
+        RequestPolicy requestPolicy = currentPolicy();
+        CircuitBreaker breaker = circuitBreakers.computeIfAbsent(secretId, k -> new CircuitBreaker(requestPolicy.circuitFailureThreshold(), requestPolicy.circuitOpenMillis()));
+        if (!breaker.tryAcquire()) {
+            circuitRejectedCount.increment();
+            throw new CircuitBreaker.OpenException("账号 %s 连续请求失败，已熔断，%s 秒后重试".formatted(CommonUtils.maskSecretId(secretId), (breaker.getRemainingOpenMillis() + 999) / 1000));
+        }
+        TokenBucket rateLimiter = rateLimiters.computeIfAbsent(secretId + "/" + action, k -> new TokenBucket(requestPolicy.rateLimitPerSecond(), requestPolicy.rateLimitPerSecond()));
+
+        boolean recorded = false;
+        try {
+            for (int attempt = 0; ; attempt++) {
+                rateLimiter.acquire();
+                Attempt result = attempt(action, secretId, secretKey, service, endpoint, payload, requestPolicy);
+                if (result.retryReason() == null) {
+                    // 鉴权失败说明密钥本身有问题，同样计入熔断
+                    if (result.errorCode() != null && result.errorCode().startsWith("AuthFailure")) {
+                        breaker.onFailure();
+                    } else {
+                        breaker.onSuccess();
+                    }
+                    recorded = true;
+                    return result.response();
+                }
+
+                if (attempt >= requestPolicy.maxRetries()) {
+                    failureCount.increment();
+                    breaker.onFailure();
+                    recorded = true;
+                    LogUtil.warn("腾讯云接口 %s 重试 %s 次之后仍然失败: %s", action, attempt, result.retryReason());
+                    if (result.error() != null) {
+                        throw result.error();
+                    }
+                    return result.response();
+                }
+
+                long delayMillis = backoffMillis(requestPolicy, attempt);
+                retryCount.increment();
+                LogUtil.debug("腾讯云接口 %s 请求失败（%s），%s ms 后第 %s 次重试", action, result.retryReason(), delayMillis, attempt + 1);
+                Thread.sleep(delayMillis);
+            }
+        } finally {
+            if (!recorded) {
+                breaker.release();
+            }
+        }
+    }
+
+    /**
+     * 一次请求的结果，retryReason 不为空时表示可以重试，error 不为空时表示没有可用的响应
+     */
+    private record Attempt(JsonElement response, String errorCode, String retryReason, IOException error) {
+    }
+
+    private static Attempt attempt(String action, String secretId, String secretKey, String service, String endpoint, String payload, RequestPolicy requestPolicy) throws Exception {
+        requestCount.increment();
+        HttpResponse<String> response;
+        try {
+            Map<String, String> headers = buildHeaders(action, secretId, secretKey, service, endpoint, payload);
+            response = sendRequest(action, payload, headers, endpoint, requestPolicy.endpointBaseUrl(), requestPolicy.requestTimeout());
+        } catch (IOException e) {
+            return new Attempt(null, null, e.toString(), e);
+        }
+
+        if (response.statusCode() >= 500) {
+            String reason = "状态码 %s".formatted(response.statusCode());
+            return new Attempt(null, null, reason, new IOException("腾讯云接口 %s 请求失败，%s".formatted(action, reason)));
+        }
+
+        JsonElement jsonElement = parseResponse(response);
+        String errorCode = errorCode(jsonElement);
+        if (errorCode != null && errorCode.startsWith("RequestLimitExceeded")) {
+            throttledCount.increment();
+            return new Attempt(jsonElement, errorCode, errorCode, null);
+        }
+        if (errorCode != null && errorCode.startsWith("InternalError")) {
+            return new Attempt(jsonElement, errorCode, errorCode, null);
+        }
+        return new Attempt(jsonElement, errorCode, null, null);
+    }
+
+    /**
+     * 第 attempt 次重试前的等待时间：上限为 base * 2^attempt（不超过 max），在上限的一半到上限之间随机取值，
+     * 避免同时被限流的请求在同一时刻重试
+     */
+    private static long backoffMillis(RequestPolicy requestPolicy, int attempt) {
+        long cap = Math.min(requestPolicy.retryMaxDelayMillis(), requestPolicy.retryBaseDelayMillis() << Math.min(attempt, 20));
+        long half = Math.max(1, cap / 2);
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    private static String errorCode(JsonElement response) {
+        if (response == null || !response.isJsonObject()) {
+            return null;
+        }
+        JsonElement error = response.getAsJsonObject().get("Error");
+        if (error == null || !error.isJsonObject()) {
+            return null;
+        }
+        JsonElement code = error.getAsJsonObject().get("Code");
+        return code != null && code.isJsonPrimitive() ? code.getAsString() : null;
+    }
+
+    private static HttpResponse<String> sendRequest(String action, String payload, Map<String, String> headers, String endPoint, String endpointBaseUrl, Duration timeout) throws IOException, InterruptedException {
+        URI uri = URI.create(endpointBaseUrl != null ? endpointBaseUrl : "https://" + endPoint);
+
         // 构建请求体
         HttpRequest.BodyPublisher bodyPublisher = HttpRequest.BodyPublishers.ofString(payload);
 
         // 构建请求
         HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                .uri(URI.create("https://" + endPoint))
-                .timeout(Duration.ofSeconds(5))
+                .uri(uri)
+                .timeout(timeout)
                 .POST(bodyPublisher);
 
         // 添加请求头
@@ -197,9 +341,24 @@ public class TencentCloudApi {
 
         HttpRequest request = requestBuilder.build();
 
-        // 发送请求并获取响应
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        // 发送请求并获取响应，收到响应头时记录首字节时间。JDK 的 HTTP 客户端不暴露域名解析和建立连接的耗时，这两部分包含在 ttfb 中
+        long start = System.nanoTime();
+        long[] firstByteAt = {-1};
+        HttpResponse.BodyHandler<String> bodyHandler = responseInfo -> {
+            firstByteAt[0] = System.nanoTime();
+            return HttpResponse.BodyHandlers.ofString().apply(responseInfo);
+        };
+        boolean success = false;
+        try {
+            HttpResponse<String> response = getHttpClient().send(request, bodyHandler);
+            success = response.statusCode() < 500;
+            return response;
+        } finally {
+            HttpLatencyStats.record(action, uri.getHost(), firstByteAt[0] >= 0 ? firstByteAt[0] - start : -1, System.nanoTime() - start, success);
+        }
+    }
 
+    private static JsonElement parseResponse(HttpResponse<String> response) {
         if (response.body() != null && !response.body().isEmpty()) {
             String responseBody = response.body();
             JsonElement jsonElement = GSON.fromJson(responseBody, JsonElement.class);
@@ -210,26 +369,6 @@ public class TencentCloudApi {
         }
     }
 
-    public static void downloadFile(String url, String toFile) {
-        try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .timeout(Duration.ofSeconds(5))
-                    .GET()
-                    .build();
-
-            HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
-            if (response.statusCode() == 200) {
-                Files.write(Paths.get(toFile), response.body());
-                System.out.println("文件下载成功: " + toFile);
-            } else {
-                System.out.println("下载失败，状态码: " + response.statusCode());
-            }
-        } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
-        }
-    }
-
     @EqualsAndHashCode(callSuper = true)
     @Data
     public static class DescribeCertificatesQuery extends QueryParams {
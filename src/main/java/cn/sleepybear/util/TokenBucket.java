@@ -0,0 +1,88 @@
+package cn.sleepybear.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 令牌桶限流。
+ * <p>
+ * 令牌按照 permitsPerSecond 的速率持续补充，最多积累 capacity 个。获取令牌时先预留，令牌不足时令牌数会变成负数，
+ * 调用者按照预留的顺序睡眠到各自的令牌补充完成，因此并发的调用者会被均匀地错开，而不是同时醒来再竞争。
+ * 等待使用 sleep 而不是持有锁等待，适合在虚拟线程中调用。
+ *
+ * @author sleepybear
+ * @date 2026/10/18 08:19
+ */
+public class TokenBucket {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final double permitsPerSecond;
+    private final double capacity;
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucket(double permitsPerSecond, double capacity) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond 必须大于 0");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.capacity = Math.max(1, capacity);
+        this.tokens = this.capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    /**
+     * 获取一个令牌，令牌不足时等待，返回等待的时间，单位：毫秒
+     */
+    public long acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos);
+    }
+
+    /**
+     * 有可用的令牌时获取一个令牌并返回 true，否则不等待直接返回 false
+     */
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            refill();
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 预留一个令牌，返回需要等待的时间，单位：纳秒
+     */
+    private long reserve() {
+        lock.lock();
+        try {
+            refill();
+            tokens -= 1;
+            if (tokens >= 0) {
+                return 0;
+            }
+            return (long) (-tokens / permitsPerSecond * TimeUnit.SECONDS.toNanos(1));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        double elapsedSeconds = (now - lastRefillNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        tokens = Math.min(capacity, tokens + elapsedSeconds * permitsPerSecond);
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,71 @@
+package cn.sleepybear;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测试用的自签名证书，通过 JDK 自带的 keytool 生成，同时输出 PEM 格式的证书、私钥和 PKCS12 格式的 keystore
+ *
+ * @author sleepybear
+ * @date 2026/10/18 09:03
+ */
+public class TestCerts {
+    public static final String PASSWORD = "changeit";
+    private static final String ALIAS = "test";
+
+    /**
+     * @param crtFile      PEM 格式的证书
+     * @param keyFile      PEM 格式的 PKCS#8 私钥
+     * @param keyStoreFile 包含证书和私钥的 PKCS12 keystore，密码为 {@link #PASSWORD}
+     */
+    public record TestCert(String domain, Path crtFile, Path keyFile, Path keyStoreFile) {
+        public KeyStore loadKeyStore() throws IOException, GeneralSecurityException {
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            try (InputStream in = Files.newInputStream(keyStoreFile)) {
+                keyStore.load(in, PASSWORD.toCharArray());
+            }
+            return keyStore;
+        }
+    }
+
+    /**
+     * 在 dir 下生成 {domain}_bundle.crt、{domain}.key 和 {domain}.p12
+     */
+    public static TestCert generate(Path dir, String domain) throws Exception {
+        Files.createDirectories(dir);
+        Path keyStoreFile = dir.resolve(domain + ".p12");
+        Files.deleteIfExists(keyStoreFile);
+
+        String keytool = Path.of(System.getProperty("java.home"), "bin", "keytool").toString();
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", ALIAS, "-keyalg", "RSA", "-keysize", "2048",
+                "-dname", "CN=" + domain, "-ext", "SAN=dns:" + domain, "-validity", "90",
+                "-storetype", "PKCS12", "-keystore", keyStoreFile.toString(), "-storepass", PASSWORD)
+                .redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        if (!process.waitFor(60, TimeUnit.SECONDS) || process.exitValue() != 0) {
+            throw new IllegalStateException("keytool 生成证书失败: " + output);
+        }
+
+        TestCert testCert = new TestCert(domain, dir.resolve(domain + "_bundle.crt"), dir.resolve(domain + ".key"), keyStoreFile);
+        KeyStore keyStore = testCert.loadKeyStore();
+        Certificate certificate = keyStore.getCertificate(ALIAS);
+        Key key = keyStore.getKey(ALIAS, PASSWORD.toCharArray());
+        Files.writeString(testCert.crtFile(), toPem("CERTIFICATE", certificate.getEncoded()));
+        Files.writeString(testCert.keyFile(), toPem("PRIVATE KEY", key.getEncoded()));
+        return testCert;
+    }
+
+    public static String toPem(String type, byte[] der) {
+        String base64 = Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(der);
+        return "-----BEGIN " + type + "-----\n" + base64 + "\n-----END " + type + "-----\n";
+    }
+}
@@ -0,0 +1,168 @@
+package cn.sleepybear.model;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地模拟的 DescribeCertificates 服务，按照请求中的 Offset/Limit 返回 total 个证书中的一页，证书 ID 为 stub000000 这样的格式。
+ * 可以模拟按秒限流（RequestLimitExceeded）、每隔几个请求返回一次 503、所有请求都返回 500、每次返回不同的过期时间，以及某个 SecretId 的请求变慢
+ *
+ * @author sleepybear
+ * @date 2026/10/18 08:57
+ */
+public class TencentCertStub implements AutoCloseable {
+    private static final Gson GSON = new Gson();
+
+    private final int total;
+    private final HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile Integer errorAtOffset;
+    private volatile int maxQps;
+    private volatile int unavailableEvery;
+    private volatile boolean failAll;
+    private volatile boolean varyEndTime;
+    private final Map<String, Long> delayMillis = new ConcurrentHashMap<>();
+    private final long[] window = {0, 0};
+
+    public TencentCertStub(int total) throws IOException {
+        this.total = total;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    public String endpoint() {
+        return "http://127.0.0.1:%s".formatted(server.getAddress().getPort());
+    }
+
+    public int requests() {
+        return requests.get();
+    }
+
+    /**
+     * 查询 offset 所在的页时返回错误
+     */
+    void errorAtOffset(Integer offset) {
+        this.errorAtOffset = offset;
+    }
+
+    /**
+     * 每秒超过 maxQps 个请求时返回 RequestLimitExceeded，0 表示不限流
+     */
+    void throttleAbove(int maxQps) {
+        this.maxQps = maxQps;
+    }
+
+    /**
+     * 每 n 个请求返回一次 503，0 表示不返回
+     */
+    void unavailableEvery(int n) {
+        this.unavailableEvery = n;
+    }
+
+    /**
+     * 所有请求都返回 500
+     */
+    void failAll(boolean failAll) {
+        this.failAll = failAll;
+    }
+
+    /**
+     * 每个响应使用随机的过期时间，每次同步都会修改配置
+     */
+    public void varyEndTime(boolean varyEndTime) {
+        this.varyEndTime = varyEndTime;
+    }
+
+    /**
+     * 使用 secretId 签名的请求在返回之前等待 millis 毫秒
+     */
+    public void delay(String secretId, long millis) {
+        delayMillis.put(secretId, millis);
+    }
+
+    private void sleepIfDelayed(HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        for (Map.Entry<String, Long> entry : delayMillis.entrySet()) {
+            if (authorization != null && authorization.contains("Credential=" + entry.getKey() + "/")) {
+                try {
+                    Thread.sleep(entry.getValue());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private boolean throttled() {
+        if (maxQps <= 0) {
+            return false;
+        }
+        synchronized (window) {
+            long second = System.currentTimeMillis() / 1000;
+            if (window[0] != second) {
+                window[0] = second;
+                window[1] = 0;
+            }
+            return ++window[1] > maxQps;
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int count = requests.incrementAndGet();
+        sleepIfDelayed(exchange);
+        JsonObject query = GSON.fromJson(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8), JsonObject.class);
+        int offset = query.get("Offset").getAsInt();
+        int limit = query.get("Limit").getAsInt();
+
+        if (failAll || (unavailableEvery > 0 && count % unavailableEvery == 0)) {
+            exchange.sendResponseHeaders(failAll ? 500 : 503, -1);
+            exchange.close();
+            return;
+        }
+
+        Object response;
+        if (throttled()) {
+            response = Map.of("Error", Map.of("Code", "RequestLimitExceeded", "Message", "请求频率超过限制"), "RequestId", "stub");
+        } else if (errorAtOffset != null && errorAtOffset == offset) {
+            response = Map.of("Error", Map.of("Code", "FailedOperation", "Message", "模拟的错误"), "RequestId", "stub");
+        } else {
+            String endTime = varyEndTime
+                    ? "2027-%02d-%02d 00:00:00".formatted(ThreadLocalRandom.current().nextInt(1, 13), ThreadLocalRandom.current().nextInt(1, 29))
+                    : "2026-01-01 00:00:00";
+            List<Map<String, Object>> certificates = new ArrayList<>();
+            for (int i = offset; i < Math.min(offset + limit, total); i++) {
+                certificates.add(Map.of("CertificateId", "stub%06d".formatted(i), "Domain", "d%s.example.com".formatted(i),
+                        "CertBeginTime", "2025-01-01 00:00:00", "CertEndTime", endTime,
+                        "InsertTime", "2025-01-01 00:00:00", "ValidityPeriod", 12));
+            }
+            response = Map.of("TotalCount", total, "Certificates", certificates);
+        }
+
+        byte[] body = GSON.toJson(Map.of("Response", response)).getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
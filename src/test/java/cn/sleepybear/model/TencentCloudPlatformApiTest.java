@@ -0,0 +1,116 @@
+package cn.sleepybear.model;
+
+import cn.sleepybear.App;
+import cn.sleepybear.config.AppConfig;
+import cn.sleepybear.util.CircuitBreaker;
+import cn.sleepybear.util.TencentCloudApi;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TencentCloudPlatformApiTest {
+    private static final int TOTAL = 10000;
+
+    private AppConfig original;
+    private TencentCertStub stub;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        original = App.configHolder.get();
+        stub = new TencentCertStub(TOTAL);
+
+        AppConfig config = new AppConfig();
+        config.setTencentApiEndpoint(stub.endpoint());
+        config.setTencentApiRateLimitPerSecond(1000);
+        config.setTencentCertPageSize(100);
+        config.setTencentCertPageConcurrency(8);
+        App.configHolder.set(config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        App.configHolder.set(original);
+        stub.close();
+    }
+
+    @Test
+    void getCertInfoListReturnsEveryPage() throws Exception {
+        List<PlatformSslCertInfo> list = new TencentCloudPlatformApi().getCertInfoList(new CloudApiKey("tencent", "pagingSecretId", "stubKey", "stub"));
+
+        Set<String> certIds = list.stream().map(PlatformSslCertInfo::getCertId).collect(Collectors.toCollection(TreeSet::new));
+        Set<String> expected = IntStream.range(0, TOTAL).mapToObj("stub%06d"::formatted).collect(Collectors.toCollection(TreeSet::new));
+        assertEquals(TOTAL, list.size(), "结果中不应该有重复的证书");
+        assertEquals(expected, certIds);
+        assertEquals(TOTAL / 100, stub.requests(), "每页只应该请求一次");
+        assertTrue(list.stream().allMatch(info -> "stub".equals(info.getAccountId())));
+    }
+
+    @Test
+    void getCertInfoListFailsWhenAnyPageFails() {
+        stub.errorAtOffset(5000);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> new TencentCloudPlatformApi().getCertInfoList(new CloudApiKey("tencent", "pagingErrorSecretId", "stubKey", "stub")));
+        assertTrue(e.getMessage().contains("offset: 5000"), e.getMessage());
+    }
+
+    @Test
+    void getCertInfoListIsCompleteUnderThrottlingAndUnavailableResponses() throws Exception {
+        stub.throttleAbove(10);
+        stub.unavailableEvery(7);
+        App.configHolder.update(config -> {
+            config.setTencentApiRateLimitPerSecond(20);
+            config.setTencentApiMaxRetries(8);
+            config.setTencentApiRetryBaseDelayMillis(50);
+            config.setTencentApiRetryMaxDelayMillis(1000);
+            config.setTencentCertPageSize(200);
+            return config;
+        });
+        TencentCloudApi.Stats before = TencentCloudApi.getStats();
+
+        List<PlatformSslCertInfo> list = new TencentCloudPlatformApi().getCertInfoList(new CloudApiKey("tencent", "throttledSecretId", "stubKey", "stub"));
+
+        TencentCloudApi.Stats after = TencentCloudApi.getStats();
+        assertEquals(TOTAL, list.size());
+        assertEquals(TOTAL, list.stream().map(PlatformSslCertInfo::getCertId).distinct().count());
+        assertTrue(after.throttled() > before.throttled(), "服务端限流应该被统计: " + after);
+        assertTrue(after.retries() > before.retries(), "限流和 503 应该被重试: " + after);
+        assertEquals(before.failures(), after.failures(), "重试之后不应该有失败的请求: " + after);
+    }
+
+    @Test
+    void circuitBreakerRejectsCallsWithoutReachingServer() {
+        stub.failAll(true);
+        App.configHolder.update(config -> {
+            config.setTencentApiMaxRetries(1);
+            config.setTencentApiRetryBaseDelayMillis(10);
+            config.setTencentApiCircuitFailureThreshold(3);
+            config.setTencentApiCircuitOpenSeconds(60);
+            return config;
+        });
+        CloudApiKey apiKey = new CloudApiKey("tencent", "breakerSecretId", "stubKey", "stub");
+
+        for (int i = 0; i < 3; i++) {
+            int before = stub.requests();
+            assertThrows(IOException.class, () -> new TencentCloudPlatformApi().getCertInfoList(apiKey));
+            assertEquals(2, stub.requests() - before, "熔断前每次查询都应该请求服务端并重试一次");
+        }
+
+        long rejected = TencentCloudApi.getStats().circuitRejected();
+        int before = stub.requests();
+        CircuitBreaker.OpenException e = assertThrows(CircuitBreaker.OpenException.class, () -> new TencentCloudPlatformApi().getCertInfoList(apiKey));
+        assertTrue(e.getMessage().contains("brea****etId"), e.getMessage());
+        assertEquals(before, stub.requests(), "熔断期间的查询不应该发到服务端");
+        assertEquals(rejected + 1, TencentCloudApi.getStats().circuitRejected());
+        assertEquals("OPEN", TencentCloudApi.getStats().openCircuits().get("brea****etId"));
+    }
+}
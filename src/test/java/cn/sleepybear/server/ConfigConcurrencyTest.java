@@ -0,0 +1,174 @@
+package cn.sleepybear.server;
+
+import cn.sleepybear.App;
+import cn.sleepybear.TestCerts;
+import cn.sleepybear.config.AppConfig;
+import cn.sleepybear.model.CloudApiKey;
+import cn.sleepybear.model.PlatformSslCertInfo;
+import cn.sleepybear.model.TencentCertStub;
+import cn.sleepybear.service.CertService;
+import cn.sleepybear.util.CommonUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 配置并发读写的测试：读取配置的同时不断刷新本地证书和同步云平台证书，两个写入方修改的是同一批域名
+ */
+class ConfigConcurrencyTest {
+    private static final int LOCAL_CERTS = 6;
+    private static final int CLOUD_CERTS = 300;
+    private static final int READERS = 4;
+    private static final int REFRESHES = 15;
+
+    @TempDir
+    static Path certDir;
+
+    @TempDir
+    Path configDir;
+    private AppConfig original;
+    private TencentCertStub stub;
+    private SimpleHttpServer server;
+    private HttpClient client;
+    private String baseUrl;
+
+    /**
+     * 本地证书的域名与云平台的前 LOCAL_CERTS 个证书相同
+     */
+    @BeforeAll
+    static void generateCerts() throws Exception {
+        for (int i = 0; i < LOCAL_CERTS; i++) {
+            TestCerts.TestCert cert = TestCerts.generate(certDir.resolve("d%s".formatted(i)), "d%s.example.com".formatted(i));
+            Files.delete(cert.keyStoreFile());
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        original = App.configHolder.get();
+        stub = new TencentCertStub(CLOUD_CERTS);
+        stub.varyEndTime(true);
+
+        AppConfig config = new AppConfig();
+        config.setConfigPath(configDir.resolve("config.json").toString());
+        config.setConfigSaveDebounceMillis(0);
+        config.setRefreshFreshnessMillis(0);
+        config.setSslCertPathList(List.of(certDir.toString()));
+        config.setTencentApiEndpoint(stub.endpoint());
+        config.setTencentApiRateLimitPerSecond(1000);
+        App.configHolder.set(config);
+
+        CertService certService = new CertService();
+        CertService.apiKeys.clear();
+        CertService.apiKeys.add(new CloudApiKey("tencent", "stressSecretId", "stubKey", "stub"));
+
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new SimpleHttpServer(certService);
+        server.start(port);
+        baseUrl = "http://127.0.0.1:%s".formatted(port);
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+        server.stop();
+        stub.close();
+        CertService.apiKeys.clear();
+        App.configHolder.set(original);
+    }
+
+    @Test
+    void readersSeeCompleteConfigWhileBothWritersRun() throws Exception {
+        Queue<String> errors = new ConcurrentLinkedQueue<>();
+        AtomicInteger reads = new AtomicInteger();
+        CountDownLatch writersDone = new CountDownLatch(2);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < READERS; i++) {
+                executor.submit(() -> {
+                    while (writersDone.getCount() > 0 && errors.isEmpty()) {
+                        try {
+                            checkConfig(get("/api/getConfigJson?compact=true"));
+                            reads.incrementAndGet();
+                        } catch (Exception e) {
+                            errors.add("读取配置: " + e);
+                        }
+                    }
+                });
+            }
+            executor.submit(() -> write("/api/refreshLocalSslCert?sync=true", errors, writersDone));
+            executor.submit(() -> write("/api/getTencentCerts?sync=true&limit=10", errors, writersDone));
+        }
+
+        assertEquals(List.of(), List.copyOf(errors));
+        assertTrue(reads.get() > 0);
+
+        // 两个写入方的修改都保留下来：云平台的证书都在，本地证书合并到同一个域名的配置中
+        AppConfig config = CommonUtils.GSON.fromJson(get("/api/getConfigJson?compact=true"), AppConfig.class);
+        assertEquals(CLOUD_CERTS, checkConfig(config));
+        for (PlatformSslCertInfo info : config.getPlatformSslCertInfos()) {
+            assertNotNull(info.getCertId(), info.toString());
+            boolean local = Integer.parseInt(info.getDomain().substring(1, info.getDomain().indexOf('.'))) < LOCAL_CERTS;
+            assertEquals(local, info.getLocalParentFoldPath() != null, info.toString());
+        }
+        AppConfig saved = CommonUtils.GSON.fromJson(Files.readString(configDir.resolve("config.json")), AppConfig.class);
+        assertEquals(CLOUD_CERTS, checkConfig(saved), "保存的配置文件也应该是完整的");
+    }
+
+    private void write(String path, Queue<String> errors, CountDownLatch done) {
+        try {
+            for (int i = 0; i < REFRESHES && errors.isEmpty(); i++) {
+                get(path);
+            }
+        } catch (Exception e) {
+            errors.add(path + ": " + e);
+        } finally {
+            done.countDown();
+        }
+    }
+
+    private static void checkConfig(String body) {
+        checkConfig(CommonUtils.GSON.fromJson(body, AppConfig.class));
+    }
+
+    /**
+     * 配置中的每个证书都有 id，并且没有重复的域名，返回证书数量
+     */
+    private static int checkConfig(AppConfig config) {
+        Set<String> domains = new HashSet<>();
+        for (PlatformSslCertInfo info : config.getPlatformSslCertInfos()) {
+            if (info == null || info.getId() == null || !domains.add(info.getDomain())) {
+                throw new IllegalStateException("配置中的证书列表不完整或者有重复的域名: %s".formatted(info));
+            }
+        }
+        return domains.size();
+    }
+
+    private String get(String path) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path)).build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("%s 返回状态码 %s: %s".formatted(path, response.statusCode(), response.body()));
+        }
+        return response.body();
+    }
+}
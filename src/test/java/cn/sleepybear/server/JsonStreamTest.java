@@ -0,0 +1,77 @@
+package cn.sleepybear.server;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonStreamTest {
+    private static final int ITEMS = 10000;
+
+    private HttpServer server;
+    private HttpClient client;
+
+    /**
+     * /ok 输出完整的列表，/fail 输出一部分之后抛出异常，与各个接口一样在 handler 中不处理已经开始发送的响应
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/ok", exchange -> JsonStream.send(exchange, 200, out -> writeItems(out, false)));
+        server.createContext("/fail", exchange -> JsonStream.send(exchange, 200, out -> writeItems(out, true)));
+        server.start();
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    void completeBodyIsValidJson() throws Exception {
+        HttpResponse<String> response = client.send(request("/ok"), HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode());
+        JsonObject json = JsonParser.parseString(response.body()).getAsJsonObject();
+        assertEquals(ITEMS, json.getAsJsonArray("items").size());
+    }
+
+    @Test
+    void failureAfterHeadersAbortsConnection() {
+        // 不能收到一个看起来完整、实际被截断的 200 响应
+        assertThrows(IOException.class, () -> client.send(request("/fail"), HttpResponse.BodyHandlers.ofString()));
+    }
+
+    private static void writeItems(JsonWriter out, boolean fail) throws IOException {
+        out.beginObject();
+        out.name("items").beginArray();
+        for (int i = 0; i < ITEMS; i++) {
+            if (fail && i == ITEMS / 2) {
+                throw new IllegalStateException("模拟输出过程中的错误");
+            }
+            out.value("item-%05d".formatted(i));
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    private HttpRequest request(String path) {
+        return HttpRequest.newBuilder(URI.create("http://127.0.0.1:%s%s".formatted(server.getAddress().getPort(), path))).build();
+    }
+}
@@ -0,0 +1,137 @@
+package cn.sleepybear.service;
+
+import cn.sleepybear.TestCerts;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CertDeployerTest {
+    private static final int SITES = 5;
+
+    @TempDir
+    static Path certDir;
+    private static TestCerts.TestCert cert;
+
+    @TempDir
+    Path targetDir;
+
+    @BeforeAll
+    static void generateCerts() throws Exception {
+        cert = TestCerts.generate(certDir, "a.example.com");
+    }
+
+    @Test
+    void batchRunsCommandOnceAndDeletesBackups() throws Exception {
+        Path counter = targetDir.resolve("runs.log");
+        List<Integer> deployedSizes = new CopyOnWriteArrayList<>();
+        CertDeployer deployer = new CertDeployer(Duration.ofMillis(300), Duration.ofSeconds(10), "echo run >> '%s'".formatted(counter),
+                Duration.ofSeconds(10), stagedCerts -> deployedSizes.add(stagedCerts.size()));
+        List<Path> dirs = sites(true);
+        CertDeployer.Stats before = CertDeployer.getStats();
+
+        for (CompletableFuture<CertDownloader.StagedCert> future : submitAll(deployer, dirs)) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(List.of("run"), Files.readAllLines(counter), "一批证书只应该执行一次部署后命令");
+        assertEquals(List.of(SITES), deployedSizes);
+        for (Path dir : dirs) {
+            assertEquals(-1, Files.mismatch(cert.crtFile(), dir.resolve("a.example.com_bundle.crt")));
+            assertEquals(-1, Files.mismatch(cert.keyFile(), dir.resolve("a.example.com.key")));
+            assertEquals(List.of("a.example.com.key", "a.example.com_bundle.crt"), listFiles(dir), "部署成功之后不应该留下备份和临时文件");
+        }
+        CertDeployer.Stats after = CertDeployer.getStats();
+        assertEquals(before.batches() + 1, after.batches());
+        assertEquals(before.deployed() + SITES, after.deployed());
+    }
+
+    @Test
+    void failedCommandRollsBackWholeBatch() throws Exception {
+        List<Path> dirs = new ArrayList<>(sites(true));
+        // 最后一个站点原来没有证书，还原时应该删除
+        Path newSite = Files.createDirectories(targetDir.resolve("new-site"));
+        dirs.add(newSite);
+        List<Integer> deployedSizes = new CopyOnWriteArrayList<>();
+        CertDeployer deployer = new CertDeployer(Duration.ofMillis(300), Duration.ofSeconds(10), "exit 3",
+                Duration.ofSeconds(10), stagedCerts -> deployedSizes.add(stagedCerts.size()));
+        CertDeployer.Stats before = CertDeployer.getStats();
+
+        for (CompletableFuture<CertDownloader.StagedCert> future : submitAll(deployer, dirs)) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+            assertTrue(e.getCause().getMessage().contains("退出码: 3"), e.getCause().getMessage());
+        }
+
+        assertEquals(List.of(), deployedSizes);
+        for (Path dir : dirs.subList(0, SITES)) {
+            assertEquals("old crt " + dir.getFileName(), Files.readString(dir.resolve("a.example.com_bundle.crt")));
+            assertEquals("old key " + dir.getFileName(), Files.readString(dir.resolve("a.example.com.key")));
+            assertEquals(List.of("a.example.com.key", "a.example.com_bundle.crt"), listFiles(dir), "还原之后不应该留下备份和临时文件");
+        }
+        assertEquals(List.of(), listFiles(newSite));
+        CertDeployer.Stats after = CertDeployer.getStats();
+        assertEquals(before.commandFailures() + 1, after.commandFailures());
+        assertEquals(before.rolledBack() + SITES + 1, after.rolledBack());
+        assertEquals(before.deployed(), after.deployed());
+    }
+
+    @Test
+    void commandResultDoesNotDependOnOutputEncoding() {
+        // 不是合法 UTF-8 的输出，例如 GBK 编码的中文
+        CertDeployer.CommandResult result = CertDeployer.runCommand("printf '\\304\\343\\272\\303 reload ok'", Duration.ofSeconds(10));
+        assertTrue(result.success(), result.toString());
+        assertEquals(0, result.exitCode());
+        assertTrue(result.output().endsWith("reload ok"), result.output());
+
+        CertDeployer.CommandResult failed = CertDeployer.runCommand("printf '\\377\\376'; exit 4", Duration.ofSeconds(10));
+        assertFalse(failed.success());
+        assertEquals(4, failed.exitCode());
+    }
+
+    /**
+     * 创建 {@link #SITES} 个站点目录，withOldFiles 时写入旧的证书和私钥
+     */
+    private List<Path> sites(boolean withOldFiles) throws IOException {
+        List<Path> dirs = new ArrayList<>();
+        for (int i = 0; i < SITES; i++) {
+            Path dir = Files.createDirectories(targetDir.resolve("site" + i));
+            if (withOldFiles) {
+                Files.writeString(dir.resolve("a.example.com_bundle.crt"), "old crt " + dir.getFileName());
+                Files.writeString(dir.resolve("a.example.com.key"), "old key " + dir.getFileName());
+            }
+            dirs.add(dir);
+        }
+        return dirs;
+    }
+
+    private static List<CompletableFuture<CertDownloader.StagedCert>> submitAll(CertDeployer deployer, List<Path> dirs) throws IOException {
+        List<CompletableFuture<CertDownloader.StagedCert>> futures = new ArrayList<>();
+        for (Path dir : dirs) {
+            CertDownloader.StagedCert stagedCert = new CertDownloader.StagedCert();
+            stagedCert.setTask(new CertDownloader.DownloadTask("a.example.com", null, dir, "a.example.com_bundle.crt", "a.example.com.key"));
+            stagedCert.setCrtTempFile(Files.copy(cert.crtFile(), dir.resolve(".download-crt.tmp")));
+            stagedCert.setKeyTempFile(Files.copy(cert.keyFile(), dir.resolve(".download-key.tmp")));
+            futures.add(deployer.submit(stagedCert));
+        }
+        return futures;
+    }
+
+    private static List<String> listFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(path -> path.getFileName().toString()).sorted().toList();
+        }
+    }
+}
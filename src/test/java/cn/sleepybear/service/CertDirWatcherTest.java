@@ -0,0 +1,69 @@
+package cn.sleepybear.service;
+
+import cn.sleepybear.model.CertInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CertDirWatcherTest {
+    @TempDir
+    Path root;
+
+    /**
+     * 只记录更新的调用，不实际扫描
+     */
+    private static class RecordingCertService extends CertService {
+        private final BlockingQueue<Long> refreshedAt = new LinkedBlockingQueue<>();
+
+        @Override
+        public Map<String, CertInfo> refreshLocalCerts() {
+            return Map.of();
+        }
+
+        @Override
+        public Map<String, CertInfo> refreshLocalDirectories(Collection<Path> directories) {
+            refreshedAt.add(System.nanoTime());
+            return Map.of();
+        }
+    }
+
+    @Test
+    void steadyEventsDoNotPostponeRefreshForever() throws Exception {
+        Path logDir = Files.createDirectories(root.resolve("busy"));
+        RecordingCertService certService = new RecordingCertService();
+        CertDirWatcher watcher = new CertDirWatcher(certService, List.of(root.toString()), 2, 300, 1000);
+        watcher.start();
+        Thread writer = Thread.ofVirtual().start(() -> {
+            // 每 100 ms 写一次文件，间隔一直小于 debounce 时间
+            for (int i = 0; !Thread.currentThread().isInterrupted(); i++) {
+                try {
+                    Files.writeString(logDir.resolve("access.log"), "line " + i);
+                    Thread.sleep(100);
+                } catch (Exception e) {
+                    return;
+                }
+            }
+        });
+
+        try {
+            long start = System.nanoTime();
+            Long refreshedAt = certService.refreshedAt.poll(5, TimeUnit.SECONDS);
+            assertNotNull(refreshedAt, "事件不断时也应该在 maxDelay 之后更新");
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(refreshedAt - start) < 3000);
+            assertNotNull(certService.refreshedAt.poll(3, TimeUnit.SECONDS), "之后的事件应该继续按照 maxDelay 更新");
+        } finally {
+            writer.interrupt();
+            watcher.stop();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package cn.sleepybear.service;
+
+import cn.sleepybear.TestCerts;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CertDownloaderTest {
+    @TempDir
+    static Path certDir;
+    private static TestCerts.TestCert cert;
+    private static TestCerts.TestCert otherCert;
+
+    @TempDir
+    Path targetDir;
+    private HttpServer stub;
+    private volatile Path stubCrt;
+    private volatile Path stubKey;
+
+    @BeforeAll
+    static void generateCerts() throws Exception {
+        cert = TestCerts.generate(certDir, "a.example.com");
+        otherCert = TestCerts.generate(certDir, "b.example.com");
+    }
+
+    /**
+     * 模拟的下载服务，按照 nginx 证书包的格式返回 stubCrt 和 stubKey
+     */
+    @BeforeEach
+    void startStub() throws IOException {
+        stubCrt = cert.crtFile();
+        stubKey = cert.keyFile();
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        stub.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            try (ZipOutputStream zip = new ZipOutputStream(exchange.getResponseBody())) {
+                zip.putNextEntry(new ZipEntry("a.example.com_nginx/a.example.com_bundle.crt"));
+                Files.copy(stubCrt, zip);
+                zip.putNextEntry(new ZipEntry("a.example.com_nginx/a.example.com.key"));
+                Files.copy(stubKey, zip);
+                zip.putNextEntry(new ZipEntry("a.example.com_nginx/a.example.com.csr"));
+                zip.closeEntry();
+            }
+        });
+        stub.start();
+    }
+
+    @AfterEach
+    void stopStub() {
+        stub.stop(0);
+    }
+
+    @Test
+    void downloadAllReplacesEveryTarget() throws Exception {
+        List<CertDownloader.DownloadTask> tasks = List.of(task(targetDir.resolve("a")), task(targetDir.resolve("b")));
+        Files.createDirectories(targetDir.resolve("a"));
+        Files.writeString(targetDir.resolve("a").resolve("a.example.com.key"), "old key");
+
+        List<CompletableFuture<CertDownloader.StagedCert>> futures = new CertDownloader(4, Duration.ofSeconds(10)).downloadAll(tasks);
+
+        for (CompletableFuture<CertDownloader.StagedCert> future : futures) {
+            CertDownloader.StagedCert stagedCert = future.get();
+            assertNotNull(stagedCert.getExpireTimeAt());
+            assertEquals(-1, Files.mismatch(cert.crtFile(), stagedCert.getCrtTarget()));
+            assertEquals(-1, Files.mismatch(cert.keyFile(), stagedCert.getKeyTarget()));
+            assertEquals(List.of("a.example.com.key", "a.example.com_bundle.crt"), listFiles(stagedCert.getTask().getTargetDir()), "不应该留下临时文件");
+        }
+    }
+
+    @Test
+    void mismatchedKeyLeavesExistingFilesUntouched() throws Exception {
+        stubKey = otherCert.keyFile();
+        Path dir = Files.createDirectories(targetDir.resolve("a"));
+        Files.writeString(dir.resolve("a.example.com_bundle.crt"), "old crt");
+        Files.writeString(dir.resolve("a.example.com.key"), "old key");
+
+        CompletableFuture<CertDownloader.StagedCert> future = new CertDownloader(1, Duration.ofSeconds(10)).submit(task(dir));
+
+        Exception e = assertThrows(Exception.class, future::join);
+        assertTrue(e.getMessage().contains("不匹配"), e.getMessage());
+        assertEquals("old crt", Files.readString(dir.resolve("a.example.com_bundle.crt")));
+        assertEquals("old key", Files.readString(dir.resolve("a.example.com.key")));
+        assertEquals(List.of("a.example.com.key", "a.example.com_bundle.crt"), listFiles(dir));
+    }
+
+    @Test
+    void commitRestoresKeyWhenCertificateMoveFails() throws Exception {
+        Path dir = Files.createDirectories(targetDir.resolve("a"));
+        Files.writeString(dir.resolve("a.example.com.key"), "old key");
+        // 证书的目标位置是一个非空目录，移动证书会失败
+        Files.writeString(Files.createDirectories(dir.resolve("a.example.com_bundle.crt")).resolve("blocker"), "");
+
+        CertDownloader.StagedCert stagedCert = new CertDownloader.StagedCert();
+        stagedCert.setTask(task(dir));
+        stagedCert.setCrtTempFile(Files.copy(cert.crtFile(), dir.resolve(".download-crt.tmp")));
+        stagedCert.setKeyTempFile(Files.copy(cert.keyFile(), dir.resolve(".download-key.tmp")));
+
+        assertThrows(IOException.class, () -> CertDownloader.commit(stagedCert));
+        assertEquals("old key", Files.readString(dir.resolve("a.example.com.key")));
+        assertEquals(List.of("a.example.com.key", "a.example.com_bundle.crt"), listFiles(dir), "临时文件和私钥的备份都应该被删除");
+    }
+
+    @Test
+    void commitRemovesNewKeyWhenThereWasNoKeyBefore() throws Exception {
+        Path dir = Files.createDirectories(targetDir.resolve("a"));
+        Files.writeString(Files.createDirectories(dir.resolve("a.example.com_bundle.crt")).resolve("blocker"), "");
+
+        CertDownloader.StagedCert stagedCert = new CertDownloader.StagedCert();
+        stagedCert.setTask(task(dir));
+        stagedCert.setCrtTempFile(Files.copy(cert.crtFile(), dir.resolve(".download-crt.tmp")));
+        stagedCert.setKeyTempFile(Files.copy(cert.keyFile(), dir.resolve(".download-key.tmp")));
+
+        assertThrows(IOException.class, () -> CertDownloader.commit(stagedCert));
+        assertFalse(Files.exists(dir.resolve("a.example.com.key")));
+    }
+
+    private CertDownloader.DownloadTask task(Path dir) {
+        String url = "http://127.0.0.1:%s/a.example.com.zip".formatted(stub.getAddress().getPort());
+        return new CertDownloader.DownloadTask("a.example.com", url, dir, "a.example.com_bundle.crt", "a.example.com.key");
+    }
+
+    private static List<String> listFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(path -> path.getFileName().toString()).sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package cn.sleepybear.service;
+
+import cn.sleepybear.TestCerts;
+import cn.sleepybear.model.CertDetails;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CertScanIndexTest {
+    @TempDir
+    static Path certDir;
+    private static TestCerts.TestCert a;
+    private static TestCerts.TestCert b;
+    private static TestCerts.TestCert ca;
+
+    @TempDir
+    Path indexDir;
+
+    @BeforeAll
+    static void generateCerts() throws Exception {
+        a = TestCerts.generate(certDir, "a.example.com");
+        b = TestCerts.generate(certDir, "b.example.com");
+        ca = TestCerts.generate(certDir.resolve("ca"), "ca.example.com");
+        Files.delete(ca.keyFile());
+    }
+
+    @Test
+    void keyChecksForSeveralCandidatesAreCachedSeparately() throws Exception {
+        Path indexPath = indexDir.resolve(CertScanIndex.INDEX_FILENAME);
+        CertScanIndex index = new CertScanIndex(indexPath);
+        // a 的私钥不是第一个候选，CA 证书在目录中没有匹配的私钥
+        assertEquals(List.of(false, true), scan(index, a.crtFile()));
+        assertEquals(List.of(false, false), scan(index, ca.crtFile()));
+        index.saveIfDirty();
+        assertTrue(Files.exists(indexPath));
+
+        Files.delete(indexPath);
+        assertEquals(List.of(false, true), scan(index, a.crtFile()));
+        assertEquals(List.of(false, false), scan(index, ca.crtFile()));
+        index.saveIfDirty();
+        assertFalse(Files.exists(indexPath), "私钥没有变化时不应该改写索引");
+
+        // 持久化之后重新读取的索引同样命中
+        Path savedPath = indexDir.resolve("saved-" + CertScanIndex.INDEX_FILENAME);
+        CertScanIndex saved = new CertScanIndex(savedPath);
+        scan(saved, a.crtFile());
+        scan(saved, ca.crtFile());
+        saved.saveIfDirty();
+        CertScanIndex reloaded = new CertScanIndex(savedPath);
+        Files.delete(savedPath);
+        assertEquals(List.of(false, true), scan(reloaded, a.crtFile()));
+        assertEquals(List.of(false, false), scan(reloaded, ca.crtFile()));
+        reloaded.saveIfDirty();
+        assertFalse(Files.exists(savedPath), "重新读取的索引应该命中私钥的检查记录");
+    }
+
+    @Test
+    void changedKeyIsCheckedAgainAndRemovedKeyIsForgotten() throws Exception {
+        Path indexPath = indexDir.resolve(CertScanIndex.INDEX_FILENAME);
+        CertScanIndex index = new CertScanIndex(indexPath);
+        scan(index, a.crtFile());
+        index.saveIfDirty();
+
+        Path key = Files.copy(b.keyFile(), indexDir.resolve("b.example.com.key"));
+        CertDetails details = index.getDetails(a.crtFile(), attrs(a.crtFile()));
+        assertFalse(index.isKeyMatch(a.crtFile(), details, key, attrs(key)));
+        Files.copy(a.keyFile(), key, StandardCopyOption.REPLACE_EXISTING);
+        Files.setLastModifiedTime(key, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+        assertTrue(index.isKeyMatch(a.crtFile(), details, key, attrs(key)), "私钥文件变化之后应该重新检查");
+
+        index.saveIfDirty();
+        Files.delete(indexPath);
+        index.retainKeyChecks(a.crtFile(), List.of(b.keyFile(), a.keyFile()));
+        index.saveIfDirty();
+        assertTrue(Files.exists(indexPath), "删除不在目录中的私钥记录之后应该写回索引");
+        assertTrue(Files.readString(indexPath).contains(a.keyFile().toAbsolutePath().toString().replace("\\", "\\\\")));
+        assertFalse(Files.readString(indexPath).contains(key.toAbsolutePath().toString().replace("\\", "\\\\")));
+    }
+
+    @Test
+    void failedSaveKeepsIndexDirty() throws Exception {
+        // 索引所在的目录是一个普通文件，第一次保存会失败
+        Path blocker = Files.writeString(indexDir.resolve("blocked"), "");
+        Path indexPath = blocker.resolve(CertScanIndex.INDEX_FILENAME);
+        CertScanIndex index = new CertScanIndex(indexPath);
+        scan(index, a.crtFile());
+        index.saveIfDirty();
+        assertFalse(Files.exists(indexPath));
+
+        Files.delete(blocker);
+        index.saveIfDirty();
+        assertTrue(Files.exists(indexPath), "保存失败之后应该在下次保存时重新写入");
+        assertEquals(List.of(CertScanIndex.INDEX_FILENAME), listFiles(blocker), "不应该留下临时文件");
+        CertScanIndex reloaded = new CertScanIndex(indexPath);
+        assertNotNull(reloaded.getDetails(a.crtFile(), attrs(a.crtFile())));
+        reloaded.saveIfDirty();
+    }
+
+    @Test
+    void changesDuringSaveAreNotLost() throws Exception {
+        List<Path> crtFiles = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            crtFiles.add(Files.copy(a.crtFile(), indexDir.resolve("copy%s.crt".formatted(i))));
+        }
+        Path indexPath = indexDir.resolve(CertScanIndex.INDEX_FILENAME);
+        CertScanIndex index = new CertScanIndex(indexPath);
+
+        // 一边解析新的证书一边不断保存，最后一次保存之后磁盘上的索引应该包含所有证书
+        Thread saver = Thread.ofVirtual().start(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                index.saveIfDirty();
+            }
+        });
+        try {
+            for (Path crtFile : crtFiles) {
+                index.getDetails(crtFile, attrs(crtFile));
+            }
+        } finally {
+            saver.interrupt();
+            saver.join();
+        }
+        index.saveIfDirty();
+
+        Map<?, ?> saved = new Gson().fromJson(Files.readString(indexPath), Map.class);
+        assertEquals(crtFiles.size(), saved.size(), "保存期间的修改不应该丢失");
+    }
+
+    /**
+     * 与扫描时一样，先取证书信息，再依次检查 b 和 a 的私钥
+     */
+    private static List<Boolean> scan(CertScanIndex index, Path crtFile) throws IOException {
+        CertDetails details = index.getDetails(crtFile, attrs(crtFile));
+        assertNotNull(details);
+        return List.of(index.isKeyMatch(crtFile, details, b.keyFile(), attrs(b.keyFile())),
+                index.isKeyMatch(crtFile, details, a.keyFile(), attrs(a.keyFile())));
+    }
+
+    private static List<String> listFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(path -> path.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    private static BasicFileAttributes attrs(Path path) throws IOException {
+        return Files.readAttributes(path, BasicFileAttributes.class);
+    }
+}
@@ -0,0 +1,66 @@
+package cn.sleepybear.service;
+
+import cn.sleepybear.App;
+import cn.sleepybear.config.AppConfig;
+import cn.sleepybear.model.CloudApiKey;
+import cn.sleepybear.model.CloudSyncResult;
+import cn.sleepybear.model.TencentCertStub;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CertServiceCloudSyncTest {
+    private static final long SLOW_MILLIS = 800;
+
+    @TempDir
+    Path configDir;
+    private AppConfig original;
+    private TencentCertStub stub;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        original = App.configHolder.get();
+        stub = new TencentCertStub(20);
+
+        AppConfig config = new AppConfig();
+        config.setConfigPath(configDir.resolve("config.json").toString());
+        config.setConfigSaveDebounceMillis(0);
+        config.setTencentApiEndpoint(stub.endpoint());
+        config.setTencentApiRateLimitPerSecond(1000);
+        App.configHolder.set(config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        CertService.apiKeys.clear();
+        App.configHolder.set(original);
+        stub.close();
+    }
+
+    @Test
+    void accountCostIsMeasuredPerAccount() {
+        CertService certService = new CertService();
+        CertService.apiKeys.clear();
+        CertService.apiKeys.addAll(List.of(new CloudApiKey("tencent", "slowSecretId", "stubKey", "slow"),
+                new CloudApiKey("tencent", "fastSecretId", "stubKey", "fast")));
+        // 先同步一次，排除第一次请求时创建客户端和连接的耗时
+        certService.queryCloudCerts();
+        stub.delay("slowSecretId", SLOW_MILLIS);
+
+        CloudSyncResult result = certService.queryCloudCerts();
+
+        CloudSyncResult.AccountResult slow = result.getAccounts().get(0);
+        CloudSyncResult.AccountResult fast = result.getAccounts().get(1);
+        assertEquals(List.of("slow", "fast"), result.getAccounts().stream().map(CloudSyncResult.AccountResult::getAccountId).toList());
+        assertEquals(CloudSyncResult.STATUS_SUCCESS, slow.getStatus());
+        assertEquals(CloudSyncResult.STATUS_SUCCESS, fast.getStatus());
+        assertTrue(slow.getCostMillis() >= SLOW_MILLIS, slow.toString());
+        assertTrue(fast.getCostMillis() < SLOW_MILLIS / 2, "慢的账号不应该影响后面账号的耗时: " + fast);
+    }
+}
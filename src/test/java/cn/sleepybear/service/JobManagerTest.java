@@ -0,0 +1,56 @@
+package cn.sleepybear.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JobManagerTest {
+    private final JobManager jobManager = new JobManager(2, 60_000, 2);
+
+    @AfterEach
+    void tearDown() {
+        jobManager.shutdown();
+    }
+
+    @Test
+    void errorFinishesJobAsFailed() throws Exception {
+        JobManager.Job job = jobManager.submit("error", j -> {
+            throw new StackOverflowError();
+        });
+
+        awaitFinished(job);
+        assertEquals(JobManager.STATUS_FAILED, job.getStatus());
+        assertEquals(StackOverflowError.class.getName(), job.getError());
+        assertNotNull(job.getFinishedAt());
+    }
+
+    @Test
+    void jobsFailedWithErrorAreEvicted() throws Exception {
+        JobManager.Job failed = jobManager.submit("error", j -> {
+            throw new NoClassDefFoundError("missing");
+        });
+        awaitFinished(failed);
+
+        List<JobManager.Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            jobs.add(jobManager.submit("ok", j -> "done"));
+        }
+        for (JobManager.Job job : jobs) {
+            awaitFinished(job);
+        }
+
+        assertNull(jobManager.get(failed.getId()), "执行失败的任务超过数量上限时应该被清理");
+        assertTrue(jobManager.list().size() <= 2);
+    }
+
+    private static void awaitFinished(JobManager.Job job) throws InterruptedException {
+        for (int i = 0; i < 500 && !job.isFinished(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(job.isFinished(), "任务应该结束: " + job.getStatus());
+    }
+}
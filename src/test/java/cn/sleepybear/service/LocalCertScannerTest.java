@@ -0,0 +1,89 @@
+package cn.sleepybear.service;
+
+import cn.sleepybear.App;
+import cn.sleepybear.TestCerts;
+import cn.sleepybear.config.AppConfig;
+import cn.sleepybear.model.CertInfo;
+import cn.sleepybear.model.PlatformSslCertInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalCertScannerTest {
+    @TempDir
+    static Path generatedDir;
+    @TempDir
+    static Path certDir;
+
+    private AppConfig original;
+
+    /**
+     * 文件名不是证书中的名称：通配符证书的 _.example.com_bundle.crt，以及 CN 为 www.site.com 的 site.crt
+     */
+    @BeforeAll
+    static void generateCerts() throws Exception {
+        TestCerts.TestCert wildcard = TestCerts.generate(generatedDir, "*.example.com");
+        Files.copy(wildcard.crtFile(), certDir.resolve("_.example.com_bundle.crt"));
+        Files.copy(wildcard.keyFile(), certDir.resolve("_.example.com.key"));
+        TestCerts.TestCert site = TestCerts.generate(generatedDir, "www.site.com");
+        Files.copy(site.crtFile(), certDir.resolve("site.crt"));
+        Files.copy(site.keyFile(), certDir.resolve("site.key"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (original != null) {
+            App.configHolder.set(original);
+        }
+    }
+
+    @Test
+    void domainComesFromFileNameWhenNamedKeyMatches() {
+        Map<String, CertInfo> certMap = new LocalCertScanner(2, 1).scan(List.of(certDir.toString()));
+
+        assertEquals(Set.of("_.example.com", "site"), certMap.keySet());
+        assertEquals("_.example.com.key", certMap.get("_.example.com").getKeyFile().getName());
+        assertEquals(List.of("*.example.com"), certMap.get("_.example.com").getDetails().getSubjectAltNames());
+        assertEquals("site.key", certMap.get("site").getKeyFile().getName());
+    }
+
+    @Test
+    void refreshKeepsExistingEnabledEntry(@TempDir Path configDir) {
+        PlatformSslCertInfo existing = new PlatformSslCertInfo();
+        existing.setId("existing");
+        existing.setDomain("_.example.com");
+        existing.setEnable(true);
+        existing.setLocalParentFoldPath(certDir.toAbsolutePath().toString());
+        existing.setCrtFilename("_.example.com_bundle.crt");
+        existing.setKeyFilename("_.example.com.key");
+
+        original = App.configHolder.get();
+        AppConfig config = new AppConfig();
+        config.setConfigPath(configDir.resolve("config.json").toString());
+        config.setSslCertPathList(List.of(certDir.toString()));
+        config.setPlatformSslCertInfos(new ArrayList<>(List.of(existing)));
+        App.configHolder.set(config);
+
+        new CertService().refreshLocalCerts();
+
+        List<PlatformSslCertInfo> infos = App.configHolder.get().getPlatformSslCertInfos();
+        assertEquals(2, infos.size(), "已有的证书不应该以新的域名重复添加");
+        PlatformSslCertInfo info = infos.stream().filter(i -> "existing".equals(i.getId())).findFirst().orElseThrow();
+        assertEquals("_.example.com", info.getDomain());
+        assertTrue(info.getEnable());
+        assertEquals(certDir.toAbsolutePath().toString(), info.getLocalParentFoldPath());
+        assertEquals("_.example.com_bundle.crt", info.getCrtFilename());
+        assertEquals("_.example.com.key", info.getKeyFilename());
+        assertEquals(List.of("*.example.com"), info.getSubjectAltNames());
+    }
+}
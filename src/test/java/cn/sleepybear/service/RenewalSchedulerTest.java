@@ -0,0 +1,136 @@
+package cn.sleepybear.service;
+
+import cn.sleepybear.model.PlatformSslCertInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RenewalSchedulerTest {
+    private RenewalScheduler scheduler;
+
+    @AfterEach
+    void tearDown() {
+        if (scheduler != null) {
+            scheduler.stop();
+        }
+    }
+
+    @Test
+    void retriesFailedRenewalUntilItSucceeds() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        LinkedBlockingQueue<Integer> done = new LinkedBlockingQueue<>();
+        start(info -> {
+            int call = calls.incrementAndGet();
+            done.add(call);
+            return call < 3 ? CompletableFuture.failedFuture(new IOException("下载失败")) : CompletableFuture.completedFuture(null);
+        });
+
+        PlatformSslCertInfo info = dueCert("a.com");
+        scheduler.schedule(info);
+
+        for (int i = 1; i <= 3; i++) {
+            assertEquals(i, done.poll(5, TimeUnit.SECONDS), "第 %s 次处理没有触发".formatted(i));
+        }
+        assertNull(done.poll(300, TimeUnit.MILLISECONDS), "处理成功之后不应该再触发");
+        assertEquals(0, scheduler.size());
+
+        // 同一个到期时间重新调度不会再次触发
+        scheduler.schedule(info);
+        assertNull(done.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void retryWaitsForBackoffEvenWhenRescheduled() throws Exception {
+        LinkedBlockingQueue<Long> calls = new LinkedBlockingQueue<>();
+        start(info -> {
+            calls.add(System.currentTimeMillis());
+            return CompletableFuture.failedFuture(new IOException("部署失败"));
+        }, Duration.ofSeconds(1));
+
+        PlatformSslCertInfo info = dueCert("b.com");
+        scheduler.schedule(info);
+        long first = calls.poll(5, TimeUnit.SECONDS);
+        waitUntilQueued();
+
+        // 配置变化触发的重新调度不会跳过退避时间
+        scheduler.schedule(info);
+        Long second = calls.poll(5, TimeUnit.SECONDS);
+        assertNotNull(second);
+        assertTrue(second - first >= 900, "重试间隔: %s ms".formatted(second - first));
+    }
+
+    @Test
+    void exceptionFromHandlerIsRetried() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        LinkedBlockingQueue<Integer> done = new LinkedBlockingQueue<>();
+        start(info -> {
+            int call = calls.incrementAndGet();
+            done.add(call);
+            if (call == 1) {
+                throw new IllegalStateException("没有对应的 API key");
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+
+        scheduler.schedule(dueCert("c.com"));
+        assertEquals(1, done.poll(5, TimeUnit.SECONDS));
+        assertEquals(2, done.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void removedCertIsNotRetried() throws Exception {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        LinkedBlockingQueue<String> done = new LinkedBlockingQueue<>();
+        start(info -> {
+            done.add(info.getId());
+            return result;
+        });
+
+        scheduler.schedule(dueCert("d.com"));
+        assertEquals("d.com", done.poll(5, TimeUnit.SECONDS));
+        scheduler.remove("d.com");
+        result.completeExceptionally(new IOException("下载失败"));
+
+        assertNull(done.poll(300, TimeUnit.MILLISECONDS));
+        assertEquals(0, scheduler.size());
+    }
+
+    private void start(Function<PlatformSslCertInfo, CompletableFuture<?>> onDue) {
+        start(onDue, Duration.ofMillis(50));
+    }
+
+    private void start(Function<PlatformSslCertInfo, CompletableFuture<?>> onDue, Duration retryDelay) {
+        scheduler = new RenewalScheduler(onDue, retryDelay, retryDelay.multipliedBy(4));
+        scheduler.start();
+    }
+
+    private void waitUntilQueued() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (scheduler.size() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, scheduler.size());
+    }
+
+    /**
+     * 已经到期的证书
+     */
+    private static PlatformSslCertInfo dueCert(String domain) {
+        PlatformSslCertInfo info = new PlatformSslCertInfo();
+        info.setId(domain);
+        info.setDomain(domain);
+        info.setEnable(true);
+        info.setBeforeExpireDays(7);
+        info.setExpireTimeAt(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1));
+        return info;
+    }
+}
@@ -0,0 +1,170 @@
+package cn.sleepybear.service;
+
+import cn.sleepybear.TestCerts;
+import cn.sleepybear.model.PlatformSslCertInfo;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.net.ssl.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TlsProberTest {
+    @TempDir
+    static Path certDir;
+    private static TestCerts.TestCert served;
+    private static TestCerts.TestCert other;
+
+    private static ExecutorService serverExecutor;
+    private static SSLServerSocket serverSocket;
+    /**
+     * 服务端收到的 SNI，按握手的顺序记录，没有 SNI 时为空字符串
+     */
+    private static final Map<Integer, String> REQUESTED_SERVER_NAMES = new ConcurrentHashMap<>();
+
+    /**
+     * 用进程内的 SSLServerSocket 模拟 nginx，不论 SNI 是什么都返回 served 的证书
+     */
+    @BeforeAll
+    static void startServer() throws Exception {
+        served = TestCerts.generate(certDir, "a.example.com");
+        other = TestCerts.generate(certDir.resolve("other"), "a.example.com");
+
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(served.loadKeyStore(), TestCerts.PASSWORD.toCharArray());
+        SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(keyManagerFactory.getKeyManagers(), null, null);
+
+        serverExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        serverSocket = (SSLServerSocket) serverContext.getServerSocketFactory().createServerSocket(0);
+        serverExecutor.submit(() -> {
+            while (!serverSocket.isClosed()) {
+                try {
+                    SSLSocket socket = (SSLSocket) serverSocket.accept();
+                    serverExecutor.submit(() -> {
+                        try (socket) {
+                            socket.startHandshake();
+                            List<SNIServerName> names = ((ExtendedSSLSession) socket.getSession()).getRequestedServerNames();
+                            REQUESTED_SERVER_NAMES.put(socket.getPort(), names.isEmpty() ? "" : ((SNIHostName) names.getFirst()).getAsciiName());
+                        } catch (IOException e) {
+                            // 客户端握手之后直接断开
+                        }
+                    });
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+    }
+
+    @AfterAll
+    static void stopServer() throws IOException {
+        serverSocket.close();
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void probeAllComparesServedCertificateWithLocalFiles() {
+        List<PlatformSslCertInfo> infos = List.of(info("a", "a.example.com", served.crtFile()), info("b", "a.example.com", other.crtFile()),
+                info("c", "a.example.com", certDir.resolve("missing.crt")));
+
+        Map<String, TlsProber.ProbeResult> results = probeAll(infos);
+
+        assertEquals(TlsProber.Status.MATCH, results.get("a").getStatus(), results.get("a").toString());
+        assertEquals(results.get("a").getLocalFingerprintSha256(), results.get("a").getServedFingerprintSha256());
+        assertEquals("a.example.com", results.get("a").getServerName());
+        assertNotNull(results.get("a").getProtocol());
+
+        TlsProber.ProbeResult mismatch = results.get("b");
+        assertNotEquals(TlsProber.Status.MATCH, mismatch.getStatus(), mismatch.toString());
+        assertNotEquals(TlsProber.Status.FAILED, mismatch.getStatus(), mismatch.toString());
+        assertEquals(results.get("a").getServedFingerprintSha256(), mismatch.getServedFingerprintSha256());
+        assertNotEquals(mismatch.getLocalFingerprintSha256(), mismatch.getServedFingerprintSha256());
+
+        assertEquals(TlsProber.Status.NO_LOCAL_CERT, results.get("c").getStatus());
+        assertTrue(REQUESTED_SERVER_NAMES.containsValue("a.example.com"));
+    }
+
+    @Test
+    void ipLiteralDomainIsProbedWithoutSni() throws Exception {
+        List<PlatformSslCertInfo> infos = List.of(info("v4", "127.0.0.1", served.crtFile()), info("v6", "::1", served.crtFile()));
+        REQUESTED_SERVER_NAMES.clear();
+
+        Map<String, TlsProber.ProbeResult> results = probeAll(infos);
+
+        for (TlsProber.ProbeResult result : results.values()) {
+            assertEquals(TlsProber.Status.MATCH, result.getStatus(), result.toString());
+            assertNull(result.getServerName());
+        }
+        // 服务端在握手完成之后才记录，等连接都处理完
+        for (int i = 0; i < 50 && REQUESTED_SERVER_NAMES.size() < infos.size(); i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(List.of("", ""), List.copyOf(REQUESTED_SERVER_NAMES.values()), "IP 地址不应该作为 SNI 发送");
+    }
+
+    @Test
+    void invalidServerNameFailsOnlyThatProbe() {
+        List<PlatformSslCertInfo> infos = List.of(info("bad", "bad_name.example.com", served.crtFile()), info("good", "a.example.com", served.crtFile()));
+
+        Map<String, TlsProber.ProbeResult> results = probeAll(infos);
+
+        assertEquals(TlsProber.Status.FAILED, results.get("bad").getStatus());
+        assertNotNull(results.get("bad").getError());
+        assertEquals(TlsProber.Status.MATCH, results.get("good").getStatus(), results.get("good").toString());
+    }
+
+    @Test
+    void targetResolutionErrorFailsOnlyThatProbe() {
+        List<PlatformSslCertInfo> infos = List.of(info("bad", "a.example.com", served.crtFile()), info("good", "a.example.com", served.crtFile()));
+        TlsProber.Target target = new TlsProber.Target("127.0.0.1", serverSocket.getLocalPort());
+
+        List<TlsProber.ProbeResult> results = new TlsProber(4, Duration.ofSeconds(5)).probeAll(infos, info -> {
+            if ("bad".equals(info.getId())) {
+                throw new IllegalArgumentException("探测目标格式错误");
+            }
+            return target;
+        });
+
+        assertEquals(List.of("bad", "good"), results.stream().map(TlsProber.ProbeResult::getId).toList());
+        assertEquals(TlsProber.Status.FAILED, results.get(0).getStatus());
+        assertEquals("探测目标格式错误", results.get(0).getError());
+        assertEquals(TlsProber.Status.MATCH, results.get(1).getStatus());
+    }
+
+    @Test
+    void isIpLiteral() {
+        assertTrue(TlsProber.isIpLiteral("127.0.0.1"));
+        assertTrue(TlsProber.isIpLiteral("::1"));
+        assertTrue(TlsProber.isIpLiteral("2001:db8::1"));
+        assertFalse(TlsProber.isIpLiteral("a.example.com"));
+        assertFalse(TlsProber.isIpLiteral("1.example.com"));
+    }
+
+    private static Map<String, TlsProber.ProbeResult> probeAll(List<PlatformSslCertInfo> infos) {
+        TlsProber.Target target = new TlsProber.Target("127.0.0.1", serverSocket.getLocalPort());
+        List<TlsProber.ProbeResult> results = new TlsProber(4, Duration.ofSeconds(5)).probeAll(infos, target);
+        assertEquals(infos.stream().map(PlatformSslCertInfo::getId).toList(), results.stream().map(TlsProber.ProbeResult::getId).toList());
+        return results.stream().collect(Collectors.toMap(TlsProber.ProbeResult::getId, result -> result));
+    }
+
+    private static PlatformSslCertInfo info(String id, String domain, Path crtFile) {
+        PlatformSslCertInfo info = new PlatformSslCertInfo();
+        info.setId(id);
+        info.setDomain(domain);
+        info.setLocalParentFoldPath(crtFile.getParent().toString());
+        info.setCrtFilename(crtFile.getFileName().toString());
+        return info;
+    }
+}
@@ -0,0 +1,89 @@
+package cn.sleepybear.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncHandlerTest {
+    /**
+     * 每条日志都要输出一段时间，后台线程取出一批日志之后缓冲区已经是空的，但是日志还没有输出完
+     */
+    private static class SlowHandler extends Handler {
+        private final AtomicInteger published = new AtomicInteger();
+
+        @Override
+        public void publish(LogRecord record) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            published.incrementAndGet();
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    void flushWaitsForRecordsBeingWritten() {
+        SlowHandler delegate = new SlowHandler();
+        AsyncHandler handler = new AsyncHandler(List.of(delegate), 1024);
+        try {
+            for (int round = 1; round <= 3; round++) {
+                for (int i = 0; i < 50; i++) {
+                    handler.publish(new LogRecord(Level.INFO, "line " + i));
+                }
+                handler.flush();
+                assertEquals(round * 50, delegate.published.get(), "flush 返回时之前的日志应该都已经输出");
+            }
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    void flushReturnsWhenNothingPending() {
+        AsyncHandler handler = new AsyncHandler(List.of(new SlowHandler()), 16);
+        try {
+            assertTimeoutPreemptively(Duration.ofSeconds(1), handler::flush);
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    void formattedRecordKeepsMessageAfterSerialization() throws Exception {
+        LogRecord record = new LogUtil.FormattedRecord(Level.INFO, "证书 %s 剩余 %s 天", new Object[]{"example.com", new Object() {
+            @Override
+            public String toString() {
+                return "30";
+            }
+        }});
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(record);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEquals("证书 example.com 剩余 30 天", ((LogRecord) in.readObject()).getMessage());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package cn.sleepybear.util;
+
+import cn.sleepybear.App;
+import cn.sleepybear.config.AppConfig;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SharedHttpClientTest {
+    private AppConfig original;
+    private HttpServer server;
+    private final CountDownLatch received = new CountDownLatch(1);
+
+    /**
+     * 收到请求之后等待一段时间再返回，模拟还在进行中的请求
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        original = App.configHolder.get();
+        AppConfig config = new AppConfig();
+        config.setHttpClientConnectTimeoutMillis(5000);
+        App.configHolder.set(config);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", exchange -> {
+            received.countDown();
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "done".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        App.configHolder.set(original);
+        server.stop(0);
+    }
+
+    @Test
+    void requestsOnReplacedClientComplete() throws Exception {
+        HttpClient oldClient = SharedHttpClient.get();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:%s/".formatted(server.getAddress().getPort()))).build();
+        CompletableFuture<HttpResponse<String>> inFlight = oldClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+        assertTrue(received.await(5, TimeUnit.SECONDS));
+
+        App.configHolder.update(config -> {
+            config.setHttpClientConnectTimeoutMillis(6000);
+            return config;
+        });
+        HttpClient newClient = SharedHttpClient.get();
+        assertNotSame(oldClient, newClient);
+
+        HttpResponse<String> response = inFlight.get(5, TimeUnit.SECONDS);
+        assertEquals(200, response.statusCode());
+        assertEquals("done", response.body(), "配置变化之前发出的请求应该正常完成");
+        assertTrue(oldClient.awaitTermination(Duration.ofSeconds(5)), "旧的客户端在请求完成之后应该关闭");
+    }
+}